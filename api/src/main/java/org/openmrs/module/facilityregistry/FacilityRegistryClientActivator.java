@@ -12,6 +12,9 @@ package org.openmrs.module.facilityregistry;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.module.BaseModuleActivator;
+import org.openmrs.module.facilityregistry.utils.BearerTokenCache;
+import org.openmrs.module.facilityregistry.utils.FacilityRegistryCaches;
+import org.openmrs.module.facilityregistry.utils.FacilityRegistryHttpClient;
 
 /**
  * This class contains the logic that is run every time this module is either started or shutdown
@@ -24,6 +27,7 @@ public class FacilityRegistryClientActivator extends BaseModuleActivator {
 	 * @see #started()
 	 */
 	public void started() {
+		FacilityRegistryCaches.configure();
 		log.info("Started Facility Registry Client");
 	}
 	
@@ -31,6 +35,8 @@ public class FacilityRegistryClientActivator extends BaseModuleActivator {
 	 * @see #shutdown()
 	 */
 	public void shutdown() {
+		FacilityRegistryHttpClient.shutdown();
+		BearerTokenCache.getInstance().clear();
 		log.info("Shutdown Facility Registry Client");
 	}
 	
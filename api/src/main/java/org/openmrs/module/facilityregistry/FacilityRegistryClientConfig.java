@@ -9,13 +9,284 @@
  */
 package org.openmrs.module.facilityregistry;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.AccessLevel;
+import lombok.Setter;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.module.facilityregistry.api.impl.OrganizationResourceCache;
+import org.openmrs.module.facilityregistry.utils.FacilityRegistryCaches;
+import org.openmrs.module.facilityregistry.utils.FacilityRegistryHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
- * Contains module's config.
+ * Holds the global properties read on the translation and sync hot paths as an immutable snapshot.
+ * The snapshot is read once and dropped whenever one of the module's global properties changes, so
+ * callers read fields instead of querying the database. A change to the cache settings is also
+ * applied to the caches, a change to the http settings to the shared HttpClient of the next sync run.
  */
 @Component("facilityregistry.FacilityRegistryClientConfig")
-public class FacilityRegistryClientConfig {
+@Setter(AccessLevel.PACKAGE)
+public class FacilityRegistryClientConfig implements GlobalPropertyListener {
+	
+	private static final Logger log = LoggerFactory.getLogger(FacilityRegistryClientConfig.class);
 	
 	public final static String MODULE_PRIVILEGE = "Facility Registry Client Privilege";
+	
+	static final String DEFAULT_SERVER_URL = "http://localhost:4000/fhir/DEFAULT";
+	
+	static final String DEFAULT_AUTH_URL = "http://localhost:4000/auth/token";
+	
+	static final String DEFAULT_USER_NAME = "root@gofr.org";
+	
+	static final String DEFAULT_PASSWORD = "gofr";
+	
+	static final String DEFAULT_ORG_ID_SYSTEM = "http://fhir.openmrs.org/organization/identifier";
+	
+	public static final long DEFAULT_MIN_SYNC_INTERVAL = 10 * 1000L;
+	
+	public static final long DEFAULT_MAX_SYNC_INTERVAL = 10 * 60 * 1000L;
+	
+	// a run renews its lease after every page, so this only needs to cover the slowest page
+	public static final long DEFAULT_SYNC_LOCK_TIMEOUT = 10 * 60 * 1000L;
+	
+	public static final int DEFAULT_PERSIST_BATCH_SIZE = 50;
+	
+	private static final Set<String> SNAPSHOT_PROPERTIES = new HashSet<>(Arrays.asList(
+	    FacilityRegistryConstants.GP_FACILITY_REGISTRY_SERVER_URL, FacilityRegistryConstants.GP_FACILITY_REGISTRY_AUTH_URL,
+	    FacilityRegistryConstants.GP_FACILITY_REGISTRY_USER_NAME, FacilityRegistryConstants.GP_FACILITY_REGISTRY_PASSWORD,
+	    FacilityRegistryConstants.GP_FACILITY_REGISTRY_ORG_ID_SYSTEM,
+	    FacilityRegistryConstants.GP_FACILITY_REGISTRY_PREFIX_SEARCH,
+	    FacilityRegistryConstants.GP_FACILITY_REGISTRY_COUNT_FREE_SEARCH,
+	    FacilityRegistryConstants.GP_FACILITY_REGISTRY_MIN_SYNC_INTERVAL,
+	    FacilityRegistryConstants.GP_FACILITY_REGISTRY_MAX_SYNC_INTERVAL,
+	    FacilityRegistryConstants.GP_FACILITY_REGISTRY_SYNC_LOCK_TIMEOUT,
+	    FacilityRegistryConstants.GP_FACILITY_REGISTRY_PERSIST_BATCH_SIZE));
+	
+	private static final String HTTP_PREFIX = "facilityregistry.http.";
+	
+	private static final String CACHE_PREFIX = "facilityregistry.cache.";
+	
+	@Autowired
+	@Qualifier("adminService")
+	private AdministrationService administrationService;
+	
+	@Autowired
+	private OrganizationResourceCache organizationResourceCache;
+	
+	private volatile Snapshot snapshot;
+	
+	// counts changes, so that a snapshot read while a property changed is not kept
+	private final AtomicLong changes = new AtomicLong();
+	
+	@PostConstruct
+	public void register() {
+		administrationService.addGlobalPropertyListener(this);
+	}
+	
+	@PreDestroy
+	public void unregister() {
+		administrationService.removeGlobalPropertyListener(this);
+	}
+	
+	public String getServerUrl() {
+		return getSnapshot().serverUrl;
+	}
+	
+	public String getAuthUrl() {
+		return getSnapshot().authUrl;
+	}
+	
+	public String getAuthUserName() {
+		return getSnapshot().authUserName;
+	}
+	
+	public String getAuthPassword() {
+		return getSnapshot().authPassword;
+	}
+	
+	public String getOrganizationIdentifierSystem() {
+		return getSnapshot().organizationIdentifierSystem;
+	}
+	
+	public boolean isPrefixSearch() {
+		return getSnapshot().prefixSearch;
+	}
+	
+	public boolean isCountFreeSearch() {
+		return getSnapshot().countFreeSearch;
+	}
+	
+	/**
+	 * @return the time in milliseconds between two sync runs after a run that found changes
+	 */
+	public long getMinSyncInterval() {
+		return getSnapshot().minSyncInterval;
+	}
+	
+	/**
+	 * @return the longest time in milliseconds between two sync runs while nothing changes
+	 */
+	public long getMaxSyncInterval() {
+		return getSnapshot().maxSyncInterval;
+	}
+	
+	/**
+	 * @return the time in milliseconds a sync lease is held without being renewed
+	 */
+	public long getSyncLockTimeout() {
+		return getSnapshot().syncLockTimeout;
+	}
+	
+	/**
+	 * @return the number of resources saved between two flushes of the session
+	 */
+	public int getPersistBatchSize() {
+		return (int) getSnapshot().persistBatchSize;
+	}
+	
+	private Snapshot getSnapshot() {
+		Snapshot current = snapshot;
+		if (current == null) {
+			long changesBefore = changes.get();
+			current = new Snapshot(administrationService);
+			synchronized (this) {
+				if (changes.get() == changesBefore) {
+					snapshot = current;
+				}
+			}
+		}
+		return current;
+	}
+	
+	/**
+	 * Only the properties held in the snapshot and the http and cache settings are followed. The sync
+	 * time written after every run does not drop the snapshot.
+	 */
+	@Override
+	public boolean supportsPropertyName(String propertyName) {
+		return propertyName != null && (SNAPSHOT_PROPERTIES.contains(propertyName)
+		        || propertyName.startsWith(HTTP_PREFIX) || propertyName.startsWith(CACHE_PREFIX));
+	}
+	
+	@Override
+	public void globalPropertyChanged(GlobalProperty newValue) {
+		changed(newValue.getProperty());
+	}
+	
+	@Override
+	public void globalPropertyDeleted(String propertyName) {
+		changed(propertyName);
+	}
+	
+	private void changed(String propertyName) {
+		dropSnapshot();
+		// listeners are called before the change is committed, another thread may read the old value until then
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCommit() {
+					dropSnapshot();
+				}
+			});
+		}
+		
+		if (propertyName.startsWith(HTTP_PREFIX)) {
+			// a running sync keeps its client, the next run swaps in one built with the changed settings
+			FacilityRegistryHttpClient.invalidate();
+		} else if (propertyName.startsWith(CACHE_PREFIX)) {
+			FacilityRegistryCaches.configure();
+		} else if (propertyName.equals(FacilityRegistryConstants.GP_FACILITY_REGISTRY_ORG_ID_SYSTEM)) {
+			// the identifier system is part of every translated Organization
+			organizationResourceCache.clear();
+		}
+	}
+	
+	private synchronized void dropSnapshot() {
+		changes.incrementAndGet();
+		snapshot = null;
+	}
+	
+	private static class Snapshot {
+		
+		private final String serverUrl;
+		
+		private final String authUrl;
+		
+		private final String authUserName;
+		
+		private final String authPassword;
+		
+		private final String organizationIdentifierSystem;
+		
+		private final boolean prefixSearch;
+		
+		private final boolean countFreeSearch;
+		
+		private final long minSyncInterval;
+		
+		private final long maxSyncInterval;
+		
+		private final long syncLockTimeout;
+		
+		private final long persistBatchSize;
+		
+		Snapshot(AdministrationService administrationService) {
+			serverUrl = administrationService.getGlobalProperty(
+			    FacilityRegistryConstants.GP_FACILITY_REGISTRY_SERVER_URL, DEFAULT_SERVER_URL);
+			authUrl = administrationService.getGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_AUTH_URL,
+			    DEFAULT_AUTH_URL);
+			authUserName = administrationService
+			        .getGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_USER_NAME, DEFAULT_USER_NAME);
+			authPassword = administrationService
+			        .getGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_PASSWORD, DEFAULT_PASSWORD);
+			organizationIdentifierSystem = administrationService.getGlobalProperty(
+			    FacilityRegistryConstants.GP_FACILITY_REGISTRY_ORG_ID_SYSTEM, DEFAULT_ORG_ID_SYSTEM);
+			prefixSearch = Boolean.parseBoolean(administrationService
+			        .getGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_PREFIX_SEARCH, "false"));
+			countFreeSearch = Boolean.parseBoolean(administrationService
+			        .getGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_COUNT_FREE_SEARCH, "false"));
+			minSyncInterval = getPositiveGlobalProperty(administrationService,
+			    FacilityRegistryConstants.GP_FACILITY_REGISTRY_MIN_SYNC_INTERVAL, DEFAULT_MIN_SYNC_INTERVAL);
+			maxSyncInterval = getPositiveGlobalProperty(administrationService,
+			    FacilityRegistryConstants.GP_FACILITY_REGISTRY_MAX_SYNC_INTERVAL, DEFAULT_MAX_SYNC_INTERVAL);
+			syncLockTimeout = getPositiveGlobalProperty(administrationService,
+			    FacilityRegistryConstants.GP_FACILITY_REGISTRY_SYNC_LOCK_TIMEOUT, DEFAULT_SYNC_LOCK_TIMEOUT);
+			persistBatchSize = getPositiveGlobalProperty(administrationService,
+			    FacilityRegistryConstants.GP_FACILITY_REGISTRY_PERSIST_BATCH_SIZE, DEFAULT_PERSIST_BATCH_SIZE);
+		}
+		
+		private static long getPositiveGlobalProperty(AdministrationService administrationService, String property,
+		        long defaultValue) {
+			String value = administrationService.getGlobalProperty(property);
+			if (value != null && !value.trim().isEmpty()) {
+				try {
+					long parsed = Long.parseLong(value.trim());
+					if (parsed > 0) {
+						return parsed;
+					}
+				}
+				catch (NumberFormatException e) {
+					// fall through to the default
+				}
+				log.warn("ignoring invalid value '{}' for {}", value, property);
+			}
+			return defaultValue;
+		}
+	}
 }
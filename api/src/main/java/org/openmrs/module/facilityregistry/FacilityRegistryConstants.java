@@ -21,6 +21,42 @@ public class FacilityRegistryConstants {
 	
 	public static final String GP_FACILITY_REGISTRY_ORG_ID_SYSTEM = "facilityregistry.organisationIdentifierSystem";
 	
+	public static final String GP_FACILITY_REGISTRY_LAST_SYNC_TIME = "facilityregistry.lastSyncTime";
+	
+	public static final String GP_FACILITY_REGISTRY_FORCE_FULL_SYNC = "facilityregistry.forceFullSync";
+	
+	public static final String GP_FACILITY_REGISTRY_HTTP_MAX_CONNECTIONS = "facilityregistry.http.maxConnections";
+	
+	public static final String GP_FACILITY_REGISTRY_HTTP_MAX_CONNECTIONS_PER_ROUTE = "facilityregistry.http.maxConnectionsPerRoute";
+	
+	public static final String GP_FACILITY_REGISTRY_HTTP_CONNECT_TIMEOUT = "facilityregistry.http.connectTimeout";
+	
+	public static final String GP_FACILITY_REGISTRY_HTTP_CONNECTION_REQUEST_TIMEOUT = "facilityregistry.http.connectionRequestTimeout";
+	
+	public static final String GP_FACILITY_REGISTRY_HTTP_SOCKET_TIMEOUT = "facilityregistry.http.socketTimeout";
+	
+	public static final String GP_FACILITY_REGISTRY_HTTP_KEEP_ALIVE = "facilityregistry.http.keepAlive";
+	
+	public static final String GP_FACILITY_REGISTRY_PERSIST_BATCH_SIZE = "facilityregistry.persistBatchSize";
+	
+	public static final String GP_FACILITY_REGISTRY_MIN_SYNC_INTERVAL = "facilityregistry.minSyncInterval";
+	
+	public static final String GP_FACILITY_REGISTRY_MAX_SYNC_INTERVAL = "facilityregistry.maxSyncInterval";
+	
+	public static final String GP_FACILITY_REGISTRY_SYNC_LOCK_TIMEOUT = "facilityregistry.syncLockTimeout";
+	
+	public static final String GP_FACILITY_REGISTRY_STREAMING_SYNC = "facilityregistry.streamingSync";
+	
+	public static final String GP_FACILITY_REGISTRY_PREFIX_SEARCH = "facilityregistry.prefixSearch";
+	
+	public static final String GP_FACILITY_REGISTRY_CACHE_MAX_ENTRIES = "facilityregistry.cache.maxEntries";
+	
+	public static final String GP_FACILITY_REGISTRY_CACHE_TIME_TO_LIVE = "facilityregistry.cache.timeToLive";
+	
+	public static final String GP_FACILITY_REGISTRY_CACHE_MAX_TRANSLATED_ORGANIZATIONS = "facilityregistry.cache.maxTranslatedOrganizations";
+	
+	public static final String GP_FACILITY_REGISTRY_COUNT_FREE_SEARCH = "facilityregistry.countFreeSearch";
+	
 	public static final String FACILITY_REGISTRY_LOCATION = "mCSD Location";
 	
 	public static final String FACILITY_REGISTRY_LOCATION_FHIR_SYSTEM = "http://facilityRegistry/mcsd.location";
@@ -37,4 +73,18 @@ public class FacilityRegistryConstants {
 	
 	public static final String FACILITY_REGISTRY_LABORATORY = "mCSD Laboratory";
 	
+	public static final String PARTOF_BELOW_SEARCH_HANDLER = "partof.below.search.handler";
+	
+	public static final String PARTOF_ABOVE_SEARCH_HANDLER = "partof.above.search.handler";
+	
+	public static final String SEARCH_PARAM_CURSOR = "_cursor";
+	
+	public static final String CACHE_REGION_ORGANIZATION = "facilityregistry.organization";
+	
+	public static final String CACHE_REGION_ORGANIZATION_ADDRESS = "facilityregistry.organizationAddress";
+	
+	public static final String CACHE_REGION_ORGANIZATION_ADDRESSES = "facilityregistry.organization.address";
+	
+	public static final String CACHE_REGION_ORGANIZATION_TYPES = "facilityregistry.organization.type";
+	
 }
@@ -0,0 +1,37 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.api;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the synced facility registry as NDJSON, one FHIR resource per line, for downstream systems
+ * that need the whole facility list. Resources are read, translated and written a chunk at a time and
+ * the session is cleared after every chunk, so memory use does not depend on the size of the registry.
+ */
+public interface FacilityRegistryExportService {
+	
+	/**
+	 * Writes all stored Organizations in the order of their ids
+	 * 
+	 * @param writer receives one JSON encoded Organization per line
+	 * @return the number of Organizations written
+	 */
+	long exportOrganizations(Writer writer) throws IOException;
+	
+	/**
+	 * Writes all Locations tagged as mCSD Locations in the order of their ids
+	 * 
+	 * @param writer receives one JSON encoded Location per line
+	 * @return the number of Locations written
+	 */
+	long exportLocations(Writer writer) throws IOException;
+}
@@ -0,0 +1,55 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.api;
+
+/**
+ * Counts what happened to the resources passed to {@link FacilityRegistrySyncService#saveAll}
+ */
+public class FacilityRegistrySaveResult {
+	
+	private int created;
+	
+	private int updated;
+	
+	private int skipped;
+	
+	public void recordCreated() {
+		created++;
+	}
+	
+	public void recordUpdated() {
+		updated++;
+	}
+	
+	public void recordSkipped() {
+		skipped++;
+	}
+	
+	/**
+	 * @return the number of resources that were not stored before
+	 */
+	public int getCreated() {
+		return created;
+	}
+	
+	/**
+	 * @return the number of stored resources that changed upstream and were updated
+	 */
+	public int getUpdated() {
+		return updated;
+	}
+	
+	/**
+	 * @return the number of stored resources left untouched because they did not change upstream
+	 */
+	public int getSkipped() {
+		return skipped;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.api;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.hl7.fhir.r4.model.DomainResource;
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncRun;
+
+/**
+ * Writes the resources fetched from the Facility Registry Server in bulk, bypassing the per resource
+ * transactions of the fhir2 services
+ */
+public interface FacilityRegistrySyncService {
+	
+	/**
+	 * Creates or updates the given Locations and Organizations in a single transaction. Resources are
+	 * written in the given order, so parents must come before the resources referencing them. Stored
+	 * resources that did not change upstream since they were last written are skipped.
+	 * 
+	 * @param resources the Locations and Organizations to save
+	 * @return how many resources were created, updated and skipped
+	 */
+	FacilityRegistrySaveResult saveAll(List<DomainResource> resources);
+	
+	/**
+	 * Returns which of the given Location uuids are stored locally
+	 * 
+	 * @param uuids the Location uuids to look up
+	 * @return the uuids of the stored Locations
+	 */
+	List<String> getExistingLocationUuids(Collection<String> uuids);
+	
+	/**
+	 * Takes the sync lease for the given run if no other run holds it and the next sync is due. The
+	 * lease is shared through the database, so only one OpenMRS instance of a cluster syncs at a time.
+	 * 
+	 * @param owner identifies the run taking the lease
+	 * @return true if the lease was taken, false if another run holds it or the sync is not due yet
+	 */
+	boolean acquireSyncLock(String owner);
+	
+	/**
+	 * Extends the lease of a run that is still making progress
+	 * 
+	 * @param owner identifies the run holding the lease
+	 * @return false if the lease expired and was taken over by another run
+	 */
+	boolean renewSyncLock(String owner);
+	
+	/**
+	 * Gives up the lease and schedules the next sync. The interval is reset to the minimum when the run
+	 * found changes and doubled up to the maximum when it did not.
+	 * 
+	 * @param owner identifies the run holding the lease
+	 * @param changesFound whether the run created or updated any resource
+	 */
+	void releaseSyncLock(String owner, boolean changesFound);
+	
+	/**
+	 * Returns the run a full sync should continue from. That is the most recent run, if it was a full
+	 * sync that did not complete but saved at least one page with a next link.
+	 * 
+	 * @return the run to resume, or null if the next full sync has to start from the first page
+	 */
+	FacilityRegistrySyncRun getResumableSyncRun();
+	
+	/**
+	 * Records the start of a sync run and drops the oldest runs beyond the kept history
+	 * 
+	 * @param owner identifies the run in the sync lease
+	 * @param fullSync whether the run fetches the whole registry
+	 * @param changedSince the lower bound of an incremental sync, null for a full sync
+	 * @param resumed the run this one continues from, may be null
+	 * @return the saved run
+	 */
+	FacilityRegistrySyncRun startSyncRun(String owner, boolean fullSync, Date changedSince,
+	        FacilityRegistrySyncRun resumed);
+	
+	/**
+	 * Saves the progress or the outcome of a sync run
+	 * 
+	 * @param syncRun the run to save
+	 */
+	void saveSyncRun(FacilityRegistrySyncRun syncRun);
+}
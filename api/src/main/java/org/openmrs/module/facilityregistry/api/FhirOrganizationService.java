@@ -9,12 +9,16 @@
  */
 package org.openmrs.module.facilityregistry.api;
 
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 
 import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.rest.api.SearchTotalModeEnum;
 import ca.uhn.fhir.rest.api.SortSpec;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ReferenceOrListParam;
 import ca.uhn.fhir.rest.param.StringAndListParam;
 import ca.uhn.fhir.rest.param.TokenAndListParam;
 import org.hl7.fhir.r4.model.Organization;
@@ -22,7 +26,39 @@ import org.openmrs.module.fhir2.api.FhirService;
 
 public interface FhirOrganizationService extends FhirService<Organization> {
 	
+	/**
+	 * Searches the stored Organizations. partOfBelow matches all descendants of the referenced
+	 * Organizations and partOfAbove all of their ancestors, at any depth of the part-of hierarchy.
+	 * <p>
+	 * With a totalMode of {@link SearchTotalModeEnum#NONE}, or without a totalMode while the
+	 * facilityregistry.countFreeSearch global property is set, the matches are not counted and each page
+	 * reads one row ahead to tell whether there is a next one.
+	 */
 	IBundleProvider searchForOrganizations(StringAndListParam name, StringAndListParam city, StringAndListParam country,
 	        StringAndListParam postalCode, StringAndListParam state, TokenAndListParam id, DateRangeParam lastUpdated,
-	        HashSet<Include> includes, SortSpec sort);
+	        ReferenceOrListParam partOfBelow, ReferenceOrListParam partOfAbove, HashSet<Include> includes,
+	        SortSpec sort, SearchTotalModeEnum totalMode);
+	
+	/**
+	 * Searches the stored Organizations like {@link #searchForOrganizations} but pages through them in
+	 * the order they were stored, starting after the position held by the cursor. Each page is read
+	 * through the primary key however deep it is, and Organizations written while paging neither
+	 * repeat nor shift the rows of later pages.
+	 * 
+	 * @param cursor the cursor of the previous page, blank for the first page
+	 * @param count the number of Organizations per page, the default page size when null
+	 * @return the page, with the cursor of the next page if there is one
+	 */
+	OrganizationSearchPage searchForOrganizationsAfter(StringAndListParam name, StringAndListParam city,
+	        StringAndListParam country, StringAndListParam postalCode, StringAndListParam state, TokenAndListParam id,
+	        DateRangeParam lastUpdated, ReferenceOrListParam partOfBelow, ReferenceOrListParam partOfAbove, String cursor,
+	        Integer count);
+	
+	/**
+	 * Returns those of the given uuids that belong to a stored Organization, using a single query
+	 * 
+	 * @param uuids the Organization uuids to look up
+	 * @return the uuids that are already stored
+	 */
+	List<String> getExistingUuids(Collection<String> uuids);
 }
@@ -0,0 +1,68 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.api;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import org.hl7.fhir.r4.model.Organization;
+
+/**
+ * A page of Organizations returned by {@link FhirOrganizationService#searchForOrganizationsAfter}. The
+ * cursor of a page holds the id of its last Organization, so the next page is read from there on
+ * instead of by offset.
+ */
+public class OrganizationSearchPage {
+	
+	private final List<Organization> resources;
+	
+	private final String nextCursor;
+	
+	public OrganizationSearchPage(List<Organization> resources, String nextCursor) {
+		this.resources = resources;
+		this.nextCursor = nextCursor;
+	}
+	
+	/**
+	 * @return the Organizations on this page
+	 */
+	public List<Organization> getResources() {
+		return resources;
+	}
+	
+	/**
+	 * @return the cursor to pass for the next page, null when this is the last page
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+	
+	public static String encodeCursor(Integer id) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(id.toString().getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * @param cursor a cursor returned with an earlier page
+	 * @return the id of the last Organization of that page, null for a blank cursor
+	 */
+	public static Integer decodeCursor(String cursor) {
+		if (cursor == null || cursor.trim().isEmpty()) {
+			return null;
+		}
+		try {
+			return Integer.valueOf(new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8));
+		}
+		catch (IllegalArgumentException e) {
+			throw new InvalidRequestException("Invalid search cursor " + cursor);
+		}
+	}
+}
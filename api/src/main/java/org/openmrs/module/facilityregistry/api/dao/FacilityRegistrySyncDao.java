@@ -0,0 +1,143 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.api.dao;
+
+import javax.annotation.Nonnull;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.Location;
+import org.openmrs.module.facilityregistry.model.FacilityRegistryFingerprint;
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncLock;
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncRun;
+import org.openmrs.module.facilityregistry.model.FhirOrganization;
+
+public interface FacilityRegistrySyncDao {
+	
+	/**
+	 * Loads the stored Organizations with the given uuids using a single query
+	 * 
+	 * @param uuids the Organization uuids to look up
+	 * @return the stored Organizations keyed by uuid
+	 */
+	Map<String, FhirOrganization> getOrganizationsByUuid(@Nonnull Collection<String> uuids);
+	
+	/**
+	 * Loads the stored Locations with the given uuids using a single query
+	 * 
+	 * @param uuids the Location uuids to look up
+	 * @return the stored Locations keyed by uuid
+	 */
+	Map<String, Location> getLocationsByUuid(@Nonnull Collection<String> uuids);
+	
+	/**
+	 * Returns which of the given Location uuids are stored, without loading the Locations
+	 * 
+	 * @param uuids the Location uuids to look up
+	 * @return the uuids of the stored Locations
+	 */
+	List<String> getExistingLocationUuids(@Nonnull Collection<String> uuids);
+	
+	/**
+	 * Returns the Locations carrying the given tag whose id is greater than afterId, ordered by id
+	 * 
+	 * @param tagName the name of the Location tag
+	 * @param afterId the id of the last Location of the previous chunk, null for the first chunk
+	 * @param maxResults the number of Locations returned at most
+	 * @return the tagged Locations
+	 */
+	List<Location> getTaggedLocationsAfter(@Nonnull String tagName, Integer afterId, int maxResults);
+	
+	/**
+	 * Loads the fingerprints of the given resources using a single query
+	 * 
+	 * @param resourceType the FHIR resource type, e.g. Location
+	 * @param uuids the resource uuids to look up
+	 * @return the stored fingerprints keyed by resource uuid
+	 */
+	Map<String, FacilityRegistryFingerprint> getFingerprints(@Nonnull String resourceType,
+	        @Nonnull Collection<String> uuids);
+	
+	/**
+	 * Creates or updates a fingerprint
+	 * 
+	 * @param fingerprint the fingerprint to save
+	 */
+	void saveFingerprint(@Nonnull FacilityRegistryFingerprint fingerprint);
+	
+	/**
+	 * @param name the name of the lock
+	 * @return the lock, or null if its row does not exist
+	 */
+	FacilityRegistrySyncLock getSyncLock(@Nonnull String name);
+	
+	/**
+	 * Creates or updates a lock row
+	 * 
+	 * @param lock the lock to save
+	 */
+	void saveSyncLock(@Nonnull FacilityRegistrySyncLock lock);
+	
+	/**
+	 * Takes the lock with a single conditional update, which succeeds for only one of several concurrent
+	 * callers. The lock is taken if its lease expired and its next run is due at the given time.
+	 * 
+	 * @param name the name of the lock
+	 * @param owner identifies the caller
+	 * @param now the current time
+	 * @param lockedUntil the end of the new lease
+	 * @return true if the lock was taken
+	 */
+	boolean acquireSyncLock(@Nonnull String name, @Nonnull String owner, @Nonnull Date now, @Nonnull Date lockedUntil);
+	
+	/**
+	 * Extends the lease of the lock if it is still held by the given owner
+	 * 
+	 * @param name the name of the lock
+	 * @param owner identifies the caller
+	 * @param lockedUntil the end of the extended lease
+	 * @return true if the owner still held the lock
+	 */
+	boolean renewSyncLock(@Nonnull String name, @Nonnull String owner, @Nonnull Date lockedUntil);
+	
+	/**
+	 * @return the most recently started sync run, or null if there is none
+	 */
+	FacilityRegistrySyncRun getLatestSyncRun();
+	
+	/**
+	 * Creates or updates a sync run
+	 * 
+	 * @param syncRun the run to save
+	 */
+	void saveSyncRun(@Nonnull FacilityRegistrySyncRun syncRun);
+	
+	/**
+	 * Deletes all but the most recent sync runs
+	 * 
+	 * @param keep the number of runs to keep
+	 * @return the number of runs deleted
+	 */
+	int deleteOldSyncRuns(int keep);
+	
+	/**
+	 * Writes the pending changes of the current session and detaches all entities, so the session does
+	 * not grow with the number of synced resources
+	 */
+	void flushAndClear();
+	
+	/**
+	 * Detaches all entities of the current session without writing pending changes
+	 */
+	void clear();
+}
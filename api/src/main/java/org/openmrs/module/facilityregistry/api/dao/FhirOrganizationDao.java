@@ -11,6 +11,7 @@ package org.openmrs.module.facilityregistry.api.dao;
 
 import javax.annotation.Nonnull;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.openmrs.annotation.Authorized;
@@ -40,4 +41,39 @@ public interface FhirOrganizationDao extends FhirDao<FhirOrganization> {
 	@Override
 	@Authorized(PrivilegeConstants.GET_LOCATIONS)
 	List<FhirOrganization> getSearchResults(@Nonnull SearchParameterMap theParams, @Nonnull List<String> resourceUuids);
+	
+	/**
+	 * Returns one page of the uuids matching the given parameters, in the requested sort order and then
+	 * by id, without reading the uuids of other pages
+	 * 
+	 * @param theParams the search parameters
+	 * @param firstResult the position of the first uuid returned
+	 * @param maxResults the number of uuids returned at most
+	 * @return the matching uuids
+	 */
+	@Authorized(PrivilegeConstants.GET_LOCATIONS)
+	List<String> getSearchResultUuids(@Nonnull SearchParameterMap theParams, int firstResult, int maxResults);
+	
+	/**
+	 * Returns the Organizations matching the given parameters whose id is greater than afterId, ordered
+	 * by id
+	 * 
+	 * @param theParams the search parameters
+	 * @param afterId the id of the last Organization of the previous page, null for the first page
+	 * @param maxResults the number of Organizations returned at most
+	 * @return the matching Organizations
+	 */
+	@Authorized(PrivilegeConstants.GET_LOCATIONS)
+	List<FhirOrganization> getSearchResultsAfter(@Nonnull SearchParameterMap theParams, Integer afterId, int maxResults);
+	
+	@Authorized(PrivilegeConstants.GET_LOCATIONS)
+	List<String> getExistingUuids(@Nonnull Collection<String> uuids);
+	
+	/**
+	 * Applies new limits to the uuid lookups kept in memory by this dao
+	 * 
+	 * @param maxEntries the number of lookups kept at most
+	 * @param timeToLive time in milliseconds a lookup is kept
+	 */
+	void setCacheLimits(int maxEntries, long timeToLive);
 }
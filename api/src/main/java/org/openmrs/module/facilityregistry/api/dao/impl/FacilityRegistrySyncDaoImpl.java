@@ -0,0 +1,189 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.api.dao.impl;
+
+import javax.annotation.Nonnull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Setter;
+import org.hibernate.Criteria;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.openmrs.Location;
+import org.openmrs.module.facilityregistry.api.dao.FacilityRegistrySyncDao;
+import org.openmrs.module.facilityregistry.model.FacilityRegistryFingerprint;
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncLock;
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncRun;
+import org.openmrs.module.facilityregistry.model.FhirOrganization;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+@Component
+public class FacilityRegistrySyncDaoImpl implements FacilityRegistrySyncDao {
+	
+	@Setter
+	@Autowired
+	@Qualifier("sessionFactory")
+	private SessionFactory sessionFactory;
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<String, FhirOrganization> getOrganizationsByUuid(@Nonnull Collection<String> uuids) {
+		Map<String, FhirOrganization> organizations = new HashMap<>();
+		if (!uuids.isEmpty()) {
+			List<FhirOrganization> results = getSession().createCriteria(FhirOrganization.class)
+			        .add(Restrictions.in("uuid", uuids)).list();
+			for (FhirOrganization organization : results) {
+				organizations.put(organization.getUuid(), organization);
+			}
+		}
+		return organizations;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<String, Location> getLocationsByUuid(@Nonnull Collection<String> uuids) {
+		Map<String, Location> locations = new HashMap<>();
+		if (!uuids.isEmpty()) {
+			List<Location> results = getSession().createCriteria(Location.class).add(Restrictions.in("uuid", uuids))
+			        .list();
+			for (Location location : results) {
+				locations.put(location.getUuid(), location);
+			}
+		}
+		return locations;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<String> getExistingLocationUuids(@Nonnull Collection<String> uuids) {
+		if (uuids.isEmpty()) {
+			return new ArrayList<>();
+		}
+		return getSession().createCriteria(Location.class).add(Restrictions.in("uuid", uuids))
+		        .setProjection(Projections.property("uuid")).list();
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Location> getTaggedLocationsAfter(@Nonnull String tagName, Integer afterId, int maxResults) {
+		Criteria criteria = getSession().createCriteria(Location.class).createAlias("tags", "tag")
+		        .add(Restrictions.eq("tag.name", tagName)).add(Restrictions.eq("retired", false));
+		if (afterId != null) {
+			criteria.add(Restrictions.gt("locationId", afterId));
+		}
+		List<Integer> ids = criteria.setProjection(Projections.distinct(Projections.id()))
+		        .addOrder(Order.asc("locationId")).setMaxResults(maxResults).list();
+		if (ids.isEmpty()) {
+			return new ArrayList<>();
+		}
+		return getSession().createCriteria(Location.class).add(Restrictions.in("locationId", ids))
+		        .addOrder(Order.asc("locationId")).list();
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<String, FacilityRegistryFingerprint> getFingerprints(@Nonnull String resourceType,
+	        @Nonnull Collection<String> uuids) {
+		Map<String, FacilityRegistryFingerprint> fingerprints = new HashMap<>();
+		if (!uuids.isEmpty()) {
+			List<FacilityRegistryFingerprint> results = getSession().createCriteria(FacilityRegistryFingerprint.class)
+			        .add(Restrictions.eq("resourceType", resourceType)).add(Restrictions.in("resourceUuid", uuids)).list();
+			for (FacilityRegistryFingerprint fingerprint : results) {
+				fingerprints.put(fingerprint.getResourceUuid(), fingerprint);
+			}
+		}
+		return fingerprints;
+	}
+	
+	@Override
+	public void saveFingerprint(@Nonnull FacilityRegistryFingerprint fingerprint) {
+		getSession().saveOrUpdate(fingerprint);
+	}
+	
+	@Override
+	public FacilityRegistrySyncLock getSyncLock(@Nonnull String name) {
+		return (FacilityRegistrySyncLock) getSession().get(FacilityRegistrySyncLock.class, name);
+	}
+	
+	@Override
+	public void saveSyncLock(@Nonnull FacilityRegistrySyncLock lock) {
+		getSession().saveOrUpdate(lock);
+	}
+	
+	@Override
+	public boolean acquireSyncLock(@Nonnull String name, @Nonnull String owner, @Nonnull Date now,
+	        @Nonnull Date lockedUntil) {
+		return getSession()
+		        .createQuery("update FacilityRegistrySyncLock set owner = :owner, lockedUntil = :lockedUntil "
+		                + "where name = :name and (lockedUntil is null or lockedUntil < :now) "
+		                + "and (nextRunAfter is null or nextRunAfter <= :now)")
+		        .setParameter("owner", owner).setParameter("lockedUntil", lockedUntil).setParameter("name", name)
+		        .setParameter("now", now).executeUpdate() == 1;
+	}
+	
+	@Override
+	public boolean renewSyncLock(@Nonnull String name, @Nonnull String owner, @Nonnull Date lockedUntil) {
+		return getSession()
+		        .createQuery(
+		            "update FacilityRegistrySyncLock set lockedUntil = :lockedUntil where name = :name and owner = :owner")
+		        .setParameter("lockedUntil", lockedUntil).setParameter("name", name).setParameter("owner", owner)
+		        .executeUpdate() == 1;
+	}
+	
+	@Override
+	public FacilityRegistrySyncRun getLatestSyncRun() {
+		return (FacilityRegistrySyncRun) getSession().createCriteria(FacilityRegistrySyncRun.class)
+		        .addOrder(Order.desc("id")).setMaxResults(1).uniqueResult();
+	}
+	
+	@Override
+	public void saveSyncRun(@Nonnull FacilityRegistrySyncRun syncRun) {
+		getSession().saveOrUpdate(syncRun);
+	}
+	
+	@Override
+	public int deleteOldSyncRuns(int keep) {
+		Integer newestDeleted = (Integer) getSession().createCriteria(FacilityRegistrySyncRun.class)
+		        .setProjection(Projections.id()).addOrder(Order.desc("id")).setFirstResult(keep).setMaxResults(1)
+		        .uniqueResult();
+		if (newestDeleted == null) {
+			return 0;
+		}
+		return getSession().createQuery("delete from FacilityRegistrySyncRun where id <= :id")
+		        .setParameter("id", newestDeleted).executeUpdate();
+	}
+	
+	@Override
+	public void flushAndClear() {
+		Session session = getSession();
+		session.flush();
+		session.clear();
+	}
+	
+	@Override
+	public void clear() {
+		getSession().clear();
+	}
+	
+	private Session getSession() {
+		return sessionFactory.getCurrentSession();
+	}
+}
@@ -11,15 +11,47 @@ package org.openmrs.module.facilityregistry.api.dao.impl;
 
 import javax.annotation.Nonnull;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
 import org.hibernate.Criteria;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.LikeExpression;
+import org.hibernate.criterion.MatchMode;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
+import org.hibernate.type.StringType;
+import org.hibernate.type.Type;
+import org.openmrs.module.facilityregistry.FacilityRegistryClientConfig;
+import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
 import org.openmrs.module.facilityregistry.api.dao.FhirOrganizationDao;
 import org.openmrs.module.facilityregistry.model.FhirOrganization;
+import org.openmrs.module.facilityregistry.model.FhirOrganizationClosure;
+import org.openmrs.module.facilityregistry.utils.BoundedCache;
+import org.openmrs.module.facilityregistry.utils.FacilityRegistryCaches;
 import org.openmrs.module.fhir2.FhirConstants;
 import org.openmrs.module.fhir2.api.dao.impl.BaseFhirDao;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import ca.uhn.fhir.rest.param.ReferenceOrListParam;
+import ca.uhn.fhir.rest.param.ReferenceParam;
 import ca.uhn.fhir.rest.param.StringAndListParam;
+import ca.uhn.fhir.rest.param.StringParam;
 import lombok.Setter;
 import lombok.AccessLevel;
 
@@ -27,24 +59,234 @@ import lombok.AccessLevel;
 @Setter(AccessLevel.PACKAGE)
 public class FhirOrganizationDaoImpl extends BaseFhirDao<FhirOrganization> implements FhirOrganizationDao {
 	
+	private static final Logger log = LoggerFactory.getLogger(FhirOrganizationDaoImpl.class);
+	
+	private static final String BELOW_SQL = "{alias}.organization_id in (select c.descendant_id from fhir_organization_closure c "
+	        + "join fhir_organization a on a.organization_id = c.ancestor_id where c.depth > 0 and a.uuid in (%s))";
+	
+	private static final String ABOVE_SQL = "{alias}.organization_id in (select c.ancestor_id from fhir_organization_closure c "
+	        + "join fhir_organization d on d.organization_id = c.descendant_id where c.depth > 0 and d.uuid in (%s))";
+	
+	@Autowired
+	private FacilityRegistryClientConfig config;
+	
+	// uuid to organization_id, so that reads by uuid are answered from the second-level cache
+	private final BoundedCache<String, Integer> organizationIds = new BoundedCache<>(
+	        FacilityRegistryCaches.DEFAULT_MAX_ENTRIES, FacilityRegistryCaches.DEFAULT_TIME_TO_LIVE * 1000L);
+	
+	@Override
+	public FhirOrganization get(@Nonnull String uuid) {
+		Session session = getSessionFactory().getCurrentSession();
+		Integer id = organizationIds.get(uuid);
+		if (id != null) {
+			FhirOrganization organization = (FhirOrganization) session.get(FhirOrganization.class, id);
+			// the id may belong to a rolled back insert or to an Organization whose uuid was changed since
+			if (organization != null && uuid.equals(organization.getUuid())) {
+				return organization;
+			}
+			organizationIds.remove(uuid);
+		}
+		
+		id = (Integer) session.createCriteria(FhirOrganization.class).add(Restrictions.eq("uuid", uuid))
+		        .setProjection(Projections.id()).uniqueResult();
+		if (id == null) {
+			return null;
+		}
+		organizationIds.put(uuid, id);
+		return (FhirOrganization) session.get(FhirOrganization.class, id);
+	}
+	
+	@Override
+	public FhirOrganization delete(@Nonnull String uuid) {
+		organizationIds.remove(uuid);
+		return super.delete(uuid);
+	}
+	
+	@Override
+	public void setCacheLimits(int maxEntries, long timeToLive) {
+		organizationIds.setLimits(maxEntries, timeToLive);
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<String> getExistingUuids(@Nonnull Collection<String> uuids) {
+		if (uuids.isEmpty()) {
+			return new ArrayList<>();
+		}
+		return getSessionFactory().getCurrentSession().createCriteria(FhirOrganization.class)
+		        .add(Restrictions.in("uuid", uuids)).setProjection(Projections.property("uuid")).list();
+	}
+	
+	/**
+	 * Joins on the addresses can repeat an Organization, so the search itself only selects the distinct
+	 * ids of the matches. The page is cut from the Organizations with those ids, each of them is a single
+	 * row there.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<String> getSearchResultUuids(@Nonnull SearchParameterMap theParams, int firstResult, int maxResults) {
+		Session session = getSessionFactory().getCurrentSession();
+		DetachedCriteria matches = DetachedCriteria.forClass(FhirOrganization.class);
+		// the executable criteria is the one held by the detached criteria, the search params are added to it
+		Criteria matchCriteria = matches.getExecutableCriteria(session).add(Restrictions.eq("voided", false));
+		setupSearchParams(matchCriteria, theParams);
+		matches.setProjection(Projections.distinct(Projections.id()));
+		
+		Criteria criteria = session.createCriteria(FhirOrganization.class).add(Subqueries.propertyIn("id", matches));
+		handleSort(criteria, theParams.getSortSpec());
+		// ties in the requested order are broken by id, so that pages neither overlap nor leave gaps
+		criteria.addOrder(Order.asc("id"));
+		return criteria.setProjection(Projections.property("uuid")).setFirstResult(firstResult)
+		        .setMaxResults(maxResults).list();
+	}
+	
+	/**
+	 * Seeks past afterId on the primary key rather than skipping an offset. Joins on the addresses can
+	 * repeat an Organization, so the distinct ids of the page are read first and then loaded.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<FhirOrganization> getSearchResultsAfter(@Nonnull SearchParameterMap theParams, Integer afterId,
+	        int maxResults) {
+		Session session = getSessionFactory().getCurrentSession();
+		Criteria criteria = session.createCriteria(FhirOrganization.class).add(Restrictions.eq("voided", false));
+		if (afterId != null) {
+			criteria.add(Restrictions.gt("id", afterId));
+		}
+		setupSearchParams(criteria, theParams);
+		List<Integer> ids = criteria.setProjection(Projections.distinct(Projections.id())).addOrder(Order.asc("id"))
+		        .setMaxResults(maxResults).list();
+		if (ids.isEmpty()) {
+			return new ArrayList<>();
+		}
+		return session.createCriteria(FhirOrganization.class).add(Restrictions.in("id", ids)).addOrder(Order.asc("id"))
+		        .list();
+	}
+	
+	@Override
+	public FhirOrganization createOrUpdate(@Nonnull FhirOrganization newEntry) {
+		FhirOrganization organization = super.createOrUpdate(newEntry);
+		updateHierarchy(organization);
+		organizationIds.put(organization.getUuid(), organization.getId());
+		return organization;
+	}
+	
+	/**
+	 * Keeps fhir_organization_closure in step with the part-of reference of the given Organization. Nothing
+	 * is written while the stored parent is unchanged. Otherwise the Organization and its subtree are
+	 * unlinked from their old ancestors and linked below the ancestors of the new parent.
+	 */
+	@SuppressWarnings("unchecked")
+	private void updateHierarchy(FhirOrganization organization) {
+		Session session = getSessionFactory().getCurrentSession();
+		Integer id = organization.getId();
+		FhirOrganization parent = getHierarchyParent(organization);
+		Integer parentId = parent != null ? parent.getId() : null;
+		
+		boolean linked = false;
+		Integer currentParentId = null;
+		List<Object[]> rows = closureQuery(session,
+		    "select ancestor_id, depth from fhir_organization_closure where descendant_id = :id and depth <= 1")
+		            .setParameter("id", id).list();
+		for (Object[] row : rows) {
+			if (((Number) row[1]).intValue() == 0) {
+				linked = true;
+			} else {
+				currentParentId = ((Number) row[0]).intValue();
+			}
+		}
+		if (linked && Objects.equals(currentParentId, parentId)) {
+			return;
+		}
+		
+		if (!linked) {
+			closureQuery(session,
+			    "insert into fhir_organization_closure (ancestor_id, descendant_id, depth) values (:id, :id, 0)")
+			            .setParameter("id", id).executeUpdate();
+		}
+		if (currentParentId != null) {
+			List<Integer> oldAncestors = getIds(closureQuery(session,
+			    "select ancestor_id from fhir_organization_closure where descendant_id = :id and depth > 0")
+			            .setParameter("id", id).list());
+			closureQuery(session,
+			    "delete from fhir_organization_closure where descendant_id in (:subtree) and ancestor_id in (:ancestors)")
+			            .setParameterList("subtree", getSubtreeIds(session, id))
+			            .setParameterList("ancestors", oldAncestors).executeUpdate();
+		}
+		if (parentId == null) {
+			return;
+		}
+		
+		// a parent saved through the cascade, or stored before the closure table, is linked first
+		if (closureQuery(session,
+		    "select depth from fhir_organization_closure where ancestor_id = :id and descendant_id = :id")
+		            .setParameter("id", parentId).list().isEmpty()) {
+			updateHierarchy(parent);
+		}
+		if (getSubtreeIds(session, id).contains(parentId)) {
+			log.warn("Organization {} is not linked below {} in the hierarchy as that would form a cycle",
+			    organization.getUuid(), parent.getUuid());
+			return;
+		}
+		closureQuery(session, "insert into fhir_organization_closure (ancestor_id, descendant_id, depth) "
+		        + "select a.ancestor_id, d.descendant_id, a.depth + d.depth + 1 from fhir_organization_closure a, "
+		        + "fhir_organization_closure d where a.descendant_id = :parent and d.ancestor_id = :id")
+		                .setParameter("parent", parentId).setParameter("id", id).executeUpdate();
+	}
+	
+	/**
+	 * The hierarchy follows partOf, and the mCSD part-of extension for Organizations that only have that
+	 */
+	private FhirOrganization getHierarchyParent(FhirOrganization organization) {
+		return organization.getPartOfOrg() != null ? organization.getPartOfOrg() : organization.getMcsdPartOfOrg();
+	}
+	
+	private List<Integer> getSubtreeIds(Session session, Integer id) {
+		return getIds(closureQuery(session, "select descendant_id from fhir_organization_closure where ancestor_id = :id")
+		        .setParameter("id", id).list());
+	}
+	
+	private List<Integer> getIds(List<?> values) {
+		return values.stream().map(value -> ((Number) value).intValue()).collect(Collectors.toList());
+	}
+	
+	// declaring the closure entity keeps Hibernate from flushing or evicting anything else for these statements
+	private SQLQuery closureQuery(Session session, String sql) {
+		return session.createSQLQuery(sql).addSynchronizedEntityClass(FhirOrganizationClosure.class);
+	}
+	
 	@Override
 	protected void setupSearchParams(Criteria criteria, SearchParameterMap theParams) {
+		boolean prefixSearch = config.isPrefixSearch();
 		theParams.getParameters().forEach(entry -> {
 			switch (entry.getKey()) {
 				case FhirConstants.NAME_SEARCH_HANDLER:
-					entry.getValue().forEach(param -> handleName(criteria, (StringAndListParam) param.getParam()));
+					entry.getValue().forEach(
+					    param -> handleName(criteria, (StringAndListParam) param.getParam(), prefixSearch));
 					break;
 				case FhirConstants.CITY_SEARCH_HANDLER:
-					entry.getValue().forEach(param -> handleCity(criteria, (StringAndListParam) param.getParam()));
+					entry.getValue().forEach(
+					    param -> handleCity(criteria, (StringAndListParam) param.getParam(), prefixSearch));
 					break;
 				case FhirConstants.STATE_SEARCH_HANDLER:
-					entry.getValue().forEach(param -> handleState(criteria, (StringAndListParam) param.getParam()));
+					entry.getValue().forEach(
+					    param -> handleState(criteria, (StringAndListParam) param.getParam(), prefixSearch));
 					break;
 				case FhirConstants.COUNTRY_SEARCH_HANDLER:
-					entry.getValue().forEach(param -> handleCountry(criteria, (StringAndListParam) param.getParam()));
+					entry.getValue().forEach(
+					    param -> handleCountry(criteria, (StringAndListParam) param.getParam(), prefixSearch));
 					break;
 				case FhirConstants.POSTALCODE_SEARCH_HANDLER:
-					entry.getValue().forEach(param -> handlePostalCode(criteria, (StringAndListParam) param.getParam()));
+					entry.getValue().forEach(
+					    param -> handlePostalCode(criteria, (StringAndListParam) param.getParam(), prefixSearch));
+					break;
+				case FacilityRegistryConstants.PARTOF_BELOW_SEARCH_HANDLER:
+					entry.getValue().forEach(
+					    param -> handleHierarchy(criteria, (ReferenceOrListParam) param.getParam(), BELOW_SQL));
+					break;
+				case FacilityRegistryConstants.PARTOF_ABOVE_SEARCH_HANDLER:
+					entry.getValue().forEach(
+					    param -> handleHierarchy(criteria, (ReferenceOrListParam) param.getParam(), ABOVE_SQL));
 					break;
 				case FhirConstants.COMMON_SEARCH_HANDLER:
 					handleCommonSearchParameters(entry.getValue()).ifPresent(criteria::add);
@@ -53,25 +295,84 @@ public class FhirOrganizationDaoImpl extends BaseFhirDao<FhirOrganization> imple
 		});
 	}
 	
-	private void handleName(Criteria criteria, StringAndListParam namePattern) {
-		handleAndListParam(namePattern, (name) -> propertyLike("name", name)).ifPresent(criteria::add);
+	private void handleName(Criteria criteria, StringAndListParam namePattern, boolean prefixSearch) {
+		handleAndListParam(namePattern, (name) -> searchLike("name", name, prefixSearch)).ifPresent(criteria::add);
+	}
+	
+	private void handleCity(Criteria criteria, StringAndListParam cityPattern, boolean prefixSearch) {
+		handleAndListParam(cityPattern, (city) -> searchLike("address.city", city, prefixSearch))
+		        .ifPresent(criteria::add);
 	}
 	
-	private void handleCity(Criteria criteria, StringAndListParam cityPattern) {
-		handleAndListParam(cityPattern, (city) -> propertyLike("address.city", city)).ifPresent(criteria::add);
+	private void handleCountry(Criteria criteria, StringAndListParam countryPattern, boolean prefixSearch) {
+		handleAndListParam(countryPattern, (country) -> searchLike("address.country", country, prefixSearch))
+		        .ifPresent(criteria::add);
 	}
 	
-	private void handleCountry(Criteria criteria, StringAndListParam countryPattern) {
-		handleAndListParam(countryPattern, (country) -> propertyLike("address.country", country)).ifPresent(criteria::add);
+	private void handlePostalCode(Criteria criteria, StringAndListParam postalCodePattern, boolean prefixSearch) {
+		handleAndListParam(postalCodePattern,
+		    (postalCode) -> searchLike("address.postalCode", postalCode, prefixSearch)).ifPresent(criteria::add);
 	}
 	
-	private void handlePostalCode(Criteria criteria, StringAndListParam postalCodePattern) {
-		handleAndListParam(postalCodePattern, (postalCode) -> propertyLike("address.postalCode", postalCode))
+	private void handleState(Criteria criteria, StringAndListParam statePattern, boolean prefixSearch) {
+		handleAndListParam(statePattern, (state) -> searchLike("address.state", state, prefixSearch))
 		        .ifPresent(criteria::add);
 	}
 	
-	private void handleState(Criteria criteria, StringAndListParam statePattern) {
-		handleAndListParam(statePattern, (state) -> propertyLike("address.state", state)).ifPresent(criteria::add);
+	/**
+	 * Restricts the results to the descendants or ancestors of the referenced Organizations, answered by
+	 * a single subquery on fhir_organization_closure. The referenced Organizations themselves are not
+	 * included.
+	 */
+	private void handleHierarchy(Criteria criteria, ReferenceOrListParam references, String sql) {
+		List<String> uuids = references == null ? Collections.emptyList()
+		        : references.getValuesAsQueryTokens().stream().map(ReferenceParam::getIdPart).filter(Objects::nonNull)
+		                .collect(Collectors.toList());
+		if (uuids.isEmpty()) {
+			return;
+		}
+		Type[] types = new Type[uuids.size()];
+		Arrays.fill(types, StringType.INSTANCE);
+		criteria.add(Restrictions.sqlRestriction(
+		    String.format(sql, String.join(", ", Collections.nCopies(uuids.size(), "?"))), uuids.toArray(), types));
+	}
+	
+	/**
+	 * Matches a string parameter without a modifier as a plain prefix LIKE when prefix search is on.
+	 * Unlike the case insensitive match of propertyLike, which wraps the column in lower(), this lets the
+	 * database use the index on the column. Case sensitivity then follows the column collation.
+	 */
+	private Optional<Criterion> searchLike(String propertyName, StringParam param, boolean prefixSearch) {
+		if (!prefixSearch || param == null || param.isExact() || param.isContains()) {
+			return propertyLike(propertyName, param);
+		}
+		return Optional.of(new PrefixLikeExpression(propertyName, param.getValue()));
+	}
+	
+	/**
+	 * A prefix LIKE that matches % and _ in the prefix literally, so that a name such as 100% does not
+	 * match every Organization starting with 100
+	 */
+	private static class PrefixLikeExpression extends LikeExpression {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private static final char ESCAPE_CHAR = '\\';
+		
+		PrefixLikeExpression(String propertyName, String prefix) {
+			super(propertyName, escape(prefix), MatchMode.START, ESCAPE_CHAR, false);
+		}
+		
+		private static String escape(String value) {
+			StringBuilder escaped = new StringBuilder(value.length());
+			for (char c : value.toCharArray()) {
+				if (c == ESCAPE_CHAR || c == '%' || c == '_') {
+					escaped.append(ESCAPE_CHAR);
+				}
+				escaped.append(c);
+			}
+			return escaped.toString();
+		}
 	}
 	
 	@Override
@@ -0,0 +1,55 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.api.impl;
+
+import javax.annotation.Nonnull;
+
+import org.hl7.fhir.r4.model.Organization;
+import org.openmrs.module.facilityregistry.api.translators.OrganizationTranslator;
+import org.openmrs.module.facilityregistry.model.FhirOrganization;
+
+/**
+ * Answers {@link #toFhirResource(FhirOrganization)} from the {@link OrganizationResourceCache} and
+ * translates through the wrapped translator otherwise. Updating an Organization evicts its entry.
+ */
+class CachingOrganizationTranslator implements OrganizationTranslator {
+	
+	private final OrganizationTranslator translator;
+	
+	private final OrganizationResourceCache cache;
+	
+	CachingOrganizationTranslator(OrganizationTranslator translator, OrganizationResourceCache cache) {
+		this.translator = translator;
+		this.cache = cache;
+	}
+	
+	@Override
+	public Organization toFhirResource(@Nonnull FhirOrganization fhirOganization) {
+		Organization cached = cache.get(fhirOganization);
+		if (cached != null) {
+			return cached;
+		}
+		Organization organization = translator.toFhirResource(fhirOganization);
+		cache.put(fhirOganization, organization);
+		return organization;
+	}
+	
+	@Override
+	public FhirOrganization toOpenmrsType(@Nonnull Organization fhirOrganization) {
+		return translator.toOpenmrsType(fhirOrganization);
+	}
+	
+	@Override
+	public FhirOrganization toOpenmrsType(@Nonnull FhirOrganization existingOrganization,
+	        @Nonnull Organization fhirOrganization) {
+		cache.evict(existingOrganization.getUuid());
+		return translator.toOpenmrsType(existingOrganization, fhirOrganization);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.api.impl;
+
+import javax.annotation.Nonnull;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.hl7.fhir.r4.model.InstantType;
+import org.hl7.fhir.r4.model.Organization;
+import org.openmrs.module.facilityregistry.api.dao.FhirOrganizationDao;
+import org.openmrs.module.facilityregistry.api.translators.OrganizationTranslator;
+import org.openmrs.module.fhir2.api.search.SearchQueryInclude;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+
+/**
+ * Answers an Organization search without counting its matches first. Each page reads one row past
+ * its end, which tells whether there is a next page. The size stays unknown, so the Bundle has a next
+ * link and no total, until a page reaches the last match.
+ */
+class CountFreeSearchBundleProvider implements IBundleProvider, Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final SearchParameterMap theParams;
+	
+	private final FhirOrganizationDao dao;
+	
+	private final OrganizationTranslator translator;
+	
+	private final SearchQueryInclude<Organization> searchQueryInclude;
+	
+	private final String uuid = UUID.randomUUID().toString();
+	
+	private final IPrimitiveType<Date> published = new InstantType(new Date());
+	
+	private volatile Integer size;
+	
+	CountFreeSearchBundleProvider(SearchParameterMap theParams, FhirOrganizationDao dao,
+	    OrganizationTranslator translator, SearchQueryInclude<Organization> searchQueryInclude) {
+		this.theParams = theParams;
+		this.dao = dao;
+		this.translator = translator;
+		this.searchQueryInclude = searchQueryInclude;
+	}
+	
+	@Override
+	public IPrimitiveType<Date> getPublished() {
+		return published;
+	}
+	
+	@Nonnull
+	@Override
+	public List<IBaseResource> getResources(int fromIndex, int toIndex) {
+		int pageSize = toIndex - fromIndex;
+		if (pageSize <= 0) {
+			return new ArrayList<>();
+		}
+		
+		List<String> uuids = dao.getSearchResultUuids(theParams, fromIndex, pageSize + 1);
+		if (uuids.size() > pageSize) {
+			uuids = uuids.subList(0, pageSize);
+			size = null;
+		} else {
+			// this page reached the last match, the server now leaves out the next link
+			size = fromIndex + uuids.size();
+		}
+		if (uuids.isEmpty()) {
+			return new ArrayList<>();
+		}
+		
+		List<Organization> resources = dao.getSearchResults(theParams, uuids).stream().map(translator::toFhirResource)
+		        .collect(Collectors.toList());
+		List<IBaseResource> results = new ArrayList<>(resources);
+		results.addAll(searchQueryInclude.getIncludedResources(resources, theParams));
+		return results;
+	}
+	
+	@Override
+	public String getUuid() {
+		return uuid;
+	}
+	
+	@Override
+	public Integer preferredPageSize() {
+		return null;
+	}
+	
+	/**
+	 * @return null until a page has reached the last match
+	 */
+	@Override
+	public Integer size() {
+		return size;
+	}
+}
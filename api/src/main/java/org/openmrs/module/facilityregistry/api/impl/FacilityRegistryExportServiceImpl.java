@@ -0,0 +1,100 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.api.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import lombok.AccessLevel;
+import lombok.Setter;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.openmrs.Location;
+import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
+import org.openmrs.module.facilityregistry.api.FacilityRegistryExportService;
+import org.openmrs.module.facilityregistry.api.dao.FacilityRegistrySyncDao;
+import org.openmrs.module.facilityregistry.api.dao.FhirOrganizationDao;
+import org.openmrs.module.facilityregistry.api.translators.OrganizationTranslator;
+import org.openmrs.module.facilityregistry.model.FhirOrganization;
+import org.openmrs.module.facilityregistry.utils.FhirUtils;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+import org.openmrs.module.fhir2.api.translators.LocationTranslator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+@Component
+@Transactional(readOnly = true)
+@Setter(AccessLevel.PACKAGE)
+public class FacilityRegistryExportServiceImpl implements FacilityRegistryExportService {
+	
+	static final int CHUNK_SIZE = 200;
+	
+	@Autowired
+	private FacilityRegistrySyncDao dao;
+	
+	@Autowired
+	private FhirOrganizationDao organizationDao;
+	
+	// the plain translator, an export passing through the translated resource cache would only evict
+	// the Organizations that searches keep asking for
+	@Autowired
+	private OrganizationTranslator organizationTranslator;
+	
+	@Autowired
+	private LocationTranslator locationTranslator;
+	
+	@Override
+	public long exportOrganizations(Writer writer) throws IOException {
+		SearchParameterMap theParams = new SearchParameterMap();
+		long exported = 0;
+		Integer afterId = null;
+		List<FhirOrganization> chunk;
+		do {
+			chunk = organizationDao.getSearchResultsAfter(theParams, afterId, CHUNK_SIZE);
+			for (FhirOrganization organization : chunk) {
+				writeLine(organizationTranslator.toFhirResource(organization), writer);
+				afterId = organization.getId();
+			}
+			exported += chunk.size();
+			endChunk(writer);
+		} while (chunk.size() == CHUNK_SIZE);
+		return exported;
+	}
+	
+	@Override
+	public long exportLocations(Writer writer) throws IOException {
+		long exported = 0;
+		Integer afterId = null;
+		List<Location> chunk;
+		do {
+			chunk = dao.getTaggedLocationsAfter(FacilityRegistryConstants.FACILITY_REGISTRY_LOCATION, afterId,
+			    CHUNK_SIZE);
+			for (Location location : chunk) {
+				writeLine(locationTranslator.toFhirResource(location), writer);
+				afterId = location.getLocationId();
+			}
+			exported += chunk.size();
+			endChunk(writer);
+		} while (chunk.size() == CHUNK_SIZE);
+		return exported;
+	}
+	
+	private void writeLine(IBaseResource resource, Writer writer) throws IOException {
+		FhirUtils.encodeResource(resource, writer);
+		writer.write('\n');
+	}
+	
+	// sends the chunk on to the client and detaches its entities before the next one is read
+	private void endChunk(Writer writer) throws IOException {
+		writer.flush();
+		dao.clear();
+	}
+}
@@ -0,0 +1,293 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import lombok.AccessLevel;
+import lombok.Setter;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.openmrs.module.facilityregistry.FacilityRegistryClientConfig;
+import org.openmrs.module.facilityregistry.api.FacilityRegistrySaveResult;
+import org.openmrs.module.facilityregistry.api.FacilityRegistrySyncService;
+import org.openmrs.module.facilityregistry.api.dao.FacilityRegistrySyncDao;
+import org.openmrs.module.facilityregistry.api.dao.FhirOrganizationDao;
+import org.openmrs.module.facilityregistry.api.translators.OrganizationTranslator;
+import org.openmrs.module.facilityregistry.model.FacilityRegistryFingerprint;
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncLock;
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncRun;
+import org.openmrs.module.facilityregistry.model.FhirOrganization;
+import org.openmrs.module.facilityregistry.utils.FhirUtils;
+import org.openmrs.module.fhir2.api.dao.FhirLocationDao;
+import org.openmrs.module.fhir2.api.translators.LocationTranslator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+@Component
+@Transactional
+@Setter(AccessLevel.PACKAGE)
+public class FacilityRegistrySyncServiceImpl implements FacilityRegistrySyncService {
+	
+	private static final Logger log = LoggerFactory.getLogger(FacilityRegistrySyncServiceImpl.class);
+	
+	static final String SYNC_LOCK_NAME = "facilityregistry.sync";
+	
+	// the number of runs kept in facility_registry_sync_run
+	static final int SYNC_RUN_HISTORY = 500;
+	
+	@Autowired
+	private FacilityRegistrySyncDao dao;
+	
+	@Autowired
+	private FhirOrganizationDao organizationDao;
+	
+	@Autowired
+	private FhirLocationDao locationDao;
+	
+	@Autowired
+	private OrganizationTranslator organizationTranslator;
+	
+	@Autowired
+	private LocationTranslator locationTranslator;
+	
+	@Autowired
+	private OrganizationResourceCache organizationResourceCache;
+	
+	@Autowired
+	private FacilityRegistryClientConfig config;
+	
+	@Override
+	public FacilityRegistrySaveResult saveAll(List<DomainResource> resources) {
+		FacilityRegistrySaveResult result = new FacilityRegistrySaveResult();
+		int batchSize = config.getPersistBatchSize();
+		for (int i = 0; i < resources.size(); i += batchSize) {
+			saveBatch(resources.subList(i, Math.min(i + batchSize, resources.size())), result);
+			// keeps the session small, entities of earlier batches are found again by query
+			dao.flushAndClear();
+		}
+		return result;
+	}
+	
+	private void saveBatch(List<DomainResource> batch, FacilityRegistrySaveResult result) {
+		List<String> organizationUuids = new ArrayList<>();
+		List<String> locationUuids = new ArrayList<>();
+		for (DomainResource resource : batch) {
+			if (resource instanceof Organization) {
+				organizationUuids.add(resource.getIdElement().getIdPart());
+			} else if (resource instanceof Location) {
+				locationUuids.add(resource.getIdElement().getIdPart());
+			}
+		}
+		
+		Map<String, FhirOrganization> organizations = dao.getOrganizationsByUuid(organizationUuids);
+		Map<String, org.openmrs.Location> locations = dao.getLocationsByUuid(locationUuids);
+		Map<String, FacilityRegistryFingerprint> organizationFingerprints = dao
+		        .getFingerprints(ResourceType.Organization.name(), organizationUuids);
+		Map<String, FacilityRegistryFingerprint> locationFingerprints = dao.getFingerprints(ResourceType.Location.name(),
+		    locationUuids);
+		for (DomainResource resource : batch) {
+			String uuid = resource.getIdElement().getIdPart();
+			if (resource instanceof Organization) {
+				FhirOrganization existing = organizations.get(uuid);
+				FacilityRegistryFingerprint fingerprint = getFingerprint(organizationFingerprints, resource);
+				if (existing != null && isUnchanged(fingerprint, resource)) {
+					result.recordSkipped();
+					continue;
+				}
+				FhirOrganization organization = existing == null
+				        ? organizationTranslator.toOpenmrsType((Organization) resource)
+				        : organizationTranslator.toOpenmrsType(existing, (Organization) resource);
+				organizations.put(uuid, organizationDao.createOrUpdate(organization));
+				organizationResourceCache.evict(uuid);
+				recordWrite(existing == null, fingerprint, resource, result);
+			} else if (resource instanceof Location) {
+				org.openmrs.Location existing = locations.get(uuid);
+				FacilityRegistryFingerprint fingerprint = getFingerprint(locationFingerprints, resource);
+				if (existing != null && isUnchanged(fingerprint, resource)) {
+					result.recordSkipped();
+					continue;
+				}
+				org.openmrs.Location location = existing == null ? locationTranslator.toOpenmrsType((Location) resource)
+				        : locationTranslator.toOpenmrsType(existing, (Location) resource);
+				locations.put(uuid, locationDao.createOrUpdate(location));
+				recordWrite(existing == null, fingerprint, resource, result);
+			}
+		}
+	}
+	
+	private FacilityRegistryFingerprint getFingerprint(Map<String, FacilityRegistryFingerprint> fingerprints,
+	        DomainResource resource) {
+		String uuid = resource.getIdElement().getIdPart();
+		// a resource listed twice in the batch finds the fingerprint written for its first occurrence
+		return fingerprints.computeIfAbsent(uuid,
+		    key -> new FacilityRegistryFingerprint(resource.getResourceType().name(), key));
+	}
+	
+	/**
+	 * Compares the resource with the version last written. A matching meta.versionId and
+	 * meta.lastUpdated answer without encoding the resource, otherwise the content hashes decide. A new
+	 * version with unchanged content is remembered, so the next run can skip it without hashing.
+	 */
+	private boolean isUnchanged(FacilityRegistryFingerprint fingerprint, DomainResource resource) {
+		if (fingerprint.getContentHash() == null) {
+			return false;
+		}
+		String versionId = resource.getMeta().getVersionId();
+		Long lastUpdated = getLastUpdatedMillis(resource);
+		if (versionId != null && lastUpdated != null && versionId.equals(fingerprint.getVersionId())
+		        && lastUpdated.equals(fingerprint.getLastUpdatedMillis())) {
+			return true;
+		}
+		if (!getContentHash(resource).equals(fingerprint.getContentHash())) {
+			return false;
+		}
+		fingerprint.setVersionId(versionId);
+		fingerprint.setLastUpdatedMillis(lastUpdated);
+		dao.saveFingerprint(fingerprint);
+		return true;
+	}
+	
+	private static Long getLastUpdatedMillis(DomainResource resource) {
+		Date lastUpdated = resource.getMeta().getLastUpdated();
+		return lastUpdated != null ? lastUpdated.getTime() : null;
+	}
+	
+	private void recordWrite(boolean created, FacilityRegistryFingerprint fingerprint, DomainResource resource,
+	        FacilityRegistrySaveResult result) {
+		fingerprint.setVersionId(resource.getMeta().getVersionId());
+		fingerprint.setLastUpdatedMillis(getLastUpdatedMillis(resource));
+		fingerprint.setContentHash(getContentHash(resource));
+		dao.saveFingerprint(fingerprint);
+		if (created) {
+			result.recordCreated();
+		} else {
+			result.recordUpdated();
+		}
+	}
+	
+	/**
+	 * Hashes the resource without its meta element, which carries the version of the registry and the
+	 * tags added by the sync rather than content
+	 */
+	static String getContentHash(DomainResource resource) {
+		DomainResource content = resource.copy();
+		content.setMeta(null);
+		content.setIdElement(new IdType(resource.getIdElement().getIdPart()));
+		return DigestUtils.sha256Hex(FhirUtils.encodeResourceToString(content));
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<String> getExistingLocationUuids(Collection<String> uuids) {
+		return dao.getExistingLocationUuids(uuids);
+	}
+	
+	@Override
+	public boolean acquireSyncLock(String owner) {
+		if (dao.getSyncLock(SYNC_LOCK_NAME) == null) {
+			// the row is seeded by liquibase, but not in databases created from the mappings
+			dao.saveSyncLock(new FacilityRegistrySyncLock(SYNC_LOCK_NAME));
+			dao.flushAndClear();
+		}
+		Date now = new Date();
+		return dao.acquireSyncLock(SYNC_LOCK_NAME, owner, now, getLeaseEnd(now));
+	}
+	
+	@Override
+	public boolean renewSyncLock(String owner) {
+		return dao.renewSyncLock(SYNC_LOCK_NAME, owner, getLeaseEnd(new Date()));
+	}
+	
+	@Override
+	public void releaseSyncLock(String owner, boolean changesFound) {
+		FacilityRegistrySyncLock lock = dao.getSyncLock(SYNC_LOCK_NAME);
+		if (lock == null || !owner.equals(lock.getOwner())) {
+			log.warn("the Facility Registry sync lease of {} expired before the run finished", owner);
+			return;
+		}
+		
+		long minInterval = config.getMinSyncInterval();
+		long maxInterval = Math.max(minInterval, config.getMaxSyncInterval());
+		long interval = minInterval;
+		if (!changesFound && lock.getRunInterval() != null) {
+			interval = Math.min(Math.max(lock.getRunInterval() * 2, minInterval), maxInterval);
+		}
+		
+		lock.setOwner(null);
+		lock.setLockedUntil(null);
+		lock.setRunInterval(interval);
+		lock.setNextRunAfter(new Date(System.currentTimeMillis() + interval));
+		dao.saveSyncLock(lock);
+		log.debug("next Facility Registry sync in {} ms", interval);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public FacilityRegistrySyncRun getResumableSyncRun() {
+		FacilityRegistrySyncRun latest = dao.getLatestSyncRun();
+		if (latest == null || !latest.isFullSync() || latest.getStatus() == FacilityRegistrySyncRun.Status.COMPLETED
+		        || latest.getCheckpointUrl() == null) {
+			return null;
+		}
+		return latest;
+	}
+	
+	@Override
+	public FacilityRegistrySyncRun startSyncRun(String owner, boolean fullSync, Date changedSince,
+	        FacilityRegistrySyncRun resumed) {
+		FacilityRegistrySyncRun syncRun = new FacilityRegistrySyncRun();
+		syncRun.setOwner(owner);
+		syncRun.setStatus(FacilityRegistrySyncRun.Status.RUNNING);
+		syncRun.setFullSync(fullSync);
+		syncRun.setChangedSince(changedSince);
+		syncRun.setStarted(new Date());
+		if (resumed != null) {
+			syncRun.setResumedFrom(resumed.getId());
+			// the checkpoint is only copied once this run saved a page of its own, so a checkpoint that
+			// can no longer be read costs a single failed run
+			syncRun.setHighWaterMark(resumed.getHighWaterMark());
+			// the snapshot stays bounded by the first run of the chain, so the resources changed while it
+			// was interrupted are fetched again by the next incremental sync
+			syncRun.setSearchStarted(
+			    resumed.getSearchStarted() != null ? resumed.getSearchStarted() : resumed.getStarted());
+		} else {
+			// an incremental sync never moves the last sync time back
+			syncRun.setHighWaterMark(changedSince);
+		}
+		dao.saveSyncRun(syncRun);
+		
+		int deleted = dao.deleteOldSyncRuns(SYNC_RUN_HISTORY);
+		if (deleted > 0) {
+			log.debug("deleted {} old Facility Registry sync runs", deleted);
+		}
+		return syncRun;
+	}
+	
+	@Override
+	public void saveSyncRun(FacilityRegistrySyncRun syncRun) {
+		dao.saveSyncRun(syncRun);
+	}
+	
+	private Date getLeaseEnd(Date now) {
+		return new Date(now.getTime() + config.getSyncLockTimeout());
+	}
+}
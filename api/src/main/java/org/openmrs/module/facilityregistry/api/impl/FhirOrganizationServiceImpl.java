@@ -9,19 +9,27 @@
  */
 package org.openmrs.module.facilityregistry.api.impl;
 
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.rest.api.SearchTotalModeEnum;
 import ca.uhn.fhir.rest.api.SortSpec;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ReferenceOrListParam;
 import ca.uhn.fhir.rest.param.StringAndListParam;
 import ca.uhn.fhir.rest.param.TokenAndListParam;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.hl7.fhir.r4.model.Organization;
+import org.openmrs.module.facilityregistry.FacilityRegistryClientConfig;
+import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
 import org.openmrs.module.facilityregistry.api.FhirOrganizationService;
+import org.openmrs.module.facilityregistry.api.OrganizationSearchPage;
 import org.openmrs.module.facilityregistry.api.dao.FhirOrganizationDao;
 import org.openmrs.module.facilityregistry.api.translators.OrganizationTranslator;
 import org.openmrs.module.facilityregistry.model.FhirOrganization;
@@ -41,6 +49,10 @@ import org.springframework.transaction.annotation.Transactional;
 @Getter(AccessLevel.PROTECTED)
 public class FhirOrganizationServiceImpl extends BaseFhirService<Organization, FhirOrganization> implements FhirOrganizationService {
 	
+	static final int DEFAULT_PAGE_SIZE = 10;
+	
+	static final int MAXIMUM_PAGE_SIZE = 100;
+	
 	@Autowired
 	private FhirOrganizationDao dao;
 	
@@ -53,21 +65,89 @@ public class FhirOrganizationServiceImpl extends BaseFhirService<Organization, F
 	@Autowired
 	private SearchQueryInclude<Organization> searchQueryInclude;
 	
+	@Autowired
+	private OrganizationResourceCache resourceCache;
+	
+	@Autowired
+	private FacilityRegistryClientConfig config;
+	
+	// built on first use, once the translator and the cache are injected
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private volatile OrganizationTranslator cachingTranslator;
+	
+	@Override
+	protected OrganizationTranslator getTranslator() {
+		OrganizationTranslator current = cachingTranslator;
+		if (current == null) {
+			// the wrapper holds no state of its own, so a second one built by a concurrent call does no harm
+			current = new CachingOrganizationTranslator(translator, resourceCache);
+			cachingTranslator = current;
+		}
+		return current;
+	}
+	
 	@Override
 	@Transactional(readOnly = true)
 	public IBundleProvider searchForOrganizations(StringAndListParam name, StringAndListParam city,
 	        StringAndListParam country, StringAndListParam postalCode, StringAndListParam state, TokenAndListParam id,
-	        DateRangeParam lastUpdated, HashSet<Include> includes, SortSpec sort) {
+	        DateRangeParam lastUpdated, ReferenceOrListParam partOfBelow, ReferenceOrListParam partOfAbove,
+	        HashSet<Include> includes, SortSpec sort, SearchTotalModeEnum totalMode) {
+		
+		SearchParameterMap theParams = getSearchParameters(name, city, country, postalCode, state, id, lastUpdated,
+		    partOfBelow, partOfAbove).addParameter(FhirConstants.INCLUDE_SEARCH_HANDLER, includes).setSortSpec(sort);
 		
-		SearchParameterMap theParams = new SearchParameterMap().addParameter(FhirConstants.NAME_SEARCH_HANDLER, name)
+		boolean countFree = totalMode != null ? totalMode == SearchTotalModeEnum.NONE : config.isCountFreeSearch();
+		if (countFree) {
+			return new CountFreeSearchBundleProvider(theParams, dao, getTranslator(), searchQueryInclude);
+		}
+		return searchQuery.getQueryResults(theParams, dao, getTranslator(), searchQueryInclude);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public OrganizationSearchPage searchForOrganizationsAfter(StringAndListParam name, StringAndListParam city,
+	        StringAndListParam country, StringAndListParam postalCode, StringAndListParam state, TokenAndListParam id,
+	        DateRangeParam lastUpdated, ReferenceOrListParam partOfBelow, ReferenceOrListParam partOfAbove,
+	        String cursor, Integer count) {
+		
+		SearchParameterMap theParams = getSearchParameters(name, city, country, postalCode, state, id, lastUpdated,
+		    partOfBelow, partOfAbove);
+		int pageSize = count == null || count <= 0 ? DEFAULT_PAGE_SIZE : Math.min(count, MAXIMUM_PAGE_SIZE);
+		
+		// the row past the page is only read to tell whether there is a next page
+		List<FhirOrganization> organizations = dao.getSearchResultsAfter(theParams,
+		    OrganizationSearchPage.decodeCursor(cursor), pageSize + 1);
+		boolean hasNext = organizations.size() > pageSize;
+		if (hasNext) {
+			organizations = organizations.subList(0, pageSize);
+		}
+		
+		OrganizationTranslator organizationTranslator = getTranslator();
+		List<Organization> resources = organizations.stream().map(organizationTranslator::toFhirResource)
+		        .collect(Collectors.toList());
+		String nextCursor = hasNext ? OrganizationSearchPage.encodeCursor(organizations.get(pageSize - 1).getId())
+		        : null;
+		return new OrganizationSearchPage(resources, nextCursor);
+	}
+	
+	private SearchParameterMap getSearchParameters(StringAndListParam name, StringAndListParam city,
+	        StringAndListParam country, StringAndListParam postalCode, StringAndListParam state, TokenAndListParam id,
+	        DateRangeParam lastUpdated, ReferenceOrListParam partOfBelow, ReferenceOrListParam partOfAbove) {
+		return new SearchParameterMap().addParameter(FhirConstants.NAME_SEARCH_HANDLER, name)
 		        .addParameter(FhirConstants.CITY_SEARCH_HANDLER, city)
 		        .addParameter(FhirConstants.STATE_SEARCH_HANDLER, state)
 		        .addParameter(FhirConstants.COUNTRY_SEARCH_HANDLER, country)
 		        .addParameter(FhirConstants.POSTALCODE_SEARCH_HANDLER, postalCode)
+		        .addParameter(FacilityRegistryConstants.PARTOF_BELOW_SEARCH_HANDLER, partOfBelow)
+		        .addParameter(FacilityRegistryConstants.PARTOF_ABOVE_SEARCH_HANDLER, partOfAbove)
 		        .addParameter(FhirConstants.COMMON_SEARCH_HANDLER, FhirConstants.ID_PROPERTY, id)
-		        .addParameter(FhirConstants.COMMON_SEARCH_HANDLER, FhirConstants.LAST_UPDATED_PROPERTY, lastUpdated)
-		        .addParameter(FhirConstants.INCLUDE_SEARCH_HANDLER, includes).setSortSpec(sort);
-		
-		return searchQuery.getQueryResults(theParams, dao, translator, searchQueryInclude);
+		        .addParameter(FhirConstants.COMMON_SEARCH_HANDLER, FhirConstants.LAST_UPDATED_PROPERTY, lastUpdated);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<String> getExistingUuids(Collection<String> uuids) {
+		return dao.getExistingUuids(uuids);
 	}
 }
@@ -0,0 +1,140 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.api.impl;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hl7.fhir.r4.model.Organization;
+import org.openmrs.module.facilityregistry.model.FhirOrganization;
+import org.openmrs.module.facilityregistry.utils.BoundedCache;
+import org.openmrs.module.facilityregistry.utils.FacilityRegistryCaches;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the FHIR Organizations translated from stored Organizations, so that reads and searches do
+ * not translate the same Organization, its types and its hierarchy again. An entry is only used while
+ * the uuid and dateChanged of the stored Organization match those it was translated from. The DSTU3
+ * conversion of a translated Organization is kept in the same entry, so R3 reads and searches neither
+ * translate nor convert it again. Callers always get their own copy of a cached resource.
+ */
+@Component
+public class OrganizationResourceCache {
+	
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+	
+	private final BoundedCache<String, CachedOrganization> organizations = new BoundedCache<>(DEFAULT_MAX_ENTRIES,
+	        FacilityRegistryCaches.DEFAULT_TIME_TO_LIVE * 1000L);
+	
+	private final AtomicLong hits = new AtomicLong();
+	
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * @return a copy of the resource translated from the current version of the Organization, or null
+	 */
+	public Organization get(FhirOrganization organization) {
+		Long version = getVersion(organization);
+		CachedOrganization cached = version != null ? organizations.get(organization.getUuid()) : null;
+		if (cached == null || cached.version != version.longValue()) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return cached.resource.copy();
+	}
+	
+	public void put(FhirOrganization organization, Organization resource) {
+		Long version = getVersion(organization);
+		if (version != null) {
+			organizations.put(organization.getUuid(), new CachedOrganization(version, resource.copy()));
+		}
+	}
+	
+	/**
+	 * @param uuid the uuid of the Organization
+	 * @param version the time the Organization was last changed, in milliseconds
+	 * @return a copy of the DSTU3 conversion of that version of the Organization, or null
+	 */
+	public org.hl7.fhir.dstu3.model.Organization getDstu3(String uuid, long version) {
+		CachedOrganization cached = organizations.get(uuid);
+		org.hl7.fhir.dstu3.model.Organization resource = cached != null && cached.version == version ? cached.dstu3
+		        : null;
+		return resource != null ? resource.copy() : null;
+	}
+	
+	/**
+	 * Keeps the DSTU3 conversion with the translated Organization of the same version. Nothing is kept
+	 * while that version is not cached.
+	 */
+	public void putDstu3(String uuid, long version, org.hl7.fhir.dstu3.model.Organization resource) {
+		CachedOrganization cached = organizations.get(uuid);
+		if (cached != null && cached.version == version) {
+			cached.dstu3 = resource.copy();
+		}
+	}
+	
+	public void evict(String uuid) {
+		organizations.remove(uuid);
+	}
+	
+	public void clear() {
+		organizations.clear();
+	}
+	
+	/**
+	 * @param maxEntries the number of translated Organizations kept at most
+	 * @param timeToLive time in milliseconds a translated Organization is kept
+	 */
+	public void setLimits(int maxEntries, long timeToLive) {
+		organizations.setLimits(maxEntries, timeToLive);
+	}
+	
+	/**
+	 * @return the number of translations answered from the cache since the module started
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return the number of translations that had to be made since the module started
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	public int getSize() {
+		return organizations.size();
+	}
+	
+	private Long getVersion(FhirOrganization organization) {
+		if (organization.getUuid() == null) {
+			return null;
+		}
+		Date version = organization.getDateChanged() != null ? organization.getDateChanged()
+		        : organization.getDateCreated();
+		return version != null ? version.getTime() : null;
+	}
+	
+	private static class CachedOrganization {
+		
+		private final long version;
+		
+		private final Organization resource;
+		
+		private volatile org.hl7.fhir.dstu3.model.Organization dstu3;
+		
+		CachedOrganization(long version, Organization resource) {
+			this.version = version;
+			this.resource = resource;
+		}
+	}
+}
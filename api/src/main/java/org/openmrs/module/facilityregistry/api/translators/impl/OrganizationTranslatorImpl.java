@@ -21,14 +21,13 @@ import org.hl7.fhir.r4.model.ResourceType;
 import org.hl7.fhir.r4.model.Type;
 
 import org.openmrs.Concept;
-import org.openmrs.api.AdministrationService;
+import org.openmrs.module.facilityregistry.FacilityRegistryClientConfig;
 import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
 import org.openmrs.module.facilityregistry.api.dao.FhirOrganizationDao;
 import org.openmrs.module.facilityregistry.api.translators.OrganizationTranslator;
 import org.openmrs.module.facilityregistry.model.FhirOganizationAddress;
 import org.openmrs.module.facilityregistry.model.FhirOrganization;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import org.openmrs.module.fhir2.api.translators.ConceptTranslator;
 import org.openmrs.module.fhir2.api.translators.impl.BaseReferenceHandlingTranslator;
@@ -43,8 +42,7 @@ import static org.apache.commons.lang3.Validate.notNull;
 public class OrganizationTranslatorImpl extends BaseReferenceHandlingTranslator implements OrganizationTranslator {
 	
 	@Autowired
-	@Qualifier("adminService")
-	private AdministrationService administrationService;
+	private FacilityRegistryClientConfig config;
 	
 	@Autowired
 	private ConceptTranslator conceptTranslator;
@@ -59,9 +57,7 @@ public class OrganizationTranslatorImpl extends BaseReferenceHandlingTranslator
 		fhirOrg.setId(openmrsOrg.getUuid());
 		fhirOrg.setName(openmrsOrg.getName());
 		Identifier identifier = fhirOrg.addIdentifier();
-		identifier.setSystem(
-		    administrationService.getGlobalProperty(FacilityRegistryConstants.FACILITY_REGISTRY_ORGANISATION_FHIR_SYSTEM,
-		        "http://fhir.openmrs.org/organization/identifier")).setValue(openmrsOrg.getUuid());
+		identifier.setSystem(config.getOrganizationIdentifierSystem()).setValue(openmrsOrg.getUuid());
 		if (openmrsOrg.getAddress() != null) {
 			for (FhirOganizationAddress openmrsAddress : openmrsOrg.getAddress()) {
 				Address fhirAddress = fhirOrg.addAddress();
@@ -108,10 +104,9 @@ public class OrganizationTranslatorImpl extends BaseReferenceHandlingTranslator
 				hierarchyTypeExt.setUrl(FacilityRegistryConstants.MCSD_EXTENTION_URL_HIERACHY_TYPE);
 				hierarchyTypeExt.setValue(conceptTranslator.toFhirResource(openmrsOrg.getMcsdHierarchyType()));
 			}
-			
-			fhirOrg.getMeta().setLastUpdated(openmrsOrg.getDateChanged());
-			
 		}
+		fhirOrg.getMeta().setLastUpdated(
+		    openmrsOrg.getDateChanged() != null ? openmrsOrg.getDateChanged() : openmrsOrg.getDateCreated());
 		return fhirOrg;
 	}
 	
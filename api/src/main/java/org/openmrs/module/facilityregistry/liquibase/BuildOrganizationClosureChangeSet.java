@@ -0,0 +1,93 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.liquibase;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.SetupException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Fills fhir_organization_closure for the Organizations stored before the table existed. Self rows and
+ * direct parents are inserted first, then each pass adds the ancestors one level further up until a
+ * pass finds nothing left to add.
+ */
+public class BuildOrganizationClosureChangeSet implements CustomTaskChange {
+	
+	// guards against part-of cycles in existing data, mCSD hierarchies are only a few levels deep
+	static final int MAX_DEPTH = 100;
+	
+	private static final String INSERT_SELF = "insert into fhir_organization_closure (ancestor_id, descendant_id, depth) "
+	        + "select o.organization_id, o.organization_id, 0 from fhir_organization o where not exists "
+	        + "(select 1 from fhir_organization_closure e where e.ancestor_id = o.organization_id "
+	        + "and e.descendant_id = o.organization_id)";
+	
+	private static final String INSERT_PARENTS = "insert into fhir_organization_closure (ancestor_id, descendant_id, depth) "
+	        + "select coalesce(o.partof_org_id, o.mcsd_partof_org_id), o.organization_id, 1 from fhir_organization o "
+	        + "where coalesce(o.partof_org_id, o.mcsd_partof_org_id) is not null and not exists "
+	        + "(select 1 from fhir_organization_closure e where e.descendant_id = o.organization_id and e.depth > 0)";
+	
+	private static final String INSERT_NEXT_LEVEL = "insert into fhir_organization_closure (ancestor_id, descendant_id, depth) "
+	        + "select p.ancestor_id, c.descendant_id, c.depth + 1 from fhir_organization_closure c "
+	        + "join fhir_organization_closure p on p.descendant_id = c.ancestor_id and p.depth = 1 "
+	        + "where c.depth = ? and not exists (select 1 from fhir_organization_closure e "
+	        + "where e.ancestor_id = p.ancestor_id and e.descendant_id = c.descendant_id)";
+	
+	@Override
+	public void execute(Database database) throws CustomChangeException {
+		JdbcConnection connection = (JdbcConnection) database.getConnection();
+		try {
+			executeUpdate(connection, INSERT_SELF);
+			executeUpdate(connection, INSERT_PARENTS);
+			try (PreparedStatement statement = connection.prepareStatement(INSERT_NEXT_LEVEL)) {
+				for (int depth = 1; depth < MAX_DEPTH; depth++) {
+					statement.setInt(1, depth);
+					if (statement.executeUpdate() == 0) {
+						break;
+					}
+				}
+			}
+		}
+		catch (DatabaseException | SQLException e) {
+			throw new CustomChangeException("Failed to fill fhir_organization_closure", e);
+		}
+	}
+	
+	private void executeUpdate(JdbcConnection connection, String sql) throws DatabaseException, SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			statement.executeUpdate();
+		}
+	}
+	
+	@Override
+	public String getConfirmationMessage() {
+		return "Filled fhir_organization_closure from the existing Organizations";
+	}
+	
+	@Override
+	public void setUp() throws SetupException {
+	}
+	
+	@Override
+	public void setFileOpener(ResourceAccessor resourceAccessor) {
+	}
+	
+	@Override
+	public ValidationErrors validate(Database database) {
+		return null;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * The upstream version of a Location or Organization as it was last written by the sync, used to skip
+ * resources that did not change in the Facility Registry since
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@Entity
+@Table(name = "facility_registry_fingerprint", uniqueConstraints = @UniqueConstraint(columnNames = { "resource_type",
+        "resource_uuid" }))
+public class FacilityRegistryFingerprint {
+	
+	@EqualsAndHashCode.Include
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO)
+	@Column(name = "fingerprint_id")
+	private Integer id;
+	
+	@Column(name = "resource_type", length = 32, nullable = false)
+	private String resourceType;
+	
+	@Column(name = "resource_uuid", length = 38, nullable = false)
+	private String resourceUuid;
+	
+	// meta.versionId of the upstream resource, if the registry sends one
+	@Column(name = "version_id", length = 64)
+	private String versionId;
+	
+	// meta.lastUpdated of the upstream resource in epoch milliseconds, if the registry sends one. A
+	// datetime column drops the milliseconds on MySQL, after which the stored version never matches
+	@Column(name = "last_updated_millis")
+	private Long lastUpdatedMillis;
+	
+	// SHA-256 of the resource encoded as JSON without its meta element
+	@Column(name = "content_hash", length = 64, nullable = false)
+	private String contentHash;
+	
+	public FacilityRegistryFingerprint(String resourceType, String resourceUuid) {
+		this.resourceType = resourceType;
+		this.resourceUuid = resourceUuid;
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import java.util.Date;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * A lease on the sync, shared by all OpenMRS instances using the same database. It also carries when
+ * the next sync is due, so the back-off applies to the whole cluster.
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@Entity
+@Table(name = "facility_registry_sync_lock")
+public class FacilityRegistrySyncLock {
+	
+	@EqualsAndHashCode.Include
+	@Id
+	@Column(name = "lock_name", length = 64)
+	private String name;
+	
+	// identifies the run holding the lease
+	@Column(name = "owner", length = 255)
+	private String owner;
+	
+	@Column(name = "locked_until")
+	private Date lockedUntil;
+	
+	@Column(name = "next_run_after")
+	private Date nextRunAfter;
+	
+	// the interval between the last run and the next one in milliseconds
+	@Column(name = "run_interval")
+	private Long runInterval;
+	
+	public FacilityRegistrySyncLock(String name) {
+		this.name = name;
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import java.util.Date;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * The history of one sync run. The row is written when the run starts and again after every saved
+ * page, so a full sync that dies part way still has a checkpoint the next run can resume from.
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@Entity
+@Table(name = "facility_registry_sync_run")
+public class FacilityRegistrySyncRun {
+	
+	public enum Status {
+		RUNNING,
+		COMPLETED,
+		STOPPED,
+		FAILED
+	}
+	
+	@EqualsAndHashCode.Include
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO)
+	@Column(name = "sync_run_id")
+	private Integer id;
+	
+	// identifies the run in the sync lease
+	@Column(name = "owner", length = 255)
+	private String owner;
+	
+	@Enumerated(EnumType.STRING)
+	@Column(name = "status", length = 16, nullable = false)
+	private Status status;
+	
+	@Column(name = "full_sync", nullable = false)
+	private boolean fullSync;
+	
+	// the _lastUpdated lower bound of an incremental sync
+	@Column(name = "changed_since")
+	private Date changedSince;
+	
+	@Column(name = "started", nullable = false)
+	private Date started;
+	
+	@Column(name = "finished")
+	private Date finished;
+	
+	// the run whose checkpoint this run continued from
+	@Column(name = "resumed_from")
+	private Integer resumedFrom;
+	
+	@Column(name = "pages", nullable = false)
+	private long pages;
+	
+	@Column(name = "created_resources", nullable = false)
+	private long createdResources;
+	
+	@Column(name = "updated_resources", nullable = false)
+	private long updatedResources;
+	
+	@Column(name = "skipped_resources", nullable = false)
+	private long skippedResources;
+	
+	// the latest meta.lastUpdated among the saved resources, in epoch milliseconds so that it keeps the
+	// milliseconds of the registry on MySQL too
+	@Column(name = "high_water_mark_millis")
+	private Long highWaterMarkMillis;
+	
+	// when the registry served the first page of the run, in epoch milliseconds. A resumed run keeps
+	// the time of the run that started the snapshot.
+	@Column(name = "search_started_millis")
+	private Long searchStartedMillis;
+	
+	// the next link of the last saved page, null until a page with a next link was saved
+	@Column(name = "checkpoint_url", length = 2048)
+	private String checkpointUrl;
+	
+	@Column(name = "error_message", length = 1024)
+	private String errorMessage;
+	
+	/**
+	 * @return the latest meta.lastUpdated among the saved resources, or null if none was seen yet
+	 */
+	public Date getHighWaterMark() {
+		return highWaterMarkMillis != null ? new Date(highWaterMarkMillis) : null;
+	}
+	
+	public void setHighWaterMark(Date highWaterMark) {
+		this.highWaterMarkMillis = highWaterMark != null ? highWaterMark.getTime() : null;
+	}
+	
+	/**
+	 * @return when the registry served the first page of the run, or of the run a resumed snapshot
+	 *         started with, null if that is not known
+	 */
+	public Date getSearchStarted() {
+		return searchStartedMillis != null ? new Date(searchStartedMillis) : null;
+	}
+	
+	public void setSearchStarted(Date searchStarted) {
+		this.searchStartedMillis = searchStarted != null ? searchStarted.getTime() : null;
+	}
+}
@@ -22,7 +22,10 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.search.annotations.Field;
+import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -36,6 +39,7 @@ import java.util.UUID;
 @EqualsAndHashCode(onlyExplicitlyIncluded = true, callSuper = false)
 @Entity
 @Table(name = "fhir_organization_address")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = FacilityRegistryConstants.CACHE_REGION_ORGANIZATION_ADDRESS)
 public class FhirOganizationAddress implements Auditable, Retireable {
 	
 	private static final long serialVersionUID = 1L;
@@ -15,6 +15,7 @@ import java.util.Set;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -28,18 +29,28 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.openmrs.BaseOpenmrsData;
 import org.openmrs.Concept;
+import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
 
 @Data
 @NoArgsConstructor
 @EqualsAndHashCode(onlyExplicitlyIncluded = true, callSuper = false)
 @Entity
 @Table(name = "fhir_organization")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = FacilityRegistryConstants.CACHE_REGION_ORGANIZATION)
+@BatchSize(size = FhirOrganization.BATCH_SIZE)
 public class FhirOrganization extends BaseOpenmrsData {
 	
 	private static final long serialVersionUID = 1L;
 	
+	// lazy parents and collections of the Organizations in a session are loaded this many at a time,
+	// so translating a search page takes one select per association instead of one per Organization
+	static final int BATCH_SIZE = 100;
+	
 	@EqualsAndHashCode.Include
 	@Id
 	@GeneratedValue(strategy = GenerationType.AUTO)
@@ -53,20 +64,24 @@ public class FhirOrganization extends BaseOpenmrsData {
 	private Boolean active;
 	
 	@OneToMany(cascade = CascadeType.ALL)
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = FacilityRegistryConstants.CACHE_REGION_ORGANIZATION_TYPES)
+	@BatchSize(size = BATCH_SIZE)
 	@JoinTable(name = "fhir_organization_type", joinColumns = @JoinColumn(name = "organization_id"), inverseJoinColumns = @JoinColumn(name = "concept_id"))
 	private Set<Concept> type;
 	
 	@OneToMany(cascade = CascadeType.ALL)
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = FacilityRegistryConstants.CACHE_REGION_ORGANIZATION_ADDRESSES)
+	@BatchSize(size = BATCH_SIZE)
 	@JoinTable(name = "fhir_organization_addresses", joinColumns = @JoinColumn(name = "organization_id"), inverseJoinColumns = @JoinColumn(name = "organization_address_id"))
 	private Set<FhirOganizationAddress> address;
 	
 	// The organization, of which this organization forms a part
-	@ManyToOne(cascade = CascadeType.ALL)
+	@ManyToOne(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
 	@JoinColumn(name = "partof_org_id", referencedColumnName = "organization_id")
 	private FhirOrganization partOfOrg;
 	
 	// part-of organization ,defined by the http://ihe.net/fhir/StructureDefinition/IHE.mCSD.hierarchy.extension
-	@ManyToOne(cascade = CascadeType.ALL)
+	@ManyToOne(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
 	@JoinColumn(name = "mcsd_partof_org_id", referencedColumnName = "organization_id")
 	private FhirOrganization mcsdPartOfOrg;
 	
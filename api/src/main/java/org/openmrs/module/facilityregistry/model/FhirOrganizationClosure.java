@@ -0,0 +1,60 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.model;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+import java.io.Serializable;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * One row per pair of an Organization and one of its ancestors in the part-of hierarchy, including a
+ * row linking every Organization to itself at depth 0. Maintained by the FhirOrganizationDao whenever
+ * an Organization is saved, so descendants or ancestors at any depth are found with a single indexed
+ * query.
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@Entity
+@Table(name = "fhir_organization_closure")
+public class FhirOrganizationClosure {
+	
+	@EqualsAndHashCode.Include
+	@EmbeddedId
+	private Key key;
+	
+	// number of part-of steps between the ancestor and the descendant
+	@Column(name = "depth", nullable = false)
+	private Integer depth;
+	
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	@Embeddable
+	public static class Key implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+		
+		@Column(name = "ancestor_id", nullable = false)
+		private Integer ancestorId;
+		
+		@Column(name = "descendant_id", nullable = false)
+		private Integer descendantId;
+	}
+}
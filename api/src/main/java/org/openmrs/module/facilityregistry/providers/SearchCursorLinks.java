@@ -0,0 +1,57 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.providers;
+
+import java.util.Map;
+
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.util.UrlUtil;
+import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
+
+/**
+ * Builds the links of the Bundles returned by cursor searches
+ */
+public class SearchCursorLinks {
+	
+	/**
+	 * Returns the url of the given search request with its cursor replaced by the given one. All other
+	 * parameters, including _count, are kept so the next page is filtered the same way.
+	 * 
+	 * @param requestDetails the current search request
+	 * @param cursor the cursor of the next page
+	 * @return the url of the next page
+	 */
+	public static String getNextLink(RequestDetails requestDetails, String cursor) {
+		StringBuilder link = new StringBuilder(requestDetails.getFhirServerBase()).append('/')
+		        .append(requestDetails.getRequestPath());
+		char separator = '?';
+		for (Map.Entry<String, String[]> parameter : requestDetails.getParameters().entrySet()) {
+			if (FacilityRegistryConstants.SEARCH_PARAM_CURSOR.equals(parameter.getKey())) {
+				continue;
+			}
+			for (String value : parameter.getValue()) {
+				link.append(separator).append(UrlUtil.escapeUrlParam(parameter.getKey())).append('=')
+				        .append(UrlUtil.escapeUrlParam(value));
+				separator = '&';
+			}
+		}
+		return link.append(separator).append(FacilityRegistryConstants.SEARCH_PARAM_CURSOR).append('=').append(cursor)
+		        .toString();
+	}
+	
+	/**
+	 * @param requestDetails the current request
+	 * @param id the id of a returned Organization
+	 * @return the full url of the Organization for its Bundle entry
+	 */
+	public static String getFullUrl(RequestDetails requestDetails, String id) {
+		return requestDetails.getFhirServerBase() + "/Organization/" + id;
+	}
+}
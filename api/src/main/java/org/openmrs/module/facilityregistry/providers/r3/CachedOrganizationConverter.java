@@ -0,0 +1,62 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.providers.r3;
+
+import lombok.AccessLevel;
+import lombok.Setter;
+import org.hl7.fhir.convertors.VersionConvertor_30_40;
+import org.hl7.fhir.convertors.conv30_40.Organization30_40;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.openmrs.module.facilityregistry.api.impl.OrganizationResourceCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Converts the R4 resources served by the R3 provider to DSTU3. The conversion of an Organization is
+ * kept in the {@link OrganizationResourceCache} next to its R4 translation, keyed by the id and
+ * lastUpdated of the R4 resource, so an unchanged Organization is converted once and not per request.
+ */
+@Component
+@Setter(AccessLevel.PACKAGE)
+class CachedOrganizationConverter {
+	
+	@Autowired
+	private OrganizationResourceCache resourceCache;
+	
+	Organization toDstu3(org.hl7.fhir.r4.model.Organization organization) {
+		String uuid = organization.getIdElement().getIdPart();
+		Long version = organization.getMeta().getLastUpdated() != null
+		        ? organization.getMeta().getLastUpdated().getTime()
+		        : null;
+		if (uuid == null || version == null) {
+			return Organization30_40.convertOrganization(organization);
+		}
+		
+		Organization cached = resourceCache.getDstu3(uuid, version);
+		if (cached != null) {
+			return cached;
+		}
+		Organization converted = Organization30_40.convertOrganization(organization);
+		resourceCache.putDstu3(uuid, version, converted);
+		return converted;
+	}
+	
+	/**
+	 * Converts Organizations through {@link #toDstu3(org.hl7.fhir.r4.model.Organization)} and any
+	 * other resource, such as an _include of a search, through the generic converter
+	 */
+	IBaseResource toDstu3(IBaseResource resource) {
+		if (resource instanceof org.hl7.fhir.r4.model.Organization) {
+			return toDstu3((org.hl7.fhir.r4.model.Organization) resource);
+		}
+		return VersionConvertor_30_40.convertResource((org.hl7.fhir.r4.model.Resource) resource, true);
+	}
+}
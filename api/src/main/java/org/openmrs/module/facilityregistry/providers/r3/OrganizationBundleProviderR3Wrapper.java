@@ -0,0 +1,75 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.providers.r3;
+
+import javax.annotation.Nonnull;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.openmrs.api.context.Context;
+
+/**
+ * Serves an R4 Organization search as DSTU3, converting each page through the
+ * {@link CachedOrganizationConverter} instead of converting every resource on every request.
+ */
+class OrganizationBundleProviderR3Wrapper implements IBundleProvider, Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final IBundleProvider bundleProvider;
+	
+	// a Spring bean is not serialized with the search, it is looked up again after deserialization
+	private transient CachedOrganizationConverter converter;
+	
+	OrganizationBundleProviderR3Wrapper(IBundleProvider bundleProvider, CachedOrganizationConverter converter) {
+		this.bundleProvider = bundleProvider;
+		this.converter = converter;
+	}
+	
+	@Override
+	public IPrimitiveType<Date> getPublished() {
+		return bundleProvider.getPublished();
+	}
+	
+	@Nonnull
+	@Override
+	public List<IBaseResource> getResources(int fromIndex, int toIndex) {
+		return bundleProvider.getResources(fromIndex, toIndex).stream().map(getConverter()::toDstu3)
+		        .collect(Collectors.toList());
+	}
+	
+	@Override
+	public String getUuid() {
+		return bundleProvider.getUuid();
+	}
+	
+	@Override
+	public Integer preferredPageSize() {
+		return bundleProvider.preferredPageSize();
+	}
+	
+	@Override
+	public Integer size() {
+		return bundleProvider.size();
+	}
+	
+	private CachedOrganizationConverter getConverter() {
+		if (converter == null) {
+			converter = Context.getRegisteredComponents(CachedOrganizationConverter.class).get(0);
+		}
+		return converter;
+	}
+}
@@ -17,6 +17,7 @@ import java.util.HashSet;
 import java.util.List;
 
 import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.rest.annotation.Count;
 import ca.uhn.fhir.rest.annotation.Create;
 import ca.uhn.fhir.rest.annotation.Delete;
 import ca.uhn.fhir.rest.annotation.History;
@@ -24,15 +25,21 @@ import ca.uhn.fhir.rest.annotation.IdParam;
 import ca.uhn.fhir.rest.annotation.IncludeParam;
 import ca.uhn.fhir.rest.annotation.OptionalParam;
 import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.ResourceParam;
 import ca.uhn.fhir.rest.annotation.Search;
 import ca.uhn.fhir.rest.annotation.Sort;
 import ca.uhn.fhir.rest.annotation.Update;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.SearchTotalModeEnum;
 import ca.uhn.fhir.rest.api.SortSpec;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ReferenceOrListParam;
 import ca.uhn.fhir.rest.param.StringAndListParam;
+import ca.uhn.fhir.rest.param.StringParam;
 import ca.uhn.fhir.rest.param.TokenAndListParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
@@ -41,13 +48,16 @@ import lombok.Setter;
 import org.apache.commons.collections.CollectionUtils;
 import org.hl7.fhir.convertors.conv30_40.Organization30_40;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.IdType;
 import org.hl7.fhir.dstu3.model.OperationOutcome;
 import org.hl7.fhir.dstu3.model.Organization;
 import org.hl7.fhir.dstu3.model.Resource;
+import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
 import org.openmrs.module.facilityregistry.api.FhirOrganizationService;
+import org.openmrs.module.facilityregistry.api.OrganizationSearchPage;
+import org.openmrs.module.facilityregistry.providers.SearchCursorLinks;
 import org.openmrs.module.fhir2.api.annotations.R3Provider;
-import org.openmrs.module.fhir2.api.search.SearchQueryBundleProviderR3Wrapper;
 import org.openmrs.module.fhir2.providers.util.FhirProviderUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -60,6 +70,9 @@ public class OrganizationFhirResourceProvider implements IResourceProvider {
 	@Autowired
 	private FhirOrganizationService fhirOrganizationService;
 	
+	@Autowired
+	private CachedOrganizationConverter converter;
+	
 	@Override
 	public Class<? extends IBaseResource> getResourceType() {
 		return Organization.class;
@@ -72,13 +85,13 @@ public class OrganizationFhirResourceProvider implements IResourceProvider {
 		if (organization == null) {
 			throw new ResourceNotFoundException("Could not find Organization with Id " + id.getIdPart());
 		}
-		return Organization30_40.convertOrganization(organization);
+		return converter.toDstu3(organization);
 	}
 	
 	@Create
 	public MethodOutcome createOrganization(@ResourceParam Organization organization) {
-		return FhirProviderUtils.buildCreate(Organization30_40
-		        .convertOrganization(fhirOrganizationService.create(Organization30_40.convertOrganization(organization))));
+		return FhirProviderUtils.buildCreate(
+		    converter.toDstu3(fhirOrganizationService.create(Organization30_40.convertOrganization(organization))));
 	}
 	
 	@Update
@@ -87,7 +100,7 @@ public class OrganizationFhirResourceProvider implements IResourceProvider {
 		if (id == null || id.getIdPart() == null) {
 			throw new InvalidRequestException("id must be specified to update");
 		}
-		return FhirProviderUtils.buildUpdate(Organization30_40.convertOrganization(
+		return FhirProviderUtils.buildUpdate(converter.toDstu3(
 		    fhirOrganizationService.update(id.getIdPart(), Organization30_40.convertOrganization(organization))));
 	}
 	
@@ -98,7 +111,7 @@ public class OrganizationFhirResourceProvider implements IResourceProvider {
 		if (organization == null) {
 			throw new ResourceNotFoundException("Could not find Organization to delete with id " + id.getIdPart());
 		}
-		return FhirProviderUtils.buildDelete(Organization30_40.convertOrganization(organization));
+		return FhirProviderUtils.buildDelete(converter.toDstu3(organization));
 	}
 	
 	@History
@@ -108,7 +121,7 @@ public class OrganizationFhirResourceProvider implements IResourceProvider {
 		if (organization == null) {
 			throw new ResourceNotFoundException("Could not find Organization with Id " + id.getIdPart());
 		}
-		return Organization30_40.convertOrganization(organization).getContained();
+		return converter.toDstu3(organization).getContained();
 	}
 	
 	@Search
@@ -119,14 +132,54 @@ public class OrganizationFhirResourceProvider implements IResourceProvider {
 	        @OptionalParam(name = Organization.SP_ADDRESS_STATE) StringAndListParam state,
 	        @OptionalParam(name = Organization.SP_RES_ID) TokenAndListParam id,
 	        @OptionalParam(name = "_lastUpdated") DateRangeParam lastUpdated,
+	        @OptionalParam(name = Organization.SP_PARTOF + ":below") ReferenceOrListParam partOfBelow,
+	        @OptionalParam(name = Organization.SP_PARTOF + ":above") ReferenceOrListParam partOfAbove,
 	        @IncludeParam(allow = { "Organization:" + Organization.SP_PARTOF }) HashSet<Include> includes,
-	        @Sort SortSpec sort) {
+	        @OptionalParam(name = Constants.PARAM_SEARCH_TOTAL_MODE) StringParam total, @Sort SortSpec sort) {
 		
 		if (CollectionUtils.isEmpty(includes)) {
 			includes = null;
 		}
 		
-		return new SearchQueryBundleProviderR3Wrapper(fhirOrganizationService.searchForOrganizations(name, city, country,
-		    postalCode, state, id, lastUpdated, includes, sort));
+		SearchTotalModeEnum totalMode = total == null ? null : SearchTotalModeEnum.fromCode(total.getValue());
+		
+		return new OrganizationBundleProviderR3Wrapper(fhirOrganizationService.searchForOrganizations(name, city,
+		    country, postalCode, state, id, lastUpdated, partOfBelow, partOfAbove, includes, sort, totalMode), converter);
+	}
+	
+	/**
+	 * Pages through the matching Organizations by cursor instead of by offset. The first page is asked for
+	 * with an empty _cursor, and the next link of each page carries the cursor of the page after it.
+	 */
+	@Search
+	@SuppressWarnings("unused")
+	public Bundle searchOrganizationsByCursor(
+	        @RequiredParam(name = FacilityRegistryConstants.SEARCH_PARAM_CURSOR) StringParam cursor,
+	        @OptionalParam(name = Organization.SP_NAME) StringAndListParam name,
+	        @OptionalParam(name = Organization.SP_ADDRESS_CITY) StringAndListParam city,
+	        @OptionalParam(name = Organization.SP_ADDRESS_COUNTRY) StringAndListParam country,
+	        @OptionalParam(name = Organization.SP_ADDRESS_POSTALCODE) StringAndListParam postalCode,
+	        @OptionalParam(name = Organization.SP_ADDRESS_STATE) StringAndListParam state,
+	        @OptionalParam(name = Organization.SP_RES_ID) TokenAndListParam id,
+	        @OptionalParam(name = "_lastUpdated") DateRangeParam lastUpdated,
+	        @OptionalParam(name = Organization.SP_PARTOF + ":below") ReferenceOrListParam partOfBelow,
+	        @OptionalParam(name = Organization.SP_PARTOF + ":above") ReferenceOrListParam partOfAbove,
+	        @Count Integer count, RequestDetails requestDetails) {
+		
+		OrganizationSearchPage page = fhirOrganizationService.searchForOrganizationsAfter(name, city, country, postalCode,
+		    state, id, lastUpdated, partOfBelow, partOfAbove, cursor.getValue(), count);
+		
+		Bundle bundle = new Bundle().setType(Bundle.BundleType.SEARCHSET);
+		bundle.addLink().setRelation(Bundle.LINK_SELF).setUrl(requestDetails.getCompleteUrl());
+		if (page.getNextCursor() != null) {
+			bundle.addLink().setRelation(Bundle.LINK_NEXT)
+			        .setUrl(SearchCursorLinks.getNextLink(requestDetails, page.getNextCursor()));
+		}
+		for (org.hl7.fhir.r4.model.Organization organization : page.getResources()) {
+			String fullUrl = SearchCursorLinks.getFullUrl(requestDetails, organization.getIdElement().getIdPart());
+			bundle.addEntry().setFullUrl(fullUrl).setResource(converter.toDstu3(organization))
+			        .getSearch().setMode(Bundle.SearchEntryMode.MATCH);
+		}
+		return bundle;
 	}
 }
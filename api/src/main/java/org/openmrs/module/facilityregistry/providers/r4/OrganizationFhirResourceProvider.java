@@ -17,6 +17,7 @@ import java.util.HashSet;
 import java.util.List;
 
 import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.rest.annotation.Count;
 import ca.uhn.fhir.rest.annotation.Create;
 import ca.uhn.fhir.rest.annotation.Delete;
 import ca.uhn.fhir.rest.annotation.History;
@@ -24,15 +25,21 @@ import ca.uhn.fhir.rest.annotation.IdParam;
 import ca.uhn.fhir.rest.annotation.IncludeParam;
 import ca.uhn.fhir.rest.annotation.OptionalParam;
 import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.ResourceParam;
 import ca.uhn.fhir.rest.annotation.Search;
 import ca.uhn.fhir.rest.annotation.Sort;
 import ca.uhn.fhir.rest.annotation.Update;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.SearchTotalModeEnum;
 import ca.uhn.fhir.rest.api.SortSpec;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ReferenceOrListParam;
 import ca.uhn.fhir.rest.param.StringAndListParam;
+import ca.uhn.fhir.rest.param.StringParam;
 import ca.uhn.fhir.rest.param.TokenAndListParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
@@ -40,11 +47,15 @@ import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import lombok.Setter;
 import org.apache.commons.collections.CollectionUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.Organization;
 import org.hl7.fhir.r4.model.Resource;
+import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
 import org.openmrs.module.facilityregistry.api.FhirOrganizationService;
+import org.openmrs.module.facilityregistry.api.OrganizationSearchPage;
+import org.openmrs.module.facilityregistry.providers.SearchCursorLinks;
 import org.openmrs.module.fhir2.api.annotations.R4Provider;
 import org.openmrs.module.fhir2.providers.util.FhirProviderUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -115,14 +126,53 @@ public class OrganizationFhirResourceProvider implements IResourceProvider {
 	        @OptionalParam(name = Organization.SP_ADDRESS_STATE) StringAndListParam state,
 	        @OptionalParam(name = Organization.SP_RES_ID) TokenAndListParam id,
 	        @OptionalParam(name = "_lastUpdated") DateRangeParam lastUpdated,
+	        @OptionalParam(name = Organization.SP_PARTOF + ":below") ReferenceOrListParam partOfBelow,
+	        @OptionalParam(name = Organization.SP_PARTOF + ":above") ReferenceOrListParam partOfAbove,
 	        @IncludeParam(allow = { "Organization:" + Organization.SP_PARTOF }) HashSet<Include> includes,
-	        @Sort SortSpec sort) {
+	        @OptionalParam(name = Constants.PARAM_SEARCH_TOTAL_MODE) StringParam total, @Sort SortSpec sort) {
 		
 		if (CollectionUtils.isEmpty(includes)) {
 			includes = null;
 		}
 		
+		SearchTotalModeEnum totalMode = total == null ? null : SearchTotalModeEnum.fromCode(total.getValue());
+		
 		return fhirOrganizationService.searchForOrganizations(name, city, country, postalCode, state, id, lastUpdated,
-		    includes, sort);
+		    partOfBelow, partOfAbove, includes, sort, totalMode);
+	}
+	
+	/**
+	 * Pages through the matching Organizations by cursor instead of by offset. The first page is asked for
+	 * with an empty _cursor, and the next link of each page carries the cursor of the page after it.
+	 */
+	@Search
+	@SuppressWarnings("unused")
+	public Bundle searchOrganizationsByCursor(
+	        @RequiredParam(name = FacilityRegistryConstants.SEARCH_PARAM_CURSOR) StringParam cursor,
+	        @OptionalParam(name = Organization.SP_NAME) StringAndListParam name,
+	        @OptionalParam(name = Organization.SP_ADDRESS_CITY) StringAndListParam city,
+	        @OptionalParam(name = Organization.SP_ADDRESS_COUNTRY) StringAndListParam country,
+	        @OptionalParam(name = Organization.SP_ADDRESS_POSTALCODE) StringAndListParam postalCode,
+	        @OptionalParam(name = Organization.SP_ADDRESS_STATE) StringAndListParam state,
+	        @OptionalParam(name = Organization.SP_RES_ID) TokenAndListParam id,
+	        @OptionalParam(name = "_lastUpdated") DateRangeParam lastUpdated,
+	        @OptionalParam(name = Organization.SP_PARTOF + ":below") ReferenceOrListParam partOfBelow,
+	        @OptionalParam(name = Organization.SP_PARTOF + ":above") ReferenceOrListParam partOfAbove,
+	        @Count Integer count, RequestDetails requestDetails) {
+		
+		OrganizationSearchPage page = fhirOrganizationService.searchForOrganizationsAfter(name, city, country, postalCode,
+		    state, id, lastUpdated, partOfBelow, partOfAbove, cursor.getValue(), count);
+		
+		Bundle bundle = new Bundle().setType(Bundle.BundleType.SEARCHSET);
+		bundle.addLink().setRelation(Bundle.LINK_SELF).setUrl(requestDetails.getCompleteUrl());
+		if (page.getNextCursor() != null) {
+			bundle.addLink().setRelation(Bundle.LINK_NEXT)
+			        .setUrl(SearchCursorLinks.getNextLink(requestDetails, page.getNextCursor()));
+		}
+		for (Organization organization : page.getResources()) {
+			String fullUrl = SearchCursorLinks.getFullUrl(requestDetails, organization.getIdElement().getIdPart());
+			bundle.addEntry().setFullUrl(fullUrl).setResource(organization).getSearch().setMode(Bundle.SearchEntryMode.MATCH);
+		}
+		return bundle;
 	}
 }
@@ -9,11 +9,23 @@
  */
 package org.openmrs.module.facilityregistry.task;
 
-import java.io.IOException;
-import java.util.Objects;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import org.openmrs.api.AdministrationService;
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncRun;
+import org.openmrs.module.facilityregistry.utils.FacilityRegistryHttpClient;
+import org.openmrs.module.facilityregistry.utils.FacilityRegistrySyncContext;
+import org.openmrs.module.facilityregistry.utils.FacilityRegistrySyncMetrics;
+import org.openmrs.module.facilityregistry.utils.FacilityRegistrySyncPhase;
+import org.openmrs.module.facilityregistry.utils.FacilityRegistrySyncRecorder;
 import org.openmrs.module.facilityregistry.utils.FacilityRegistryUtils;
+import org.openmrs.module.facilityregistry.utils.PagePipeline;
+import org.openmrs.module.facilityregistry.utils.StreamingPageProducer;
 import org.openmrs.scheduler.tasks.AbstractTask;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,24 +34,29 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.stereotype.Component;
 
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
-import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ParamPrefixEnum;
+import ca.uhn.fhir.rest.server.exceptions.AuthenticationException;
 
+import org.apache.http.client.utils.URIBuilder;
 import org.hl7.fhir.r4.model.Organization;
-import org.hl7.fhir.r4.model.Reference;
-import org.hl7.fhir.r4.model.Type;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.r4.model.Bundle;
-import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.InstantType;
 import org.hl7.fhir.r4.model.Location;
 import org.hl7.fhir.r4.model.ResourceType;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
-import org.hl7.fhir.r4.model.Location.LocationStatus;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.facilityregistry.FacilityRegistryClientConfig;
 import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
-import org.openmrs.module.facilityregistry.api.FhirOrganizationService;
+import org.openmrs.module.facilityregistry.api.FacilityRegistrySyncService;
 import org.openmrs.module.facilityregistry.utils.FhirUtils;
-import org.openmrs.module.fhir2.api.FhirLocationService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,9 +75,32 @@ public class FacilityRegistryTask extends AbstractTask implements ApplicationCon
 	@Qualifier("adminService")
 	private AdministrationService administrationService;
 	
+	// the number of fetched pages that may wait while the previous page is saved
+	private static final int PAGE_QUEUE_CAPACITY = 2;
+	
+	// the number of Locations the streaming sync saves together
+	private static final int STREAMING_CHUNK_SIZE = 50;
+	
+	// the length of facility_registry_sync_run.error_message
+	private static final int MAX_ERROR_MESSAGE_LENGTH = 1024;
+	
+	// guards against overlapping runs within this OpenMRS instance, the sync lease guards the cluster
+	private static final AtomicBoolean RUNNING = new AtomicBoolean();
+	
 	@Autowired
 	private FacilityRegistryUtils facilityRegistryUtils;
 	
+	@Autowired
+	private FacilityRegistrySyncService syncService;
+	
+	@Autowired
+	private FacilityRegistryClientConfig config;
+	
+	@Autowired
+	private FacilityRegistrySyncMetrics syncMetrics;
+	
+	private volatile PagePipeline<Bundle> pipeline;
+	
 	@Override
 	public void execute() {
 		
@@ -70,40 +110,399 @@ public class FacilityRegistryTask extends AbstractTask implements ApplicationCon
 		catch (Exception e) {
 			// return;
 		}
-		Bundle searchBundle;
+		// the scheduler starts the task again after every interval, even if the previous run is still going
+		if (!RUNNING.compareAndSet(false, true)) {
+			log.info("skipping FacilityRegistryTask, the previous run has not finished yet");
+			return;
+		}
+		try {
+			String owner = ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID();
+			if (!syncService.acquireSyncLock(owner)) {
+				log.debug("skipping FacilityRegistryTask, the sync is running elsewhere or is not due yet");
+				return;
+			}
+			boolean changesFound = false;
+			try {
+				changesFound = sync(owner);
+			}
+			finally {
+				syncService.releaseSyncLock(owner, changesFound);
+			}
+		}
+		finally {
+			RUNNING.set(false);
+		}
+	}
+	
+	/**
+	 * Fetches the Locations and Organizations from the Facility Registry Server and saves them
+	 * 
+	 * @param owner identifies this run in the sync lease
+	 * @return whether the run created or updated any resource
+	 */
+	private boolean sync(String owner) {
+		FacilityRegistrySyncRecorder recorder = syncMetrics.startRun();
+		FacilityRegistrySyncContext syncContext = new FacilityRegistrySyncContext();
+		FacilityRegistrySyncRun.Status status = FacilityRegistrySyncRun.Status.FAILED;
+		FacilityRegistrySyncRun syncRun = null;
+		String errorMessage = null;
 		try {
 			log.info("executing FacilityRegistryTask");
-			searchBundle = getFhirClient().search().forResource(Location.class).include(Location.INCLUDE_ORGANIZATION)
-			        .returnBundle(Bundle.class).execute();
-			log.debug(FhirUtils.getFhirContext().newJsonParser().setPrettyPrint(true).encodeResourceToString(searchBundle));
-			facilityRegistryUtils.saveFhirLocation(searchBundle, getFhirClient());
-			while (searchBundle.getLink(IBaseBundle.LINK_NEXT) != null) {
-				searchBundle = getFhirClient().loadPage().next(searchBundle).execute();
-				facilityRegistryUtils.saveFhirLocation(searchBundle, getFhirClient());
+			Date runStarted = new Date();
+			Date lastSyncTime = getLastSyncTime();
+			boolean fullSync = lastSyncTime == null || isFullSyncForced();
+			recorder.setFullSync(fullSync);
+			syncContext.setIncremental(!fullSync);
+			
+			// a full sync that was interrupted continues after the last page it saved
+			FacilityRegistrySyncRun resumed = fullSync ? syncService.getResumableSyncRun() : null;
+			syncRun = syncService.startSyncRun(owner, fullSync, fullSync ? null : lastSyncTime, resumed);
+			
+			// changed http settings take effect here, before any request of this run is in flight
+			FacilityRegistryHttpClient.refresh();
+			IGenericClient fhirClient = getFhirClient();
+			fhirClient.registerInterceptor(recorder.getClientInterceptor());
+			if (resumed != null) {
+				log.info("resuming the full snapshot of the Facility Registry started by sync run {} at {}",
+				    resumed.getId(), resumed.getCheckpointUrl());
+			} else if (fullSync) {
+				log.info("fetching a full snapshot of the Facility Registry");
+			} else {
+				log.info("fetching Facility Registry changes since {}", new InstantType(lastSyncTime).getValueAsString());
+			}
+			PagePipeline<Bundle> locationPages = createPipeline(ResourceType.Location, fullSync ? null : lastSyncTime,
+			    resumed != null ? resumed.getCheckpointUrl() : null, fhirClient, recorder);
+			boolean completed = savePages(locationPages, owner, fhirClient, syncContext, recorder, syncRun);
+			if (completed && !fullSync) {
+				// the Location search only includes the managing Organizations of changed Locations, so an
+				// Organization that changed on its own is fetched by a search of its own
+				log.info("fetching Facility Registry Organizations changed since {}",
+				    new InstantType(lastSyncTime).getValueAsString());
+				PagePipeline<Bundle> organizationPages = createPipeline(ResourceType.Organization, lastSyncTime, null,
+				    fhirClient, recorder);
+				completed = savePages(organizationPages, owner, fhirClient, syncContext, recorder, syncRun);
+			}
+			if (!completed) {
+				// pages that were not saved must be fetched again by the next run
+				log.info("Facility Registry sync was stopped before all pages were saved");
+				status = FacilityRegistrySyncRun.Status.STOPPED;
+				return syncContext.getCreatedResources() + syncContext.getUpdatedResources() > 0;
+			}
+			
+			log.info(
+			    "Facility Registry sync finished, parent Organizations: {} cache hits, {} _id searches, {} single reads",
+			    syncContext.getParentCacheHits(), syncContext.getParentBatchReads(), syncContext.getParentRemoteReads());
+			log.info("Facility Registry resources: {} created, {} updated, {} skipped as unchanged",
+			    syncContext.getCreatedResources(), syncContext.getUpdatedResources(), syncContext.getSkippedResources());
+			
+			saveLastSyncTime(getNextSyncTime(syncRun, runStarted));
+			if (fullSync) {
+				administrationService.setGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_FORCE_FULL_SYNC,
+				    "false");
+			}
+			status = FacilityRegistrySyncRun.Status.COMPLETED;
+			return syncContext.getCreatedResources() + syncContext.getUpdatedResources() > 0;
+		}
+		catch (FhirClientConnectionException e) {
+			log.error("Facility Registry sync failed", e);
+			errorMessage = e.getMessage();
+			return false;
+		}
+		catch (RuntimeException e) {
+			errorMessage = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+			throw e;
+		}
+		finally {
+			pipeline = null;
+			log.info("Facility Registry sync run: {}", syncMetrics.finishRun(recorder, status, syncContext));
+			if (syncRun != null) {
+				finishSyncRun(syncRun, status, errorMessage, syncContext, recorder);
 			}
 		}
-		catch (IOException e) {
-			log.error(e.getMessage());
+	}
+	
+	/**
+	 * Creates the pipeline fetching the pages of a search on the Facility Registry Server. A Location
+	 * search includes the managing Organizations of the Locations.
+	 * 
+	 * @param resourceType the type of the searched resources
+	 * @param lastSyncTime only fetch resources changed after this time, or everything if null
+	 * @param checkpointUrl the page a resumed run continues from, null to start from the first page
+	 */
+	private PagePipeline<Bundle> createPipeline(ResourceType resourceType, Date lastSyncTime, String checkpointUrl,
+	        IGenericClient fhirClient, FacilityRegistrySyncRecorder recorder) {
+		if (isStreamingSync()) {
+			String firstPageUrl = checkpointUrl != null ? checkpointUrl : getSearchUrl(resourceType, lastSyncTime);
+			// pages are read entry by entry, Locations are saved in chunks while the rest of the page arrives
+			return new PagePipeline<>(new StreamingPageProducer(firstPageUrl, getAuthUrl(), getAuthUserName(),
+			        getAuthPassword(), STREAMING_CHUNK_SIZE, recorder), PAGE_QUEUE_CAPACITY);
 		}
 		
+		Supplier<Bundle> firstPage;
+		if (checkpointUrl != null) {
+			firstPage = () -> fhirClient.loadPage().byUrl(checkpointUrl).andReturnBundle(Bundle.class).execute();
+		} else {
+			IQuery<Bundle> query = fhirClient.search().forResource(resourceType.name()).returnBundle(Bundle.class);
+			if (resourceType == ResourceType.Location) {
+				query = query.include(Location.INCLUDE_ORGANIZATION);
+			}
+			if (lastSyncTime != null) {
+				query = query.lastUpdated(
+				    new DateRangeParam().setLowerBound(new DateParam(ParamPrefixEnum.GREATERTHAN, lastSyncTime)));
+			}
+			firstPage = query::execute;
+		}
+		return new PagePipeline<>(() -> fetchPage(firstPage, recorder), page -> fetchNextPage(page, fhirClient, recorder),
+		        PAGE_QUEUE_CAPACITY);
+	}
+	
+	/**
+	 * Saves the pages of the pipeline as they arrive, renewing the sync lease before each page
+	 * 
+	 * @return true if all pages were saved, false if the pipeline was stopped before
+	 */
+	private boolean savePages(PagePipeline<Bundle> pagePipeline, String owner, IGenericClient fhirClient,
+	        FacilityRegistrySyncContext syncContext, FacilityRegistrySyncRecorder recorder, FacilityRegistrySyncRun syncRun) {
+		pipeline = pagePipeline;
+		return pagePipeline.run(searchBundle -> {
+			if (!syncService.renewSyncLock(owner)) {
+				log.warn("the Facility Registry sync lease was taken over by another run, stopping");
+				pagePipeline.stop();
+				return;
+			}
+			if (log.isDebugEnabled()) {
+				log.debug(FhirUtils.getPrettyParser().encodeResourceToString(searchBundle));
+			}
+			savePage(searchBundle, fhirClient, syncContext, recorder);
+			saveProgress(syncRun, searchBundle, syncContext, recorder);
+		});
+	}
+	
+	/**
+	 * Records a saved page on the sync run. A page with a next link becomes the checkpoint a later run
+	 * resumes from, all resources up to it have been saved by now.
+	 */
+	private void saveProgress(FacilityRegistrySyncRun syncRun, Bundle searchBundle, FacilityRegistrySyncContext syncContext,
+	        FacilityRegistrySyncRecorder recorder) {
+		recordPage(syncRun, searchBundle);
+		updateCounts(syncRun, syncContext, recorder);
+		syncService.saveSyncRun(syncRun);
+	}
+	
+	/**
+	 * Moves the checkpoint and the high-water mark of the sync run past a saved page. The first page of
+	 * the run also records the time the registry served it at, unless the run resumes a snapshot that
+	 * has already recorded it.
+	 */
+	static void recordPage(FacilityRegistrySyncRun syncRun, Bundle searchBundle) {
+		if (searchBundle.getLink(IBaseBundle.LINK_NEXT) != null) {
+			syncRun.setCheckpointUrl(searchBundle.getLink(IBaseBundle.LINK_NEXT).getUrl());
+		}
+		if (syncRun.getSearchStarted() == null && searchBundle.hasMeta() && searchBundle.getMeta().hasLastUpdated()) {
+			syncRun.setSearchStarted(searchBundle.getMeta().getLastUpdated());
+		}
+		syncRun.setHighWaterMark(getLatestUpdate(searchBundle, syncRun.getHighWaterMark()));
+	}
+	
+	/**
+	 * Returns the time the next incremental sync fetches the changes after. A resource saved from an
+	 * earlier page can change again while the later pages are read, and the newest meta.lastUpdated of
+	 * the run would then skip that change. The mark is therefore held at the time the registry served
+	 * the first page, the resources changed since are fetched once more by the next run.
+	 * 
+	 * @param syncRun the completed sync run, a resumed run carries the first search of its whole chain
+	 * @param runStarted the local start time of the run, used if the registry did not say its time
+	 * @return the earlier of the high-water mark and the start of the first search of the run
+	 */
+	static Date getNextSyncTime(FacilityRegistrySyncRun syncRun, Date runStarted) {
+		Date searchStarted = syncRun.getSearchStarted() != null ? syncRun.getSearchStarted() : runStarted;
+		Date highWaterMark = syncRun.getHighWaterMark();
+		if (highWaterMark == null || highWaterMark.after(searchStarted)) {
+			return searchStarted;
+		}
+		return highWaterMark;
+	}
+	
+	private void finishSyncRun(FacilityRegistrySyncRun syncRun, FacilityRegistrySyncRun.Status status, String errorMessage,
+	        FacilityRegistrySyncContext syncContext, FacilityRegistrySyncRecorder recorder) {
+		syncRun.setStatus(status);
+		syncRun.setFinished(new Date());
+		updateCounts(syncRun, syncContext, recorder);
+		if (status == FacilityRegistrySyncRun.Status.COMPLETED) {
+			syncRun.setCheckpointUrl(null);
+		}
+		if (errorMessage != null && errorMessage.length() > MAX_ERROR_MESSAGE_LENGTH) {
+			errorMessage = errorMessage.substring(0, MAX_ERROR_MESSAGE_LENGTH);
+		}
+		syncRun.setErrorMessage(errorMessage);
+		try {
+			syncService.saveSyncRun(syncRun);
+		}
+		catch (RuntimeException e) {
+			// the outcome of the sync itself must not be hidden by a failure to record it
+			log.error("Failed to save Facility Registry sync run {}", syncRun.getId(), e);
+		}
 	}
 	
-	private IGenericClient getFhirClient() throws IOException {
+	private void updateCounts(FacilityRegistrySyncRun syncRun, FacilityRegistrySyncContext syncContext,
+	        FacilityRegistrySyncRecorder recorder) {
+		syncRun.setPages(recorder.getPages());
+		syncRun.setCreatedResources(syncContext.getCreatedResources());
+		syncRun.setUpdatedResources(syncContext.getUpdatedResources());
+		syncRun.setSkippedResources(syncContext.getSkippedResources());
+	}
+	
+	@Override
+	public void shutdown() {
+		PagePipeline<Bundle> pagePipeline = pipeline;
+		if (pagePipeline != null) {
+			pagePipeline.stop();
+		}
+		super.shutdown();
+	}
+	
+	/**
+	 * Fetches the page after the given one, runs on the fetch thread of the {@link PagePipeline}
+	 * 
+	 * @return the next page, or null if the given page was the last one
+	 */
+	private Bundle fetchNextPage(Bundle searchBundle, IGenericClient fhirClient, FacilityRegistrySyncRecorder recorder) {
+		if (searchBundle.getLink(IBaseBundle.LINK_NEXT) == null) {
+			return null;
+		}
+		return fetchPage(() -> fhirClient.loadPage().next(searchBundle).execute(), recorder);
+	}
+	
+	private Bundle fetchPage(Supplier<Bundle> fetch, FacilityRegistrySyncRecorder recorder) {
+		long fetchStarted = System.nanoTime();
+		Bundle page = withAuthenticationRetry(fetch);
+		recorder.recordPageFetched(fetchStarted);
+		return page;
+	}
+	
+	private void savePage(Bundle searchBundle, IGenericClient fhirClient, FacilityRegistrySyncContext syncContext,
+	        FacilityRegistrySyncRecorder recorder) {
+		long saveStarted = System.nanoTime();
+		long persistNanosBefore = syncContext.getPersistNanos();
+		// saving a page again is harmless, every resource in it is created or updated by id
+		withAuthenticationRetry(() -> {
+			facilityRegistryUtils.saveFhirLocation(searchBundle, fhirClient, syncContext);
+			return null;
+		});
+		long persistNanos = syncContext.getPersistNanos() - persistNanosBefore;
+		recorder.record(FacilityRegistrySyncPhase.PERSIST, persistNanos);
+		recorder.record(FacilityRegistrySyncPhase.TRANSLATE, System.nanoTime() - saveStarted - persistNanos);
+	}
+	
+	/**
+	 * Returns the most recent meta.lastUpdated among the entries of the bundle
+	 * 
+	 * @param searchBundle Bundle fetched from the Facility Registry Server
+	 * @param current the high-water mark seen so far, may be null
+	 * @return the later of current and the newest entry in the bundle
+	 */
+	private static Date getLatestUpdate(Bundle searchBundle, Date current) {
+		Date latest = current;
+		for (BundleEntryComponent entry : searchBundle.getEntry()) {
+			if (entry.hasResource() && entry.getResource().hasMeta() && entry.getResource().getMeta().hasLastUpdated()) {
+				Date lastUpdated = entry.getResource().getMeta().getLastUpdated();
+				if (latest == null || lastUpdated.after(latest)) {
+					latest = lastUpdated;
+				}
+			}
+		}
+		return latest;
+	}
+	
+	private Date getLastSyncTime() {
 		administrationService = Context.getAdministrationService();
-		String fhirStorePath = administrationService.getGlobalProperty(
-		    FacilityRegistryConstants.GP_FACILITY_REGISTRY_SERVER_URL, "http://localhost:4000/fhir/DEFAULT");
-		String authUrl = administrationService.getGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_AUTH_URL,
-		    "http://localhost:4000/auth/token");
-		String authUserName = administrationService
-		        .getGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_USER_NAME, "root@gofr.org");
-		String authPassword = administrationService
-		        .getGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_PASSWORD, "gofr");
-		
-		String token = FhirUtils.getAccesToken(authUrl, authUserName, authPassword);
-		log.info("generating Bearer Token");
-		log.debug(token);
-		
-		return FhirUtils.getFhirClient(fhirStorePath, token);
+		String lastSyncTime = administrationService
+		        .getGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_LAST_SYNC_TIME);
+		if (lastSyncTime == null || lastSyncTime.trim().isEmpty()) {
+			return null;
+		}
+		try {
+			return new InstantType(lastSyncTime.trim()).getValue();
+		}
+		catch (DataFormatException e) {
+			log.warn("ignoring invalid value '{}' for {}, a full sync will be run", lastSyncTime,
+			    FacilityRegistryConstants.GP_FACILITY_REGISTRY_LAST_SYNC_TIME);
+			return null;
+		}
+	}
+	
+	private void saveLastSyncTime(Date lastSyncTime) {
+		administrationService.setGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_LAST_SYNC_TIME,
+		    new InstantType(lastSyncTime).getValueAsString());
+	}
+	
+	private boolean isFullSyncForced() {
+		return Boolean.parseBoolean(
+		    administrationService.getGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_FORCE_FULL_SYNC, "false"));
+	}
+	
+	private boolean isStreamingSync() {
+		return Boolean.parseBoolean(
+		    administrationService.getGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_STREAMING_SYNC, "false"));
+	}
+	
+	/**
+	 * Builds the url of a search run by the streaming sync
+	 * 
+	 * @param resourceType the type of the searched resources
+	 * @param lastSyncTime only fetch resources changed after this time, or everything if null
+	 */
+	private String getSearchUrl(ResourceType resourceType, Date lastSyncTime) {
+		String serverUrl = getServerUrl();
+		try {
+			URIBuilder uri = new URIBuilder((serverUrl.endsWith("/") ? serverUrl : serverUrl + "/") + resourceType.name());
+			if (resourceType == ResourceType.Location) {
+				uri.addParameter("_include", Location.INCLUDE_ORGANIZATION.getValue());
+			}
+			if (lastSyncTime != null) {
+				uri.addParameter(Constants.PARAM_LASTUPDATED, ParamPrefixEnum.GREATERTHAN.getValue()
+				        + new InstantType(lastSyncTime).getValueAsString());
+			}
+			return uri.build().toString();
+		}
+		catch (URISyntaxException e) {
+			throw new FhirClientConnectionException("Invalid Facility Registry Server url " + serverUrl, e);
+		}
+	}
+	
+	private IGenericClient getFhirClient() {
+		return FhirUtils.getFhirClient(getServerUrl(), getAuthUrl(), getAuthUserName(), getAuthPassword());
+	}
+	
+	private String getServerUrl() {
+		return config.getServerUrl();
+	}
+	
+	private String getAuthUrl() {
+		return config.getAuthUrl();
+	}
+	
+	private String getAuthUserName() {
+		return config.getAuthUserName();
+	}
+	
+	private String getAuthPassword() {
+		return config.getAuthPassword();
+	}
+	
+	/**
+	 * Runs a call against the Facility Registry Server, retrying it once if the server rejected the
+	 * Bearer token. The rejected token has already been dropped from the cache by then, so the retry
+	 * runs with a fresh one.
+	 */
+	private <T> T withAuthenticationRetry(Supplier<T> call) {
+		try {
+			return call.get();
+		}
+		catch (AuthenticationException e) {
+			log.info("Bearer Token was rejected by the Facility Registry Server, retrying with a new token");
+			return call.get();
+		}
 	}
 	
 	@Override
@@ -0,0 +1,127 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches Bearer tokens issued by the Facility Registry auth server until shortly before they expire,
+ * so that a sync only asks for a new token when the current one is about to run out
+ */
+public class BearerTokenCache {
+	
+	private static final Logger log = LoggerFactory.getLogger(BearerTokenCache.class);
+	
+	// tokens are refreshed this long before the expiry announced by the auth server
+	static final long REFRESH_MARGIN_MILLIS = 30 * 1000L;
+	
+	// used when the auth server does not send expires_in
+	static final long DEFAULT_EXPIRES_IN_SECONDS = 5 * 60L;
+	
+	private static final BearerTokenCache INSTANCE = new BearerTokenCache();
+	
+	private final Map<String, CachedToken> tokens = new ConcurrentHashMap<>();
+	
+	private final AtomicLong tokenRequests = new AtomicLong();
+	
+	/**
+	 * @return the cache shared by all sync runs
+	 */
+	public static BearerTokenCache getInstance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * Returns a valid token for the given credentials, requesting a new one from the auth server only
+	 * when none is cached or the cached one is about to expire
+	 * 
+	 * @param authUrl url for generating the acces Bearer token
+	 * @param authUserName login user name for the Facility Registry Server
+	 * @param authPassword login password for the Facility Registry Server
+	 * @return String Token
+	 */
+	public String getToken(String authUrl, String authUserName, String authPassword) throws IOException {
+		String key = getKey(authUrl, authUserName, authPassword);
+		CachedToken cached = tokens.get(key);
+		if (cached != null && !cached.isDueForRefresh()) {
+			return cached.getToken();
+		}
+		
+		synchronized (this) {
+			// another thread may have refreshed the token while this one was waiting
+			cached = tokens.get(key);
+			if (cached != null && !cached.isDueForRefresh()) {
+				return cached.getToken();
+			}
+			
+			log.info("generating Bearer Token");
+			tokenRequests.incrementAndGet();
+			FhirUtils.AccessToken accessToken = FhirUtils.requestAccessToken(authUrl, authUserName, authPassword);
+			long expiresIn = accessToken.getExpiresIn() != null ? accessToken.getExpiresIn() : DEFAULT_EXPIRES_IN_SECONDS;
+			tokens.put(key, new CachedToken(accessToken.getToken(), System.currentTimeMillis() + expiresIn * 1000L));
+			return accessToken.getToken();
+		}
+	}
+	
+	/**
+	 * Drops the cached token for the given credentials, typically after the server rejected it
+	 * 
+	 * @param authUrl url for generating the acces Bearer token
+	 * @param authUserName login user name for the Facility Registry Server
+	 * @param authPassword login password for the Facility Registry Server
+	 */
+	public void invalidate(String authUrl, String authUserName, String authPassword) {
+		tokens.remove(getKey(authUrl, authUserName, authPassword));
+	}
+	
+	/**
+	 * @return the number of tokens requested from the auth server since the module started
+	 */
+	public long getTokenRequests() {
+		return tokenRequests.get();
+	}
+	
+	/**
+	 * Drops all cached tokens
+	 */
+	public void clear() {
+		tokens.clear();
+	}
+	
+	private String getKey(String authUrl, String authUserName, String authPassword) {
+		return authUrl + "|" + authUserName + "|" + authPassword;
+	}
+	
+	private static class CachedToken {
+		
+		private final String token;
+		
+		private final long expiresAt;
+		
+		CachedToken(String token, long expiresAt) {
+			this.token = token;
+			this.expiresAt = expiresAt;
+		}
+		
+		String getToken() {
+			return token;
+		}
+		
+		boolean isDueForRefresh() {
+			return System.currentTimeMillis() >= expiresAt - REFRESH_MARGIN_MILLIS;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * A small in-memory cache holding at most a fixed number of entries, each for a limited time. When
+ * full, the least recently used entry is dropped. Thread safe.
+ */
+public class BoundedCache<K, V> {
+	
+	private final LongSupplier clock;
+	
+	private final LinkedHashMap<K, CachedValue<V>> entries = new LinkedHashMap<K, CachedValue<V>>(16, 0.75f, true) {
+		
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, CachedValue<V>> eldest) {
+			return size() > maxEntries;
+		}
+	};
+	
+	private int maxEntries;
+	
+	private long timeToLive;
+	
+	/**
+	 * @param maxEntries the number of entries kept at most
+	 * @param timeToLive time in milliseconds an entry is kept
+	 */
+	public BoundedCache(int maxEntries, long timeToLive) {
+		this(maxEntries, timeToLive, System::currentTimeMillis);
+	}
+	
+	BoundedCache(int maxEntries, long timeToLive, LongSupplier clock) {
+		this.maxEntries = maxEntries;
+		this.timeToLive = timeToLive;
+		this.clock = clock;
+	}
+	
+	/**
+	 * @return the cached value, or null if there is none or it expired
+	 */
+	public synchronized V get(K key) {
+		CachedValue<V> cached = entries.get(key);
+		if (cached == null) {
+			return null;
+		}
+		if (clock.getAsLong() >= cached.expiresAt) {
+			entries.remove(key);
+			return null;
+		}
+		return cached.value;
+	}
+	
+	public synchronized void put(K key, V value) {
+		entries.put(key, new CachedValue<>(value, clock.getAsLong() + timeToLive));
+	}
+	
+	public synchronized void remove(K key) {
+		entries.remove(key);
+	}
+	
+	public synchronized void clear() {
+		entries.clear();
+	}
+	
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Changes the limits of the cache, dropping the least recently used entries that no longer fit.
+	 * The new time to live applies to entries added from now on.
+	 * 
+	 * @param maxEntries the number of entries kept at most
+	 * @param timeToLive time in milliseconds an entry is kept
+	 */
+	public synchronized void setLimits(int maxEntries, long timeToLive) {
+		this.maxEntries = maxEntries;
+		this.timeToLive = timeToLive;
+		Iterator<K> keys = entries.keySet().iterator();
+		while (entries.size() > maxEntries && keys.hasNext()) {
+			keys.next();
+			keys.remove();
+		}
+	}
+	
+	private static class CachedValue<V> {
+		
+		private final V value;
+		
+		private final long expiresAt;
+		
+		CachedValue(V value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import java.io.IOException;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+
+/**
+ * Adds a Bearer token from the {@link BearerTokenCache} to every request, so a single client can be
+ * used for a whole sync while the token is refreshed underneath it. A 401 from the server drops the
+ * cached token, so the next request asks the auth server for a new one.
+ */
+public class CachedBearerTokenAuthInterceptor implements IClientInterceptor {
+	
+	private final BearerTokenCache tokenCache;
+	
+	private final String authUrl;
+	
+	private final String authUserName;
+	
+	private final String authPassword;
+	
+	public CachedBearerTokenAuthInterceptor(BearerTokenCache tokenCache, String authUrl, String authUserName,
+	    String authPassword) {
+		this.tokenCache = tokenCache;
+		this.authUrl = authUrl;
+		this.authUserName = authUserName;
+		this.authPassword = authPassword;
+	}
+	
+	@Override
+	public void interceptRequest(IHttpRequest theRequest) {
+		String token;
+		try {
+			token = tokenCache.getToken(authUrl, authUserName, authPassword);
+		}
+		catch (IOException e) {
+			throw new FhirClientConnectionException(e);
+		}
+		theRequest.addHeader(Constants.HEADER_AUTHORIZATION, Constants.HEADER_AUTHORIZATION_VALPREFIX_BEARER + token);
+	}
+	
+	@Override
+	public void interceptResponse(IHttpResponse theResponse) throws IOException {
+		if (theResponse.getStatus() == Constants.STATUS_HTTP_401_CLIENT_UNAUTHORIZED) {
+			tokenCache.invalidate(authUrl, authUserName, authPassword);
+		}
+	}
+}
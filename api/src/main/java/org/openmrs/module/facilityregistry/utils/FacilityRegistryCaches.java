@@ -0,0 +1,70 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.config.CacheConfiguration;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
+import org.openmrs.module.facilityregistry.api.dao.FhirOrganizationDao;
+import org.openmrs.module.facilityregistry.api.impl.OrganizationResourceCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the size and time to live limits from the global properties to the second-level cache
+ * regions of Organizations, to the uuid lookups of the FhirOrganizationDao and to the
+ * OrganizationResourceCache. The regions are created by Hibernate from the platform's Ehcache
+ * defaults, so their limits are set here once they exist.
+ */
+public class FacilityRegistryCaches {
+	
+	private static final Logger log = LoggerFactory.getLogger(FacilityRegistryCaches.class);
+	
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+	
+	// in seconds
+	public static final int DEFAULT_TIME_TO_LIVE = 3600;
+	
+	static final String[] REGIONS = { FacilityRegistryConstants.CACHE_REGION_ORGANIZATION,
+	        FacilityRegistryConstants.CACHE_REGION_ORGANIZATION_ADDRESS,
+	        FacilityRegistryConstants.CACHE_REGION_ORGANIZATION_ADDRESSES,
+	        FacilityRegistryConstants.CACHE_REGION_ORGANIZATION_TYPES };
+	
+	public static void configure() {
+		int maxEntries = GlobalPropertyUtils.getIntegerGlobalProperty(
+		    FacilityRegistryConstants.GP_FACILITY_REGISTRY_CACHE_MAX_ENTRIES, DEFAULT_MAX_ENTRIES);
+		int timeToLive = GlobalPropertyUtils.getIntegerGlobalProperty(
+		    FacilityRegistryConstants.GP_FACILITY_REGISTRY_CACHE_TIME_TO_LIVE, DEFAULT_TIME_TO_LIVE);
+		int maxTranslatedOrganizations = GlobalPropertyUtils.getIntegerGlobalProperty(
+		    FacilityRegistryConstants.GP_FACILITY_REGISTRY_CACHE_MAX_TRANSLATED_ORGANIZATIONS,
+		    OrganizationResourceCache.DEFAULT_MAX_ENTRIES);
+		
+		for (CacheManager cacheManager : CacheManager.ALL_CACHE_MANAGERS) {
+			for (String region : REGIONS) {
+				Ehcache cache = cacheManager.getEhcache(region);
+				if (cache != null) {
+					CacheConfiguration configuration = cache.getCacheConfiguration();
+					configuration.setMaxElementsInMemory(maxEntries);
+					configuration.setTimeToLiveSeconds(timeToLive);
+					log.debug("Limited cache region {} to {} entries for {} seconds", region, maxEntries, timeToLive);
+				}
+			}
+		}
+		
+		for (FhirOrganizationDao dao : Context.getRegisteredComponents(FhirOrganizationDao.class)) {
+			dao.setCacheLimits(maxEntries, timeToLive * 1000L);
+		}
+		for (OrganizationResourceCache cache : Context.getRegisteredComponents(OrganizationResourceCache.class)) {
+			cache.setLimits(maxTranslatedOrganizations, timeToLive * 1000L);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the single pooled HttpClient used for all calls to the Facility Registry Server, both the
+ * token requests and the FHIR calls made through HAPI, so that connections are kept alive and reused
+ * across pages and sync runs instead of paying a TCP and TLS handshake per request
+ */
+public class FacilityRegistryHttpClient {
+	
+	private static final Logger log = LoggerFactory.getLogger(FacilityRegistryHttpClient.class);
+	
+	static final int DEFAULT_MAX_CONNECTIONS = 20;
+	
+	static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+	
+	static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+	
+	static final int DEFAULT_CONNECTION_REQUEST_TIMEOUT = 10000;
+	
+	static final int DEFAULT_SOCKET_TIMEOUT = 60000;
+	
+	static final int DEFAULT_KEEP_ALIVE = 30000;
+	
+	private static volatile CloseableHttpClient httpClient;
+	
+	// set when an http setting changed, the client is rebuilt by the next call to refresh()
+	private static volatile boolean stale;
+	
+	/**
+	 * Returns the shared HttpClient, creating it and its connection pool on first use
+	 * 
+	 * @return CloseableHttpClient
+	 */
+	public static CloseableHttpClient getHttpClient() {
+		CloseableHttpClient client = httpClient;
+		if (client == null) {
+			synchronized (FacilityRegistryHttpClient.class) {
+				client = httpClient;
+				if (client == null) {
+					client = createHttpClient();
+					httpClient = client;
+				}
+			}
+		}
+		return client;
+	}
+	
+	/**
+	 * Marks the shared HttpClient as built with outdated settings. It stays in use, so that requests in
+	 * flight keep their pooled connections, until {@link #refresh()} swaps it.
+	 */
+	public static void invalidate() {
+		stale = true;
+	}
+	
+	/**
+	 * Builds the shared HttpClient with the current settings if there is none yet or the settings
+	 * changed since it was built, and closes the client it replaces. The sync task calls this before
+	 * it starts a run, when none of its requests are in flight, so that the client is never built on
+	 * the fetch thread of the {@link PagePipeline}.
+	 */
+	public static synchronized void refresh() {
+		CloseableHttpClient client = httpClient;
+		if (client != null && !stale) {
+			return;
+		}
+		// cleared first, so that a change made while the client is built is picked up by the next run
+		stale = false;
+		httpClient = createHttpClient();
+		close(client);
+	}
+	
+	/**
+	 * Closes the shared HttpClient and its pooled connections. The next call to
+	 * {@link #getHttpClient()} builds a new one with the current settings.
+	 */
+	public static synchronized void shutdown() {
+		CloseableHttpClient client = httpClient;
+		httpClient = null;
+		close(client);
+	}
+	
+	private static void close(CloseableHttpClient client) {
+		if (client != null) {
+			try {
+				client.close();
+			}
+			catch (IOException e) {
+				log.warn("Failed to close the Facility Registry HttpClient", e);
+			}
+		}
+	}
+	
+	private static CloseableHttpClient createHttpClient() {
+		int keepAlive = GlobalPropertyUtils.getIntegerGlobalProperty(
+		    FacilityRegistryConstants.GP_FACILITY_REGISTRY_HTTP_KEEP_ALIVE, DEFAULT_KEEP_ALIVE);
+		
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(GlobalPropertyUtils.getIntegerGlobalProperty(
+		    FacilityRegistryConstants.GP_FACILITY_REGISTRY_HTTP_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS));
+		connectionManager.setDefaultMaxPerRoute(GlobalPropertyUtils.getIntegerGlobalProperty(
+		    FacilityRegistryConstants.GP_FACILITY_REGISTRY_HTTP_MAX_CONNECTIONS_PER_ROUTE,
+		    DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+		
+		RequestConfig requestConfig = RequestConfig.custom()
+		        .setConnectTimeout(GlobalPropertyUtils.getIntegerGlobalProperty(
+		            FacilityRegistryConstants.GP_FACILITY_REGISTRY_HTTP_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT))
+		        .setConnectionRequestTimeout(GlobalPropertyUtils.getIntegerGlobalProperty(
+		            FacilityRegistryConstants.GP_FACILITY_REGISTRY_HTTP_CONNECTION_REQUEST_TIMEOUT,
+		            DEFAULT_CONNECTION_REQUEST_TIMEOUT))
+		        .setSocketTimeout(GlobalPropertyUtils.getIntegerGlobalProperty(
+		            FacilityRegistryConstants.GP_FACILITY_REGISTRY_HTTP_SOCKET_TIMEOUT, DEFAULT_SOCKET_TIMEOUT))
+		        .build();
+		
+		// honour a Keep-Alive header from the server, otherwise keep idle connections for the configured time
+		ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+			long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return serverKeepAlive > 0 ? serverKeepAlive : keepAlive;
+		};
+		
+		return HttpClients.custom().setConnectionManager(connectionManager).setDefaultRequestConfig(requestConfig)
+		        .setKeepAliveStrategy(keepAliveStrategy).evictExpiredConnections()
+		        .evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS).build();
+	}
+}
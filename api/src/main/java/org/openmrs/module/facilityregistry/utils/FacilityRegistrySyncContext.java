@@ -0,0 +1,199 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.hl7.fhir.r4.model.Organization;
+import org.openmrs.module.facilityregistry.api.FacilityRegistrySaveResult;
+
+/**
+ * State kept for the duration of a single sync run. Parent Organizations resolved while saving a page
+ * are remembered here, so siblings sharing a district or region parent neither read nor save it
+ * again. Not thread safe, a run persists its pages from a single thread.
+ * <p>
+ * The parsed Organizations of a page, including its _include and prefetched ones, are only kept
+ * until the next page starts. Beyond that only the Organizations referenced as a parent are kept
+ * parsed, every other Organization is remembered by its id, so the memory of a run grows with the
+ * number of parents and not with the size of the registry.
+ * <p>
+ * Only an incremental run trusts parents that are already stored locally. Changes to those reach it
+ * through its own search for changed Organizations, while a full sync reads every parent again.
+ */
+public class FacilityRegistrySyncContext {
+	
+	private final Map<String, Organization> pageOrganizations = new HashMap<>();
+	
+	private final Map<String, Organization> parentOrganizations = new HashMap<>();
+	
+	private final Set<String> savedOrganizations = new HashSet<>();
+	
+	private final Set<String> savedLocations = new HashSet<>();
+	
+	private final Set<String> storedOrganizations = new HashSet<>();
+	
+	private boolean incremental;
+	
+	private long parentCacheHits;
+	
+	private long parentRemoteReads;
+	
+	private long parentBatchReads;
+	
+	private long createdResources;
+	
+	private long updatedResources;
+	
+	private long skippedResources;
+	
+	private long persistNanos;
+	
+	/**
+	 * @return true if the run only fetches changes, stored parents are then not read again
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+	
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+	
+	/**
+	 * Drops the Organizations of the previous page
+	 */
+	public void startPage() {
+		pageOrganizations.clear();
+	}
+	
+	/**
+	 * @return the parsed Organization if it is part of the current page or was referenced as a parent
+	 *         earlier in this run, otherwise null
+	 */
+	public Organization getResolvedOrganization(String id) {
+		Organization organization = pageOrganizations.get(id);
+		return organization != null ? organization : parentOrganizations.get(id);
+	}
+	
+	/**
+	 * Keeps an Organization of the current page, or one fetched for it, until the next page starts
+	 */
+	public void addPageOrganization(String id, Organization organization) {
+		pageOrganizations.put(id, organization);
+	}
+	
+	/**
+	 * Keeps an Organization referenced as a parent for the rest of the run
+	 */
+	public void addParentOrganization(String id, Organization organization) {
+		parentOrganizations.put(id, organization);
+	}
+	
+	public boolean isOrganizationSaved(String id) {
+		return savedOrganizations.contains(id);
+	}
+	
+	public void markOrganizationSaved(String id) {
+		savedOrganizations.add(id);
+	}
+	
+	public boolean isLocationSaved(String id) {
+		return savedLocations.contains(id);
+	}
+	
+	public void markLocationSaved(String id) {
+		savedLocations.add(id);
+	}
+	
+	/**
+	 * @return true if the Organization was found in the local fhir_organization table during this run
+	 */
+	public boolean isOrganizationStored(String id) {
+		return storedOrganizations.contains(id);
+	}
+	
+	public void markOrganizationStored(String id) {
+		storedOrganizations.add(id);
+	}
+	
+	public void recordParentCacheHit() {
+		parentCacheHits++;
+	}
+	
+	public void recordParentRemoteRead() {
+		parentRemoteReads++;
+	}
+	
+	public void recordParentBatchRead() {
+		parentBatchReads++;
+	}
+	
+	public void recordSaveResult(FacilityRegistrySaveResult result) {
+		createdResources += result.getCreated();
+		updatedResources += result.getUpdated();
+		skippedResources += result.getSkipped();
+	}
+	
+	public void recordPersistTime(long nanos) {
+		persistNanos += nanos;
+	}
+	
+	/**
+	 * @return the number of parent references answered without a read from the registry
+	 */
+	public long getParentCacheHits() {
+		return parentCacheHits;
+	}
+	
+	/**
+	 * @return the number of parent Organizations read one by one from the registry
+	 */
+	public long getParentRemoteReads() {
+		return parentRemoteReads;
+	}
+	
+	/**
+	 * @return the number of _id searches made to prefetch parent Organizations
+	 */
+	public long getParentBatchReads() {
+		return parentBatchReads;
+	}
+	
+	/**
+	 * @return the number of Locations and Organizations created in this run
+	 */
+	public long getCreatedResources() {
+		return createdResources;
+	}
+	
+	/**
+	 * @return the number of stored Locations and Organizations updated in this run
+	 */
+	public long getUpdatedResources() {
+		return updatedResources;
+	}
+	
+	/**
+	 * @return the number of stored Locations and Organizations skipped in this run as unchanged
+	 */
+	public long getSkippedResources() {
+		return skippedResources;
+	}
+	
+	/**
+	 * @return the time spent writing the pages of this run to the database, in nanoseconds
+	 */
+	public long getPersistNanos() {
+		return persistNanos;
+	}
+}
@@ -0,0 +1,232 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.AccessLevel;
+import lombok.Setter;
+import org.openmrs.module.facilityregistry.api.impl.OrganizationResourceCache;
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncRun;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Collects the metrics of the sync runs of this OpenMRS instance and publishes them over JMX. A run
+ * is timed by the {@link FacilityRegistrySyncRecorder} returned from {@link #startRun()} and added to
+ * the totals once it is handed to {@link #finishRun}.
+ */
+@Component
+@Setter(AccessLevel.PACKAGE)
+public class FacilityRegistrySyncMetrics implements FacilityRegistrySyncMetricsMXBean {
+	
+	private static final Logger log = LoggerFactory.getLogger(FacilityRegistrySyncMetrics.class);
+	
+	public static final String OBJECT_NAME = "org.openmrs.module.facilityregistry:type=SyncMetrics";
+	
+	public static final int RECENT_RUNS = 20;
+	
+	@Autowired
+	private OrganizationResourceCache organizationResourceCache;
+	
+	private final Map<FacilityRegistrySyncPhase, LatencyHistogram> histograms = new EnumMap<>(
+	        FacilityRegistrySyncPhase.class);
+	
+	private final LinkedList<FacilityRegistrySyncRunSummary> recentRuns = new LinkedList<>();
+	
+	private final AtomicLong runs = new AtomicLong();
+	
+	private final AtomicLong failedRuns = new AtomicLong();
+	
+	private final AtomicLong pages = new AtomicLong();
+	
+	private final AtomicLong createdResources = new AtomicLong();
+	
+	private final AtomicLong updatedResources = new AtomicLong();
+	
+	private final AtomicLong skippedResources = new AtomicLong();
+	
+	private final AtomicLong parentRemoteReads = new AtomicLong();
+	
+	private final AtomicLong tokenFetches = new AtomicLong();
+	
+	public FacilityRegistrySyncMetrics() {
+		for (FacilityRegistrySyncPhase phase : FacilityRegistrySyncPhase.values()) {
+			histograms.put(phase, new LatencyHistogram());
+		}
+	}
+	
+	@PostConstruct
+	public void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			// a restarted module context registers a new instance under the same name
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+		}
+		catch (JMException e) {
+			log.warn("Could not publish the Facility Registry sync metrics over JMX", e);
+		}
+	}
+	
+	@PreDestroy
+	public void unregister() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		}
+		catch (JMException e) {
+			log.debug("Could not unpublish the Facility Registry sync metrics", e);
+		}
+	}
+	
+	public FacilityRegistrySyncRecorder startRun() {
+		return new FacilityRegistrySyncRecorder(this, BearerTokenCache.getInstance().getTokenRequests());
+	}
+	
+	/**
+	 * Adds a run to the totals and the recent runs
+	 * 
+	 * @param recorder the recorder the run was timed with
+	 * @param status how the run ended
+	 * @param syncContext the state of the run, holding its resource counts
+	 * @return the summary of the run
+	 */
+	public FacilityRegistrySyncRunSummary finishRun(FacilityRegistrySyncRecorder recorder,
+	        FacilityRegistrySyncRun.Status status, FacilityRegistrySyncContext syncContext) {
+		long runTokenFetches = BearerTokenCache.getInstance().getTokenRequests() - recorder.getTokenRequestsBefore();
+		FacilityRegistrySyncRunSummary summary = new FacilityRegistrySyncRunSummary(recorder, status, syncContext,
+		        runTokenFetches);
+		
+		runs.incrementAndGet();
+		if (status == FacilityRegistrySyncRun.Status.FAILED) {
+			failedRuns.incrementAndGet();
+		}
+		pages.addAndGet(summary.getPages());
+		createdResources.addAndGet(summary.getCreatedResources());
+		updatedResources.addAndGet(summary.getUpdatedResources());
+		skippedResources.addAndGet(summary.getSkippedResources());
+		parentRemoteReads.addAndGet(summary.getParentRemoteReads());
+		tokenFetches.addAndGet(summary.getTokenFetches());
+		synchronized (recentRuns) {
+			recentRuns.addFirst(summary);
+			if (recentRuns.size() > RECENT_RUNS) {
+				recentRuns.removeLast();
+			}
+		}
+		return summary;
+	}
+	
+	LatencyHistogram getHistogram(FacilityRegistrySyncPhase phase) {
+		return histograms.get(phase);
+	}
+	
+	@Override
+	public long getRuns() {
+		return runs.get();
+	}
+	
+	@Override
+	public long getFailedRuns() {
+		return failedRuns.get();
+	}
+	
+	@Override
+	public long getPages() {
+		return pages.get();
+	}
+	
+	@Override
+	public long getCreatedResources() {
+		return createdResources.get();
+	}
+	
+	@Override
+	public long getUpdatedResources() {
+		return updatedResources.get();
+	}
+	
+	@Override
+	public long getSkippedResources() {
+		return skippedResources.get();
+	}
+	
+	@Override
+	public long getParentRemoteReads() {
+		return parentRemoteReads.get();
+	}
+	
+	@Override
+	public long getTokenFetches() {
+		return tokenFetches.get();
+	}
+	
+	@Override
+	public long[] getHistogramBucketBoundsMillis() {
+		return LatencyHistogram.getBucketBoundsMillis();
+	}
+	
+	@Override
+	public long[] getFetchHistogram() {
+		return getHistogram(FacilityRegistrySyncPhase.FETCH).getCounts();
+	}
+	
+	@Override
+	public long[] getParseHistogram() {
+		return getHistogram(FacilityRegistrySyncPhase.PARSE).getCounts();
+	}
+	
+	@Override
+	public long[] getTranslateHistogram() {
+		return getHistogram(FacilityRegistrySyncPhase.TRANSLATE).getCounts();
+	}
+	
+	@Override
+	public long[] getPersistHistogram() {
+		return getHistogram(FacilityRegistrySyncPhase.PERSIST).getCounts();
+	}
+	
+	@Override
+	public List<FacilityRegistrySyncRunSummary> getRecentRuns() {
+		synchronized (recentRuns) {
+			return new ArrayList<>(recentRuns);
+		}
+	}
+	
+	@Override
+	public long getOrganizationCacheHits() {
+		return organizationResourceCache.getHits();
+	}
+	
+	@Override
+	public long getOrganizationCacheMisses() {
+		return organizationResourceCache.getMisses();
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import java.util.List;
+
+/**
+ * Sync metrics of this OpenMRS instance, registered as
+ * {@value FacilityRegistrySyncMetrics#OBJECT_NAME}. Totals and histograms count from the start of the
+ * module, the recent runs table holds the latest {@value FacilityRegistrySyncMetrics#RECENT_RUNS}
+ * runs, newest first.
+ */
+public interface FacilityRegistrySyncMetricsMXBean {
+	
+	long getRuns();
+	
+	long getFailedRuns();
+	
+	long getPages();
+	
+	long getCreatedResources();
+	
+	long getUpdatedResources();
+	
+	long getSkippedResources();
+	
+	long getParentRemoteReads();
+	
+	long getTokenFetches();
+	
+	/**
+	 * @return the upper bound of each histogram bucket in milliseconds, the last bucket of a histogram
+	 *         counts everything slower
+	 */
+	long[] getHistogramBucketBoundsMillis();
+	
+	long[] getFetchHistogram();
+	
+	long[] getParseHistogram();
+	
+	long[] getTranslateHistogram();
+	
+	long[] getPersistHistogram();
+	
+	List<FacilityRegistrySyncRunSummary> getRecentRuns();
+	
+	long getOrganizationCacheHits();
+	
+	long getOrganizationCacheMisses();
+}
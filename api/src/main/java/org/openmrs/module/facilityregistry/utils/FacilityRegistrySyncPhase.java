@@ -0,0 +1,28 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+/**
+ * The stages a page of the Facility Registry goes through during a sync run
+ */
+public enum FacilityRegistrySyncPhase {
+	
+	/** sending the request until the response starts to arrive */
+	FETCH,
+	
+	/** reading the response body and parsing it into a Bundle */
+	PARSE,
+	
+	/** tagging the resources and resolving their parents, including any parent reads from the registry */
+	TRANSLATE,
+	
+	/** writing the page to the database */
+	PERSIST
+}
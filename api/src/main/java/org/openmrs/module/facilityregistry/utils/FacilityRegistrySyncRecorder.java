@@ -0,0 +1,124 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+
+/**
+ * Times the phases of one sync run. Pages are fetched on the fetch thread of the
+ * {@link PagePipeline} while the run thread saves them, so every method may be called from either.
+ * Each duration also goes into the histograms of the {@link FacilityRegistrySyncMetrics} it was
+ * started from.
+ */
+public class FacilityRegistrySyncRecorder {
+	
+	private final FacilityRegistrySyncMetrics metrics;
+	
+	private final Date started = new Date();
+	
+	private final long startedNanos = System.nanoTime();
+	
+	private final long tokenRequestsBefore;
+	
+	private final AtomicLong pages = new AtomicLong();
+	
+	private final AtomicLongArray phaseNanos = new AtomicLongArray(FacilityRegistrySyncPhase.values().length);
+	
+	// when the response to the last request of the fhir client began to arrive, per thread
+	private final ThreadLocal<Long> responseStarted = new ThreadLocal<>();
+	
+	private volatile boolean fullSync;
+	
+	FacilityRegistrySyncRecorder(FacilityRegistrySyncMetrics metrics, long tokenRequestsBefore) {
+		this.metrics = metrics;
+		this.tokenRequestsBefore = tokenRequestsBefore;
+	}
+	
+	public void record(FacilityRegistrySyncPhase phase, long nanos) {
+		phaseNanos.addAndGet(phase.ordinal(), nanos);
+		metrics.getHistogram(phase).record(nanos);
+	}
+	
+	public void recordPage() {
+		pages.incrementAndGet();
+	}
+	
+	/**
+	 * Records a page the fhir client fetched since the given time on this thread. The time up to the
+	 * response is fetch time, the rest, in which the client read and parsed the body, is parse time.
+	 * 
+	 * @param startNanos {@link System#nanoTime()} before the request was sent
+	 */
+	public void recordPageFetched(long startNanos) {
+		long endNanos = System.nanoTime();
+		Long responseNanos = responseStarted.get();
+		responseStarted.remove();
+		if (responseNanos == null || responseNanos < startNanos) {
+			record(FacilityRegistrySyncPhase.FETCH, endNanos - startNanos);
+		} else {
+			record(FacilityRegistrySyncPhase.FETCH, responseNanos - startNanos);
+			record(FacilityRegistrySyncPhase.PARSE, endNanos - responseNanos);
+		}
+		recordPage();
+	}
+	
+	/**
+	 * @return an interceptor for the fhir client of the run, noting when each response begins to arrive
+	 */
+	public IClientInterceptor getClientInterceptor() {
+		return new IClientInterceptor() {
+			
+			@Override
+			public void interceptRequest(IHttpRequest theRequest) {
+			}
+			
+			@Override
+			public void interceptResponse(IHttpResponse theResponse) throws IOException {
+				responseStarted.set(System.nanoTime());
+			}
+		};
+	}
+	
+	public void setFullSync(boolean fullSync) {
+		this.fullSync = fullSync;
+	}
+	
+	public boolean isFullSync() {
+		return fullSync;
+	}
+	
+	public Date getStarted() {
+		return started;
+	}
+	
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+	}
+	
+	public long getPages() {
+		return pages.get();
+	}
+	
+	public long getMillis(FacilityRegistrySyncPhase phase) {
+		return TimeUnit.NANOSECONDS.toMillis(phaseNanos.get(phase.ordinal()));
+	}
+	
+	long getTokenRequestsBefore() {
+		return tokenRequestsBefore;
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import java.util.Date;
+
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncRun;
+
+/**
+ * What a single sync run did and where its time went. Shown as a row of the recent runs table by
+ * {@link FacilityRegistrySyncMetricsMXBean}.
+ */
+public class FacilityRegistrySyncRunSummary {
+	
+	private final Date started;
+	
+	private final long durationMillis;
+	
+	private final FacilityRegistrySyncRun.Status status;
+	
+	private final boolean fullSync;
+	
+	private final long pages;
+	
+	private final long createdResources;
+	
+	private final long updatedResources;
+	
+	private final long skippedResources;
+	
+	private final long parentRemoteReads;
+	
+	private final long parentBatchReads;
+	
+	private final long tokenFetches;
+	
+	private final long fetchMillis;
+	
+	private final long parseMillis;
+	
+	private final long translateMillis;
+	
+	private final long persistMillis;
+	
+	FacilityRegistrySyncRunSummary(FacilityRegistrySyncRecorder recorder, FacilityRegistrySyncRun.Status status,
+	    FacilityRegistrySyncContext syncContext, long tokenFetches) {
+		this.started = recorder.getStarted();
+		this.durationMillis = recorder.getElapsedMillis();
+		this.status = status;
+		this.fullSync = recorder.isFullSync();
+		this.pages = recorder.getPages();
+		this.createdResources = syncContext.getCreatedResources();
+		this.updatedResources = syncContext.getUpdatedResources();
+		this.skippedResources = syncContext.getSkippedResources();
+		this.parentRemoteReads = syncContext.getParentRemoteReads();
+		this.parentBatchReads = syncContext.getParentBatchReads();
+		this.tokenFetches = tokenFetches;
+		this.fetchMillis = recorder.getMillis(FacilityRegistrySyncPhase.FETCH);
+		this.parseMillis = recorder.getMillis(FacilityRegistrySyncPhase.PARSE);
+		this.translateMillis = recorder.getMillis(FacilityRegistrySyncPhase.TRANSLATE);
+		this.persistMillis = recorder.getMillis(FacilityRegistrySyncPhase.PERSIST);
+	}
+	
+	public Date getStarted() {
+		return started;
+	}
+	
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+	
+	public FacilityRegistrySyncRun.Status getStatus() {
+		return status;
+	}
+	
+	public boolean isFullSync() {
+		return fullSync;
+	}
+	
+	public long getPages() {
+		return pages;
+	}
+	
+	public long getCreatedResources() {
+		return createdResources;
+	}
+	
+	public long getUpdatedResources() {
+		return updatedResources;
+	}
+	
+	public long getSkippedResources() {
+		return skippedResources;
+	}
+	
+	/**
+	 * @return the number of parent Organizations read one by one from the registry
+	 */
+	public long getParentRemoteReads() {
+		return parentRemoteReads;
+	}
+	
+	/**
+	 * @return the number of _id searches made to prefetch parent Organizations
+	 */
+	public long getParentBatchReads() {
+		return parentBatchReads;
+	}
+	
+	/**
+	 * @return the number of Bearer tokens requested from the auth server during the run
+	 */
+	public long getTokenFetches() {
+		return tokenFetches;
+	}
+	
+	public long getFetchMillis() {
+		return fetchMillis;
+	}
+	
+	public long getParseMillis() {
+		return parseMillis;
+	}
+	
+	public long getTranslateMillis() {
+		return translateMillis;
+	}
+	
+	public long getPersistMillis() {
+		return persistMillis;
+	}
+	
+	@Override
+	public String toString() {
+		return status + " " + (fullSync ? "full" : "incremental") + " sync of " + pages + " pages in " + durationMillis
+		        + " ms: " + createdResources + " created, " + updatedResources + " updated, " + skippedResources
+		        + " skipped, " + parentRemoteReads + " parent reads, " + tokenFetches + " token fetches; fetch "
+		        + fetchMillis + " ms, parse " + parseMillis + " ms, translate " + translateMillis + " ms, persist "
+		        + persistMillis + " ms";
+	}
+}
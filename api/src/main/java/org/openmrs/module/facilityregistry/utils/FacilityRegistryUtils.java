@@ -1,24 +1,31 @@
 package org.openmrs.module.facilityregistry.utils;
 
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 import ca.uhn.fhir.rest.client.api.IGenericClient;
-import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import lombok.AccessLevel;
 import lombok.Setter;
 import org.hl7.fhir.instance.model.api.IAnyResource;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.DomainResource;
 import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Location;
 import org.hl7.fhir.r4.model.Organization;
 import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.ResourceType;
 import org.hl7.fhir.r4.model.Type;
 import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
+import org.openmrs.module.facilityregistry.api.FacilityRegistrySaveResult;
+import org.openmrs.module.facilityregistry.api.FacilityRegistrySyncService;
 import org.openmrs.module.facilityregistry.api.FhirOrganizationService;
-import org.openmrs.module.fhir2.api.FhirLocationService;
-import org.openmrs.module.fhir2.api.FhirService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -29,19 +36,48 @@ import org.springframework.stereotype.Component;
 public class FacilityRegistryUtils {
 	
 	@Autowired
-	private FhirLocationService locationService;
+	private FhirOrganizationService organizationService;
 	
 	@Autowired
-	private FhirOrganizationService organizationService;
+	private FacilityRegistrySyncService syncService;
 	
 	private static final Logger log = LoggerFactory.getLogger(FacilityRegistryUtils.class);
 	
+	// number of ids asked for in one Organization?_id= search, keeps the request url short
+	static final int PARENT_BATCH_SIZE = 50;
+	
 	/**
 	 * Saves/Updates Fhir Location into the OpenMRS database
 	 * 
 	 * @param searchBundle Bundle fetched from the Facility Registry Server
 	 */
 	public void saveFhirLocation(Bundle searchBundle, IGenericClient fhirClient) {
+		saveFhirLocation(searchBundle, fhirClient, new FacilityRegistrySyncContext());
+	}
+	
+	/**
+	 * Saves/Updates Fhir Location into the OpenMRS database, sharing resolved parent Organizations with
+	 * the other pages of the same sync run
+	 * 
+	 * @param searchBundle Bundle fetched from the Facility Registry Server
+	 * @param syncContext state of the current sync run
+	 */
+	public void saveFhirLocation(Bundle searchBundle, IGenericClient fhirClient, FacilityRegistrySyncContext syncContext) {
+		// parents that are part of the page itself never need to be read from the registry
+		syncContext.startPage();
+		List<Organization> organizations = new ArrayList<>();
+		for (Bundle.BundleEntryComponent entry : searchBundle.getEntry()) {
+			if (entry.hasResource() && ResourceType.Organization.equals(entry.getResource().getResourceType())) {
+				Organization organization = (Organization) entry.getResource();
+				syncContext.addPageOrganization(organization.getIdElement().getIdPart(), organization);
+				organizations.add(organization);
+			}
+		}
+		prefetchParentOrganizations(organizations, fhirClient, syncContext);
+		Set<String> storedLocationCopies = getStoredLocationCopies(organizations, syncContext);
+		
+		// resources are collected in save order, parents first, and written in one transaction
+		List<DomainResource> pending = new ArrayList<>();
 		for (Bundle.BundleEntryComponent entry : searchBundle.getEntry()) {
 			if (entry.hasResource()) {
 				if (ResourceType.Location.equals(entry.getResource().getResourceType())) {
@@ -64,59 +100,192 @@ public class FacilityRegistryUtils {
 						
 					}
 					
-					saveOrUpdateLocation(newLocation);
+					pending.add(newLocation);
 				} else if (ResourceType.Organization.equals(entry.getResource().getResourceType())) {
 					Organization organization = (Organization) entry.getResource();
-					if (organization.hasExtension(FacilityRegistryConstants.MCSD_EXTENTION_URL)) {
-						Extension extParOf = organization.getExtensionByUrl(FacilityRegistryConstants.MCSD_EXTENTION_URL)
-						        .getExtensionByUrl(FacilityRegistryConstants.MCSD_EXTENTION_URL_PART_OF);
-						Type referenceOrgType = extParOf.getValue();
-						if (referenceOrgType instanceof Reference) {
-							Reference reference = (Reference) referenceOrgType;
-							String referenceOrgId = reference.getReference();
-							Organization mcsdReferenceOrg = fhirClient.read().resource(Organization.class)
-							        .withId(referenceOrgId).encodedJson().execute();
-							saveOrUpdateOrganization(mcsdReferenceOrg);
-							// save the mcsd reference Organization as a location
-							Location mcsdreferenceLocation = convertOrganisationToLocation(mcsdReferenceOrg);
-							saveOrUpdateLocation(mcsdreferenceLocation);
-							
-						}
+					saveOrganizationWithAncestors(organization, fhirClient, syncContext, new HashSet<>(), pending);
+					String organizationId = organization.getIdElement().getIdPart();
+					if (storedLocationCopies.contains(organizationId) && !syncContext.isLocationSaved(organizationId)) {
+						pending.add(convertOrganisationToLocation(organization));
+						syncContext.markLocationSaved(organizationId);
 					}
-					if (organization.hasPartOf()) {
-						String parentOrgId = organization.getPartOf().getReference();
-						Organization partOfOrg = fhirClient.read().resource(Organization.class).withId(parentOrgId)
-						        .encodedJson().execute();
-						saveOrUpdateOrganization(partOfOrg);
-						
+				}
+			}
+		}
+		long persistStarted = System.nanoTime();
+		FacilityRegistrySaveResult result = syncService.saveAll(pending);
+		syncContext.recordPersistTime(System.nanoTime() - persistStarted);
+		syncContext.recordSaveResult(result);
+	}
+	
+	/**
+	 * Fetches all parent Organizations referenced from the page that are neither in the page nor
+	 * already resolved in this run, using one _id search per {@link #PARENT_BATCH_SIZE} ids instead of
+	 * a read per parent. Parents of the fetched parents are fetched the same way, one hierarchy level
+	 * per round. An incremental run also leaves out parents that are stored locally, a full sync reads
+	 * them again so that changed parents are updated.
+	 */
+	private void prefetchParentOrganizations(List<Organization> organizations, IGenericClient fhirClient,
+	        FacilityRegistrySyncContext syncContext) {
+		List<Organization> pending = organizations;
+		while (!pending.isEmpty()) {
+			Set<String> missing = new LinkedHashSet<>();
+			for (Organization organization : pending) {
+				for (Reference reference : getParentReferences(organization)) {
+					String parentId = new IdType(reference.getReference()).getIdPart();
+					if (syncContext.getResolvedOrganization(parentId) == null
+					        && !syncContext.isOrganizationStored(parentId) && !syncContext.isOrganizationSaved(parentId)) {
+						missing.add(parentId);
 					}
-					saveOrUpdateOrganization(organization);
 				}
 			}
+			if (missing.isEmpty()) {
+				return;
+			}
+			
+			if (syncContext.isIncremental()) {
+				for (String storedId : organizationService.getExistingUuids(missing)) {
+					syncContext.markOrganizationStored(storedId);
+					missing.remove(storedId);
+				}
+			}
+			pending = fetchOrganizations(missing, fhirClient, syncContext);
+		}
+	}
+	
+	/**
+	 * Returns the Organizations of the page that were saved as an mCSD Location before. Their Location
+	 * is refreshed along with them, also when no child in this run refers to them any more.
+	 */
+	private Set<String> getStoredLocationCopies(List<Organization> organizations, FacilityRegistrySyncContext syncContext) {
+		Set<String> ids = new HashSet<>();
+		for (Organization organization : organizations) {
+			String organizationId = organization.getIdElement().getIdPart();
+			if (!syncContext.isLocationSaved(organizationId)) {
+				ids.add(organizationId);
+			}
 		}
+		return ids.isEmpty() ? ids : new HashSet<>(syncService.getExistingLocationUuids(ids));
 	}
 	
-	private Organization saveOrUpdateOrganization(Organization newOrganization) {
-		return (Organization) saveOrUpdate(newOrganization, organizationService);
+	private List<Organization> fetchOrganizations(Collection<String> ids, IGenericClient fhirClient,
+	        FacilityRegistrySyncContext syncContext) {
+		List<Organization> fetched = new ArrayList<>();
+		List<String> idList = new ArrayList<>(ids);
+		for (int i = 0; i < idList.size(); i += PARENT_BATCH_SIZE) {
+			List<String> batch = idList.subList(i, Math.min(i + PARENT_BATCH_SIZE, idList.size()));
+			Bundle result = fhirClient.search().forResource(Organization.class)
+			        .where(IAnyResource.RES_ID.exactly().codes(batch)).count(batch.size()).returnBundle(Bundle.class)
+			        .execute();
+			syncContext.recordParentBatchRead();
+			collectOrganizations(result, fetched, syncContext);
+			while (result.getLink(IBaseBundle.LINK_NEXT) != null) {
+				result = fhirClient.loadPage().next(result).execute();
+				syncContext.recordParentBatchRead();
+				collectOrganizations(result, fetched, syncContext);
+			}
+		}
+		if (fetched.size() < ids.size()) {
+			// whatever the search did not return is read one by one when it is saved
+			log.debug("{} of {} parent Organizations were not returned by the _id search", ids.size() - fetched.size(),
+			    ids.size());
+		}
+		return fetched;
 	}
 	
-	private Location saveOrUpdateLocation(Location newLocation) {
-		return (Location) saveOrUpdate(newLocation, locationService);
+	private void collectOrganizations(Bundle result, List<Organization> fetched, FacilityRegistrySyncContext syncContext) {
+		for (Bundle.BundleEntryComponent entry : result.getEntry()) {
+			if (entry.hasResource() && ResourceType.Organization.equals(entry.getResource().getResourceType())) {
+				Organization organization = (Organization) entry.getResource();
+				syncContext.addPageOrganization(organization.getIdElement().getIdPart(), organization);
+				fetched.add(organization);
+			}
+		}
 	}
 	
-	private IAnyResource saveOrUpdate(IAnyResource newResource, FhirService service) {
-		IAnyResource existing;
-		try {
-			existing = service.get(newResource.getIdElement().getIdPart());
+	/**
+	 * Queues an Organization after its ancestors, so that the part-of references of every saved
+	 * Organization can be resolved against the local table
+	 */
+	private void saveOrganizationWithAncestors(Organization organization, IGenericClient fhirClient,
+	        FacilityRegistrySyncContext syncContext, Set<String> visiting, List<DomainResource> pending) {
+		String organizationId = organization.getIdElement().getIdPart();
+		// the visiting set guards against part-of cycles in the registry data
+		if (syncContext.isOrganizationSaved(organizationId) || !visiting.add(organizationId)) {
+			return;
+		}
+		
+		Reference mcsdPartOf = getMcsdPartOf(organization);
+		if (mcsdPartOf != null) {
+			// the mcsd reference Organization is also saved as a location
+			saveParentOrganization(mcsdPartOf, true, fhirClient, syncContext, visiting, pending);
 		}
-		catch (ResourceNotFoundException e) {
-			existing = null;
+		if (organization.hasPartOf() && organization.getPartOf().hasReference()) {
+			saveParentOrganization(organization.getPartOf(), false, fhirClient, syncContext, visiting, pending);
 		}
-		if (Objects.isNull(existing)) {
-			return service.create(newResource);
+		
+		pending.add(organization);
+		syncContext.markOrganizationSaved(organizationId);
+	}
+	
+	/**
+	 * Queues the parent Organization behind a part-of reference at most once per sync run, reading it
+	 * from the registry unless it was prefetched or, in an incremental run, is already stored locally
+	 */
+	private void saveParentOrganization(Reference reference, boolean saveAsLocation, IGenericClient fhirClient,
+	        FacilityRegistrySyncContext syncContext, Set<String> visiting, List<DomainResource> pending) {
+		String referenceOrgId = reference.getReference();
+		String parentId = new IdType(referenceOrgId).getIdPart();
+		
+		Organization parentOrg = syncContext.getResolvedOrganization(parentId);
+		if (parentOrg == null) {
+			// a parent saved before it was referenced as one is only read again when its Location is missing
+			if (syncContext.isOrganizationStored(parentId) || (syncContext.isOrganizationSaved(parentId)
+			        && (!saveAsLocation || syncContext.isLocationSaved(parentId)))) {
+				syncContext.recordParentCacheHit();
+				return;
+			}
+			parentOrg = fhirClient.read().resource(Organization.class).withId(referenceOrgId).encodedJson().execute();
+			syncContext.recordParentRemoteRead();
 		} else {
-			return service.update(newResource.getIdElement().getIdPart(), newResource);
+			syncContext.recordParentCacheHit();
+		}
+		syncContext.addParentOrganization(parentId, parentOrg);
+		
+		saveOrganizationWithAncestors(parentOrg, fhirClient, syncContext, visiting, pending);
+		if (saveAsLocation && !syncContext.isLocationSaved(parentId)) {
+			Location mcsdreferenceLocation = convertOrganisationToLocation(parentOrg);
+			pending.add(mcsdreferenceLocation);
+			syncContext.markLocationSaved(parentId);
+		}
+	}
+	
+	private List<Reference> getParentReferences(Organization organization) {
+		List<Reference> references = new ArrayList<>();
+		Reference mcsdPartOf = getMcsdPartOf(organization);
+		if (mcsdPartOf != null) {
+			references.add(mcsdPartOf);
+		}
+		if (organization.hasPartOf() && organization.getPartOf().hasReference()) {
+			references.add(organization.getPartOf());
+		}
+		return references;
+	}
+	
+	/**
+	 * @return the part-of reference of the mCSD hierarchy extension, or null if there is none
+	 */
+	private Reference getMcsdPartOf(Organization organization) {
+		if (!organization.hasExtension(FacilityRegistryConstants.MCSD_EXTENTION_URL)) {
+			return null;
+		}
+		Extension extParOf = organization.getExtensionByUrl(FacilityRegistryConstants.MCSD_EXTENTION_URL)
+		        .getExtensionByUrl(FacilityRegistryConstants.MCSD_EXTENTION_URL_PART_OF);
+		Type referenceOrgType = extParOf != null ? extParOf.getValue() : null;
+		if (referenceOrgType instanceof Reference && ((Reference) referenceOrgType).hasReference()) {
+			return (Reference) referenceOrgType;
 		}
+		return null;
 	}
 	
 	/**
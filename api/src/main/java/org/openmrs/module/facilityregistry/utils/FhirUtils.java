@@ -10,14 +10,19 @@
 package org.openmrs.module.facilityregistry.utils;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
+import ca.uhn.fhir.context.FhirVersionEnum;
 import ca.uhn.fhir.parser.IParser;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -25,11 +30,19 @@ import org.codehaus.jackson.map.ObjectMapper;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.client.interceptor.BearerTokenAuthInterceptor;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
 
 public class FhirUtils {
 	
+	private static final int JSON_PARSER_POOL_SIZE = 8;
+	
+	// building a FhirContext scans the whole structure model, so only one is ever created per FHIR version
+	private static final Map<FhirVersionEnum, FhirContext> FHIR_CONTEXTS = new ConcurrentHashMap<>();
+	
+	private static final BlockingQueue<IParser> JSON_PARSERS = new ArrayBlockingQueue<>(JSON_PARSER_POOL_SIZE);
+	
 	/**
 	 * Create Fhir Client with Bearer Authentication
 	 * 
@@ -38,7 +51,7 @@ public class FhirUtils {
 	 * @return IGenericClient
 	 */
 	public static IGenericClient getFhirClient(String fhirStorePath, String token) {
-		IGenericClient fhirClient = getFhirContext().newRestfulGenericClient(fhirStorePath);
+		IGenericClient fhirClient = getRestfulFhirContext().newRestfulGenericClient(fhirStorePath);
 		BearerTokenAuthInterceptor authInterceptor = new BearerTokenAuthInterceptor(token);
 		fhirClient.registerInterceptor(authInterceptor);
 		return fhirClient;
@@ -51,7 +64,7 @@ public class FhirUtils {
 	 * @return IGenericClient
 	 */
 	public static IGenericClient getFhirClient(String fhirStorePath) {
-		IGenericClient fhirClient = getFhirContext().newRestfulGenericClient(fhirStorePath);
+		IGenericClient fhirClient = getRestfulFhirContext().newRestfulGenericClient(fhirStorePath);
 		return fhirClient;
 	}
 	
@@ -64,6 +77,116 @@ public class FhirUtils {
 		return getFhirContext().newJsonParser();
 	}
 	
+	/**
+	 * Return a pretty printing FHIR parser, meant for debug output
+	 * 
+	 * @return Parser
+	 */
+	public static IParser getPrettyParser() {
+		return getFhirContext().newJsonParser().setPrettyPrint(true);
+	}
+	
+	/**
+	 * Parses a JSON encoded resource using a pooled parser
+	 * 
+	 * @param resourceType the type of resource to parse
+	 * @param json the JSON encoded resource
+	 * @return the parsed resource
+	 */
+	public static <T extends IBaseResource> T parseResource(Class<T> resourceType, String json) {
+		IParser parser = borrowJsonParser();
+		try {
+			return parser.parseResource(resourceType, json);
+		}
+		finally {
+			returnJsonParser(parser);
+		}
+	}
+	
+	/**
+	 * Parses a JSON encoded resource of the type named in its resourceType from a reader using a pooled
+	 * parser
+	 * 
+	 * @param reader the reader supplying the JSON encoded resource
+	 * @return the parsed resource
+	 */
+	public static IBaseResource parseResource(Reader reader) {
+		IParser parser = borrowJsonParser();
+		try {
+			return parser.parseResource(reader);
+		}
+		finally {
+			returnJsonParser(parser);
+		}
+	}
+	
+	/**
+	 * Parses a JSON encoded resource from a reader using a pooled parser
+	 * 
+	 * @param resourceType the type of resource to parse
+	 * @param reader the reader supplying the JSON encoded resource
+	 * @return the parsed resource
+	 */
+	public static <T extends IBaseResource> T parseResource(Class<T> resourceType, Reader reader) {
+		IParser parser = borrowJsonParser();
+		try {
+			return parser.parseResource(resourceType, reader);
+		}
+		finally {
+			returnJsonParser(parser);
+		}
+	}
+	
+	/**
+	 * Encodes a resource as JSON using a pooled parser
+	 * 
+	 * @param resource the resource to encode
+	 * @return the JSON encoded resource
+	 */
+	public static String encodeResourceToString(IBaseResource resource) {
+		IParser parser = borrowJsonParser();
+		try {
+			return parser.encodeResourceToString(resource);
+		}
+		finally {
+			returnJsonParser(parser);
+		}
+	}
+	
+	/**
+	 * Encodes a resource as JSON straight to a writer using a pooled parser
+	 * 
+	 * @param resource the resource to encode
+	 * @param writer receives the JSON encoded resource on a single line
+	 */
+	public static void encodeResource(IBaseResource resource, Writer writer) throws IOException {
+		IParser parser = borrowJsonParser();
+		try {
+			parser.encodeResourceToWriter(resource, writer);
+		}
+		finally {
+			returnJsonParser(parser);
+		}
+	}
+	
+	/**
+	 * Create Fhir Client that authenticates with Bearer tokens taken from the shared
+	 * {@link BearerTokenCache}
+	 * 
+	 * @param fhirStorePath fhir server Base Url
+	 * @param authUrl url for generating the acces Bearer token
+	 * @param authUserName login user name for the Facility Registry Server
+	 * @param authPassword login password for the Facility Registry Server
+	 * @return IGenericClient
+	 */
+	public static IGenericClient getFhirClient(String fhirStorePath, String authUrl, String authUserName,
+	        String authPassword) {
+		IGenericClient fhirClient = getRestfulFhirContext().newRestfulGenericClient(fhirStorePath);
+		fhirClient.registerInterceptor(new CachedBearerTokenAuthInterceptor(BearerTokenCache.getInstance(), authUrl,
+		        authUserName, authPassword));
+		return fhirClient;
+	}
+	
 	/**
 	 * Generate Bearer Authentication Token
 	 * 
@@ -73,7 +196,19 @@ public class FhirUtils {
 	 * @return String Token
 	 */
 	public static String getAccesToken(String authUrl, String authUserName, String authPassword) throws IOException {
-		CloseableHttpClient client = HttpClients.createDefault();
+		return requestAccessToken(authUrl, authUserName, authPassword).getToken();
+	}
+	
+	/**
+	 * Requests a new Bearer Authentication Token from the auth server, bypassing the token cache
+	 * 
+	 * @param authUrl url for generating the acces Bearer token
+	 * @param authUserName login user name for the Facility Registry Server
+	 * @param authPassword login password for the Facility Registry Server
+	 * @return the token together with its lifetime
+	 */
+	public static AccessToken requestAccessToken(String authUrl, String authUserName, String authPassword)
+	        throws IOException {
 		HttpPost httpPost = new HttpPost(authUrl);
 		
 		String json = String.format("{\"username\":\"%s\",\"password\":\"%s\"}", authUserName, authPassword);
@@ -82,16 +217,84 @@ public class FhirUtils {
 		httpPost.setHeader("Accept", "application/json");
 		httpPost.setHeader("Content-type", "application/json");
 		ObjectMapper mapper = new ObjectMapper();
-		JsonNode response = mapper.createObjectNode();
-		try (CloseableHttpResponse res = client.execute(httpPost)) {
-			if (res.getStatusLine().getStatusCode() == 200) {
-				response = mapper.readTree(EntityUtils.toString(res.getEntity(), StandardCharsets.UTF_8));
+		JsonNode response;
+		try (CloseableHttpResponse res = FacilityRegistryHttpClient.getHttpClient().execute(httpPost)) {
+			if (res.getStatusLine().getStatusCode() != 200) {
+				EntityUtils.consumeQuietly(res.getEntity());
+				throw new IOException("Failed to generate Bearer Token from " + authUrl + ": " + res.getStatusLine());
 			}
+			response = mapper.readTree(EntityUtils.toString(res.getEntity(), StandardCharsets.UTF_8));
 		}
-		return response.get("access_token").asText();
+		
+		JsonNode accessToken = response.get("access_token");
+		if (accessToken == null) {
+			throw new IOException("No access_token in the response from " + authUrl);
+		}
+		JsonNode expiresIn = response.get("expires_in");
+		return new AccessToken(accessToken.asText(),
+		        expiresIn != null && expiresIn.asLong() > 0 ? expiresIn.asLong() : null);
 	}
 	
+	/**
+	 * Returns the shared R4 FhirContext
+	 * 
+	 * @return FhirContext
+	 */
 	public static FhirContext getFhirContext() {
-		return FhirContext.forR4();
+		return getFhirContext(FhirVersionEnum.R4);
+	}
+	
+	/**
+	 * Returns the shared FhirContext for the given FHIR version, creating it on first use
+	 * 
+	 * @param version the FHIR version
+	 * @return FhirContext
+	 */
+	public static FhirContext getFhirContext(FhirVersionEnum version) {
+		return FHIR_CONTEXTS.computeIfAbsent(version, FhirContext::new);
+	}
+	
+	// the restful client factory is shared with the context, so it is pointed at the pooled HttpClient
+	// every time, which also picks up a new pool after FacilityRegistryHttpClient#refresh()
+	private static FhirContext getRestfulFhirContext() {
+		FhirContext fhirContext = getFhirContext();
+		fhirContext.getRestfulClientFactory().setHttpClient(FacilityRegistryHttpClient.getHttpClient());
+		return fhirContext;
+	}
+	
+	// HAPI parsers are not thread safe, so each one is only ever lent to a single caller at a time
+	private static IParser borrowJsonParser() {
+		IParser parser = JSON_PARSERS.poll();
+		return parser != null ? parser : getParser();
+	}
+	
+	private static void returnJsonParser(IParser parser) {
+		JSON_PARSERS.offer(parser);
+	}
+	
+	/**
+	 * A Bearer token issued by the auth server
+	 */
+	public static class AccessToken {
+		
+		private final String token;
+		
+		private final Long expiresIn;
+		
+		public AccessToken(String token, Long expiresIn) {
+			this.token = token;
+			this.expiresIn = expiresIn;
+		}
+		
+		public String getToken() {
+			return token;
+		}
+		
+		/**
+		 * @return the lifetime of the token in seconds, or null if the auth server did not send one
+		 */
+		public Long getExpiresIn() {
+			return expiresIn;
+		}
 	}
-}
+}
\ No newline at end of file
@@ -0,0 +1,50 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import org.openmrs.api.context.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the numeric settings of the module from the global properties
+ */
+public class GlobalPropertyUtils {
+	
+	private static final Logger log = LoggerFactory.getLogger(GlobalPropertyUtils.class);
+	
+	/**
+	 * Returns the value of an integer global property
+	 * 
+	 * @param property the name of the global property
+	 * @param defaultValue the value used when the property is blank, invalid or cannot be read
+	 * @return the value of the global property
+	 */
+	public static int getIntegerGlobalProperty(String property, int defaultValue) {
+		String value;
+		try {
+			value = Context.getAdministrationService().getGlobalProperty(property);
+		}
+		catch (RuntimeException e) {
+			// outside of a running OpenMRS, e.g. in unit tests, the defaults apply
+			return defaultValue;
+		}
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (NumberFormatException e) {
+			log.warn("ignoring invalid value '{}' for {}", value, property);
+			return defaultValue;
+		}
+	}
+}
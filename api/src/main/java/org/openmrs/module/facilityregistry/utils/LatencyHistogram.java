@@ -0,0 +1,51 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations into fixed buckets, from a millisecond up to a minute. Safe to update from several
+ * threads, the counts of a snapshot may be taken while updates go on.
+ */
+public class LatencyHistogram {
+	
+	// upper bounds of the buckets in milliseconds, anything slower goes into one last bucket
+	static final long[] BUCKET_BOUNDS_MILLIS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000,
+	        60000 };
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+	
+	public void record(long nanos) {
+		long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+		int bucket = 0;
+		while (bucket < BUCKET_BOUNDS_MILLIS.length && millis > BUCKET_BOUNDS_MILLIS[bucket]) {
+			bucket++;
+		}
+		counts.incrementAndGet(bucket);
+	}
+	
+	/**
+	 * @return the number of durations per bucket, the bucket at index i holds those up to
+	 *         {@link #getBucketBoundsMillis()}[i] and the last one all slower ones
+	 */
+	public long[] getCounts() {
+		long[] snapshot = new long[counts.length()];
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+		}
+		return snapshot;
+	}
+	
+	public static long[] getBucketBoundsMillis() {
+		return BUCKET_BOUNDS_MILLIS.clone();
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches pages on a background thread while the calling thread processes the pages fetched before,
+ * so that the time spent waiting on the Facility Registry Server overlaps with the time spent writing
+ * to the database. At most {@code capacity} fetched pages wait in memory, the fetch thread blocks
+ * until the calling thread catches up.
+ * <p>
+ * The pages are processed on the calling thread, which keeps the OpenMRS session of a scheduled task
+ * available to the consumer. The fetch thread must therefore not use the OpenMRS API.
+ * 
+ * @param <T> the page type
+ */
+public class PagePipeline<T> {
+	
+	private static final Logger log = LoggerFactory.getLogger(PagePipeline.class);
+	
+	// how often a waiting consumer checks whether the pipeline was stopped
+	private static final long POLL_INTERVAL_MILLIS = 500;
+	
+	private static final Object END_OF_PAGES = new Object();
+	
+	private final Producer<T> producer;
+	
+	private final BlockingQueue<Object> queue;
+	
+	private volatile boolean stopped;
+	
+	private volatile Throwable fetchFailure;
+	
+	private volatile Thread fetchThread;
+	
+	/**
+	 * @param firstPage fetches the first page
+	 * @param nextPage fetches the page after the given one, or returns null if it was the last
+	 * @param capacity the number of fetched pages that may wait to be processed
+	 */
+	public PagePipeline(Supplier<T> firstPage, Function<T, T> nextPage, int capacity) {
+		this(sink -> {
+			T page = firstPage.get();
+			while (page != null && !sink.isStopped()) {
+				sink.put(page);
+				page = nextPage.apply(page);
+			}
+		}, capacity);
+	}
+	
+	/**
+	 * @param producer fetches all pages, handing each one to the sink as soon as it is complete
+	 * @param capacity the number of fetched pages that may wait to be processed
+	 */
+	public PagePipeline(Producer<T> producer, int capacity) {
+		this.producer = producer;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+	}
+	
+	/**
+	 * Processes all pages in order on the calling thread. A failure while fetching is rethrown here once
+	 * the pages fetched before it have been processed, a failure in the consumer stops the fetch thread.
+	 * 
+	 * @param consumer processes one page
+	 * @return true if all pages were processed, false if the pipeline was stopped before
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean run(Consumer<T> consumer) {
+		Thread thread = new Thread(this::fetchPages, "facilityregistry-page-fetch");
+		thread.setDaemon(true);
+		fetchThread = thread;
+		thread.start();
+		try {
+			while (!stopped) {
+				Object page = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+				if (page == END_OF_PAGES) {
+					if (fetchFailure != null) {
+						throw rethrow(fetchFailure);
+					}
+					return true;
+				}
+				if (page != null) {
+					consumer.accept((T) page);
+				} else if (!thread.isAlive() && queue.isEmpty() && !stopped) {
+					// the fetch thread always hands over the end of the pages, this only guards against waiting forever
+					throw new IllegalStateException("The page fetch thread ended without handing over the end of the pages");
+				}
+			}
+			return false;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		finally {
+			stop();
+		}
+	}
+	
+	/**
+	 * Stops fetching pages and makes {@link #run(Consumer)} return after the page it is processing. May
+	 * be called from any thread.
+	 */
+	public void stop() {
+		stopped = true;
+		Thread thread = fetchThread;
+		if (thread != null) {
+			thread.interrupt();
+		}
+		queue.clear();
+	}
+	
+	public boolean isStopped() {
+		return stopped;
+	}
+	
+	private void fetchPages() {
+		try {
+			producer.produce(new Sink<T>() {
+				
+				@Override
+				public void put(T page) throws InterruptedException {
+					queue.put(page);
+				}
+				
+				@Override
+				public boolean isStopped() {
+					return stopped;
+				}
+			});
+		}
+		catch (InterruptedException e) {
+			// stopped while waiting for the consumer
+		}
+		catch (Throwable e) {
+			// errors such as an OutOfMemoryError while parsing a page are handed over as well, the consumer
+			// would otherwise wait for the end of the pages forever
+			fetchFailure = e;
+		}
+		finally {
+			putEndOfPages();
+		}
+	}
+	
+	private void putEndOfPages() {
+		try {
+			while (!stopped) {
+				if (queue.offer(END_OF_PAGES, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+					return;
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			log.debug("page pipeline stopped before the end of the pages was handed over");
+		}
+	}
+	
+	private static RuntimeException rethrow(Throwable failure) {
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+		if (failure instanceof RuntimeException) {
+			return (RuntimeException) failure;
+		}
+		return new IllegalStateException("Failed to fetch a page", failure);
+	}
+	
+	/**
+	 * Fetches the pages of a pipeline, runs on the fetch thread
+	 * 
+	 * @param <T> the page type
+	 */
+	@FunctionalInterface
+	public interface Producer<T> {
+		
+		/**
+		 * @param sink receives the fetched pages in order
+		 * @throws InterruptedException if the pipeline was stopped while waiting for the consumer
+		 */
+		void produce(Sink<T> sink) throws InterruptedException;
+	}
+	
+	/**
+	 * Receives the pages fetched by a {@link Producer}
+	 * 
+	 * @param <T> the page type
+	 */
+	public interface Sink<T> {
+		
+		/**
+		 * Queues a page, waiting while the queue is full
+		 * 
+		 * @param page the fetched page
+		 * @throws InterruptedException if the pipeline was stopped while waiting
+		 */
+		void put(T page) throws InterruptedException;
+		
+		/**
+		 * @return true if no more pages are wanted
+		 */
+		boolean isStopped();
+	}
+}
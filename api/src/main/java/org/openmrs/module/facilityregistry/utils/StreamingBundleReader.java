@@ -0,0 +1,145 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+/**
+ * Reads the entries of a JSON encoded Bundle one at a time from a stream. Only the entry being read is
+ * held in memory, instead of the whole response and the complete Bundle object graph.
+ */
+public class StreamingBundleReader implements Closeable {
+	
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	
+	private static final JsonFactory JSON_FACTORY = MAPPER.getJsonFactory();
+	
+	private final JsonParser parser;
+	
+	// holds the JSON of one entry's resource at a time, reused for every entry
+	private final ResourceBuffer resourceBuffer = new ResourceBuffer();
+	
+	private boolean readingEntries;
+	
+	private String nextLink;
+	
+	/**
+	 * @param in the JSON encoded Bundle
+	 * @throws IOException if the stream does not start with a JSON object
+	 */
+	public StreamingBundleReader(InputStream in) throws IOException {
+		parser = JSON_FACTORY.createJsonParser(in);
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw new IOException("Expected a JSON encoded Bundle");
+		}
+	}
+	
+	/**
+	 * Reads up to the resource of the next entry
+	 * 
+	 * @return the resource, or null once the end of the Bundle is reached
+	 * @throws IOException if the stream is not a well formed Bundle
+	 */
+	public IBaseResource nextResource() throws IOException {
+		while (true) {
+			if (readingEntries) {
+				if (parser.nextToken() != JsonToken.START_OBJECT) {
+					readingEntries = false;
+					continue;
+				}
+				if (readEntryResource()) {
+					return FhirUtils.parseResource(resourceBuffer.getReader());
+				}
+				continue;
+			}
+			
+			JsonToken token = parser.nextToken();
+			if (token == null || token == JsonToken.END_OBJECT) {
+				return null;
+			}
+			String field = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if ("entry".equals(field) && value == JsonToken.START_ARRAY) {
+				readingEntries = true;
+			} else if ("link".equals(field) && value == JsonToken.START_ARRAY) {
+				readLinks(MAPPER.readTree(parser));
+			} else if ("resourceType".equals(field) && !"Bundle".equals(parser.getText())) {
+				throw new IOException("Expected a Bundle but got a " + parser.getText());
+			} else {
+				parser.skipChildren();
+			}
+		}
+	}
+	
+	/**
+	 * @return the url of the next page, complete once {@link #nextResource()} returned null
+	 */
+	public String getNextLink() {
+		return nextLink;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		parser.close();
+	}
+	
+	/**
+	 * Copies the tokens of the resource of the entry the parser is at into the resource buffer, without
+	 * building a tree or a string of it, and leaves the parser at the end of the entry
+	 * 
+	 * @return true if the entry has a resource
+	 */
+	private boolean readEntryResource() throws IOException {
+		boolean found = false;
+		resourceBuffer.reset();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			if (parser.nextToken() == JsonToken.START_OBJECT && "resource".equals(field)) {
+				JsonGenerator generator = JSON_FACTORY.createJsonGenerator(resourceBuffer);
+				generator.copyCurrentStructure(parser);
+				generator.flush();
+				found = true;
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return found;
+	}
+	
+	private void readLinks(JsonNode links) {
+		for (JsonNode link : links) {
+			if (IBaseBundle.LINK_NEXT.equals(link.path("relation").getTextValue())) {
+				nextLink = link.path("url").getTextValue();
+			}
+		}
+	}
+	
+	private static class ResourceBuffer extends CharArrayWriter {
+		
+		// reads the buffered characters in place instead of copying them like toCharArray()
+		Reader getReader() {
+			return new CharArrayReader(buf, 0, count);
+		}
+	}
+}
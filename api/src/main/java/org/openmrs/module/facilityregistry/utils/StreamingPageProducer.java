@@ -0,0 +1,170 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.util.EntityUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.Organization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Follows the pages of a search on the Facility Registry Server, reading each response with a
+ * {@link StreamingBundleReader}. Locations are handed on in chunks as soon as enough of them were
+ * read. Organizations are held until the end of their page, because the included parents usually
+ * follow their children in a page and are saved before them.
+ */
+public class StreamingPageProducer implements PagePipeline.Producer<Bundle> {
+	
+	private static final Logger log = LoggerFactory.getLogger(StreamingPageProducer.class);
+	
+	private final String firstPageUrl;
+	
+	private final String authUrl;
+	
+	private final String authUserName;
+	
+	private final String authPassword;
+	
+	private final int chunkSize;
+	
+	private final FacilityRegistrySyncRecorder recorder;
+	
+	/**
+	 * @param firstPageUrl the url of the search, or of the page a resumed run continues from
+	 * @param authUrl url for generating the acces Bearer token
+	 * @param authUserName login user name for the Facility Registry Server
+	 * @param authPassword login password for the Facility Registry Server
+	 * @param chunkSize the number of Locations handed on together
+	 * @param recorder times the fetching and parsing of each page
+	 */
+	public StreamingPageProducer(String firstPageUrl, String authUrl, String authUserName, String authPassword,
+	    int chunkSize, FacilityRegistrySyncRecorder recorder) {
+		this.firstPageUrl = firstPageUrl;
+		this.authUrl = authUrl;
+		this.authUserName = authUserName;
+		this.authPassword = authPassword;
+		this.chunkSize = chunkSize;
+		this.recorder = recorder;
+	}
+	
+	@Override
+	public void produce(PagePipeline.Sink<Bundle> sink) throws InterruptedException {
+		String pageUrl = firstPageUrl;
+		while (pageUrl != null && !sink.isStopped()) {
+			try {
+				pageUrl = readPage(pageUrl, sink, true);
+			}
+			catch (IOException e) {
+				throw new FhirClientConnectionException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Reads one page, handing its resources to the sink
+	 * 
+	 * @return the url of the next page, or null if this was the last one
+	 */
+	private String readPage(String pageUrl, PagePipeline.Sink<Bundle> sink, boolean retryUnauthorized)
+	        throws IOException, InterruptedException {
+		HttpGet request = new HttpGet(pageUrl);
+		request.setHeader(Constants.HEADER_ACCEPT, Constants.CT_FHIR_JSON_NEW);
+		request.setHeader(Constants.HEADER_AUTHORIZATION, Constants.HEADER_AUTHORIZATION_VALPREFIX_BEARER
+		        + BearerTokenCache.getInstance().getToken(authUrl, authUserName, authPassword));
+		
+		long fetchStarted = System.nanoTime();
+		try (CloseableHttpResponse response = FacilityRegistryHttpClient.getHttpClient().execute(request)) {
+			recorder.record(FacilityRegistrySyncPhase.FETCH, System.nanoTime() - fetchStarted);
+			int status = response.getStatusLine().getStatusCode();
+			if (status == HttpStatus.SC_UNAUTHORIZED && retryUnauthorized) {
+				EntityUtils.consumeQuietly(response.getEntity());
+				log.info("Bearer Token was rejected by the Facility Registry Server, retrying with a new token");
+				BearerTokenCache.getInstance().invalidate(authUrl, authUserName, authPassword);
+				return readPage(pageUrl, sink, false);
+			}
+			if (status != HttpStatus.SC_OK) {
+				EntityUtils.consumeQuietly(response.getEntity());
+				throw new IOException("Failed to fetch " + pageUrl + ": " + response.getStatusLine());
+			}
+			
+			// each chunk carries the time the registry served its page at, like the meta of a search page
+			Date served = getServedTime(response);
+			try (InputStream in = response.getEntity().getContent();
+			        StreamingBundleReader reader = new StreamingBundleReader(in)) {
+				Bundle locations = newChunk(served);
+				Bundle organizations = new Bundle();
+				IBaseResource resource;
+				// parse time leaves out the time the sink blocks while the previous chunk is saved
+				long parseNanos = 0;
+				long parseStarted = System.nanoTime();
+				while ((resource = reader.nextResource()) != null) {
+					parseNanos += System.nanoTime() - parseStarted;
+					if (resource instanceof Organization) {
+						organizations.addEntry().setResource((Organization) resource);
+					} else if (resource instanceof Location) {
+						locations.addEntry().setResource((Location) resource);
+						if (locations.getEntry().size() >= chunkSize) {
+							sink.put(locations);
+							locations = newChunk(served);
+						}
+					}
+					parseStarted = System.nanoTime();
+				}
+				parseNanos += System.nanoTime() - parseStarted;
+				recorder.record(FacilityRegistrySyncPhase.PARSE, parseNanos);
+				recorder.recordPage();
+				
+				// the last Locations and the Organizations of the page go together, once the page is complete
+				for (Bundle.BundleEntryComponent entry : organizations.getEntry()) {
+					locations.addEntry(entry);
+				}
+				// only the final chunk carries the next link, it marks the point a later run can resume from
+				String nextLink = reader.getNextLink();
+				if (nextLink != null) {
+					locations.addLink().setRelation(Bundle.LINK_NEXT).setUrl(nextLink);
+				}
+				// an empty last page is handed on as well, the first search of a run may find nothing
+				sink.put(locations);
+				return nextLink;
+			}
+		}
+	}
+	
+	/**
+	 * @return the Date header of the response, or null if the registry did not send a valid one
+	 */
+	private static Date getServedTime(CloseableHttpResponse response) {
+		Header date = response.getFirstHeader(HttpHeaders.DATE);
+		return date != null ? DateUtils.parseDate(date.getValue()) : null;
+	}
+	
+	private static Bundle newChunk(Date served) {
+		Bundle chunk = new Bundle();
+		if (served != null) {
+			chunk.getMeta().setLastUpdated(served);
+		}
+		return chunk;
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.module.facilityregistry.api.impl.OrganizationResourceCache;
+import org.openmrs.module.facilityregistry.utils.FacilityRegistryHttpClient;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FacilityRegistryClientConfigTest {
+	
+	@Mock
+	private AdministrationService administrationService;
+	
+	private FacilityRegistryClientConfig config;
+	
+	@Before
+	public void setup() {
+		config = new FacilityRegistryClientConfig();
+		config.setAdministrationService(administrationService);
+		config.setOrganizationResourceCache(new OrganizationResourceCache());
+		when(administrationService.getGlobalProperty(anyString(), anyString()))
+		        .thenAnswer(invocation -> invocation.getArguments()[1]);
+	}
+	
+	@After
+	public void tearDown() {
+		FacilityRegistryHttpClient.shutdown();
+	}
+	
+	@Test
+	public void getters_shouldReadTheGlobalPropertiesOnce() {
+		assertEquals(FacilityRegistryClientConfig.DEFAULT_SERVER_URL, config.getServerUrl());
+		assertEquals(FacilityRegistryClientConfig.DEFAULT_ORG_ID_SYSTEM, config.getOrganizationIdentifierSystem());
+		assertFalse(config.isPrefixSearch());
+		
+		verify(administrationService, times(1))
+		        .getGlobalProperty(eq(FacilityRegistryConstants.GP_FACILITY_REGISTRY_SERVER_URL), anyString());
+	}
+	
+	@Test
+	public void globalPropertyChanged_shouldDropTheSnapshot() {
+		config.getServerUrl();
+		when(administrationService.getGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_PREFIX_SEARCH, "false"))
+		        .thenReturn("true");
+		
+		config.globalPropertyChanged(
+		    new GlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_PREFIX_SEARCH, "true"));
+		
+		assertTrue(config.isPrefixSearch());
+	}
+	
+	@Test
+	public void getSyncLockTimeout_shouldReadTheLeaseSettingsOnce() {
+		when(administrationService.getGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_SYNC_LOCK_TIMEOUT))
+		        .thenReturn("60000");
+		when(administrationService.getGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_MIN_SYNC_INTERVAL))
+		        .thenReturn("-1");
+		
+		assertEquals(60000L, config.getSyncLockTimeout());
+		assertEquals(60000L, config.getSyncLockTimeout());
+		assertEquals(FacilityRegistryClientConfig.DEFAULT_MIN_SYNC_INTERVAL, config.getMinSyncInterval());
+		
+		verify(administrationService, times(1))
+		        .getGlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_SYNC_LOCK_TIMEOUT);
+	}
+	
+	@Test
+	public void supportsPropertyName_shouldIgnoreTheSyncTime() {
+		assertTrue(config.supportsPropertyName(FacilityRegistryConstants.GP_FACILITY_REGISTRY_SERVER_URL));
+		assertTrue(config.supportsPropertyName(FacilityRegistryConstants.GP_FACILITY_REGISTRY_HTTP_SOCKET_TIMEOUT));
+		assertFalse(config.supportsPropertyName(FacilityRegistryConstants.GP_FACILITY_REGISTRY_LAST_SYNC_TIME));
+	}
+	
+	@Test
+	public void globalPropertyChanged_shouldKeepTheHttpClientUntilTheNextSyncRun() {
+		CloseableHttpClient client = FacilityRegistryHttpClient.getHttpClient();
+		
+		config.globalPropertyChanged(
+		    new GlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_HTTP_SOCKET_TIMEOUT, "1000"));
+		
+		assertSame(client, FacilityRegistryHttpClient.getHttpClient());
+		FacilityRegistryHttpClient.refresh();
+		assertNotSame(client, FacilityRegistryHttpClient.getHttpClient());
+	}
+	
+	@Test
+	public void refresh_shouldKeepTheHttpClientWhenNoHttpSettingChanged() {
+		CloseableHttpClient client = FacilityRegistryHttpClient.getHttpClient();
+		
+		config.globalPropertyChanged(
+		    new GlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_PREFIX_SEARCH, "true"));
+		FacilityRegistryHttpClient.refresh();
+		
+		assertSame(client, FacilityRegistryHttpClient.getHttpClient());
+	}
+}
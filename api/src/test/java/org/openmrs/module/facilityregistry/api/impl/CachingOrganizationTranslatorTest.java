@@ -0,0 +1,89 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+
+import org.hl7.fhir.r4.model.Organization;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openmrs.module.facilityregistry.api.translators.OrganizationTranslator;
+import org.openmrs.module.facilityregistry.model.FhirOrganization;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CachingOrganizationTranslatorTest {
+	
+	private static final String ORGANIZATION_UUID = "cf9b1f44-0e8f-42f1-900b-bf1c5d4ed5CC";
+	
+	@Mock
+	private OrganizationTranslator translator;
+	
+	private OrganizationResourceCache cache;
+	
+	private CachingOrganizationTranslator cachingTranslator;
+	
+	private FhirOrganization openmrsOrganization;
+	
+	@Before
+	public void setup() {
+		cache = new OrganizationResourceCache();
+		cachingTranslator = new CachingOrganizationTranslator(translator, cache);
+		
+		openmrsOrganization = new FhirOrganization();
+		openmrsOrganization.setUuid(ORGANIZATION_UUID);
+		openmrsOrganization.setDateChanged(new Date(1000));
+		Organization organization = new Organization();
+		organization.setId(ORGANIZATION_UUID);
+		organization.setName("OpenMRS org");
+		when(translator.toFhirResource(openmrsOrganization)).thenReturn(organization);
+	}
+	
+	@Test
+	public void toFhirResource_shouldReturnACopyOfTheCachedTranslation() {
+		Organization first = cachingTranslator.toFhirResource(openmrsOrganization);
+		Organization second = cachingTranslator.toFhirResource(openmrsOrganization);
+		
+		verify(translator, times(1)).toFhirResource(openmrsOrganization);
+		assertNotSame(first, second);
+		assertEquals("OpenMRS org", second.getName());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+	
+	@Test
+	public void toFhirResource_shouldTranslateAgainWhenTheOrganizationChanged() {
+		cachingTranslator.toFhirResource(openmrsOrganization);
+		openmrsOrganization.setDateChanged(new Date(2000));
+		cachingTranslator.toFhirResource(openmrsOrganization);
+		
+		verify(translator, times(2)).toFhirResource(openmrsOrganization);
+		assertEquals(2, cache.getMisses());
+	}
+	
+	@Test
+	public void toOpenmrsType_shouldEvictTheUpdatedOrganization() {
+		Organization update = new Organization();
+		cachingTranslator.toFhirResource(openmrsOrganization);
+		cachingTranslator.toOpenmrsType(openmrsOrganization, update);
+		cachingTranslator.toFhirResource(openmrsOrganization);
+		
+		verify(translator).toOpenmrsType(openmrsOrganization, update);
+		verify(translator, times(2)).toFhirResource(openmrsOrganization);
+	}
+}
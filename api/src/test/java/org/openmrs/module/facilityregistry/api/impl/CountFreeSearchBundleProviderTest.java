@@ -0,0 +1,91 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Organization;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openmrs.module.facilityregistry.api.dao.FhirOrganizationDao;
+import org.openmrs.module.facilityregistry.api.translators.OrganizationTranslator;
+import org.openmrs.module.facilityregistry.model.FhirOrganization;
+import org.openmrs.module.fhir2.api.search.SearchQueryInclude;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CountFreeSearchBundleProviderTest {
+	
+	@Mock
+	private FhirOrganizationDao dao;
+	
+	@Mock
+	private OrganizationTranslator translator;
+	
+	@Mock
+	private SearchQueryInclude<Organization> searchQueryInclude;
+	
+	private SearchParameterMap theParams;
+	
+	private CountFreeSearchBundleProvider bundleProvider;
+	
+	@Before
+	public void setup() {
+		theParams = new SearchParameterMap();
+		bundleProvider = new CountFreeSearchBundleProvider(theParams, dao, translator, searchQueryInclude);
+		when(translator.toFhirResource(any(FhirOrganization.class))).thenReturn(new Organization());
+		when(searchQueryInclude.getIncludedResources(anyListOf(Organization.class), any(SearchParameterMap.class)))
+		        .thenReturn(new HashSet<>());
+	}
+	
+	@Test
+	public void getResources_shouldLeaveTheSizeUnknownWhileThereIsAFurtherMatch() {
+		when(dao.getSearchResultUuids(theParams, 0, 3)).thenReturn(Arrays.asList("a", "b", "c"));
+		when(dao.getSearchResults(theParams, Arrays.asList("a", "b"))).thenReturn(organizations(2));
+		
+		List<IBaseResource> resources = bundleProvider.getResources(0, 2);
+		
+		assertEquals(2, resources.size());
+		assertNull(bundleProvider.size());
+	}
+	
+	@Test
+	public void getResources_shouldKnowTheSizeOnceAPageReachesTheLastMatch() {
+		when(dao.getSearchResultUuids(theParams, 2, 3)).thenReturn(Collections.singletonList("c"));
+		when(dao.getSearchResults(theParams, Collections.singletonList("c"))).thenReturn(organizations(1));
+		
+		List<IBaseResource> resources = bundleProvider.getResources(2, 4);
+		
+		assertEquals(1, resources.size());
+		assertEquals(Integer.valueOf(3), bundleProvider.size());
+	}
+	
+	private List<FhirOrganization> organizations(int count) {
+		List<FhirOrganization> organizations = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			organizations.add(new FhirOrganization());
+		}
+		return organizations;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.hl7.fhir.r4.model.Organization;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openmrs.module.facilityregistry.api.dao.FacilityRegistrySyncDao;
+import org.openmrs.module.facilityregistry.api.dao.FhirOrganizationDao;
+import org.openmrs.module.facilityregistry.api.translators.OrganizationTranslator;
+import org.openmrs.module.facilityregistry.model.FhirOrganization;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FacilityRegistryExportServiceImplTest {
+	
+	@Mock
+	private FacilityRegistrySyncDao dao;
+	
+	@Mock
+	private FhirOrganizationDao organizationDao;
+	
+	@Mock
+	private OrganizationTranslator organizationTranslator;
+	
+	private FacilityRegistryExportServiceImpl exportService;
+	
+	@Before
+	public void setup() {
+		exportService = new FacilityRegistryExportServiceImpl();
+		exportService.setDao(dao);
+		exportService.setOrganizationDao(organizationDao);
+		exportService.setOrganizationTranslator(organizationTranslator);
+		
+		Organization organization = new Organization();
+		organization.setId("cf9b1f44-0e8f-42f1-900b-bf1c5d4ed5CC");
+		organization.setName("OpenMRS org");
+		when(organizationTranslator.toFhirResource(any(FhirOrganization.class))).thenReturn(organization);
+	}
+	
+	@Test
+	public void exportOrganizations_shouldWriteOneLinePerOrganizationAndClearTheSessionAfterEachChunk()
+	        throws Exception {
+		List<FhirOrganization> firstChunk = organizations(1, FacilityRegistryExportServiceImpl.CHUNK_SIZE);
+		when(organizationDao.getSearchResultsAfter(any(SearchParameterMap.class), (Integer) isNull(),
+		    eq(FacilityRegistryExportServiceImpl.CHUNK_SIZE))).thenReturn(firstChunk);
+		when(organizationDao.getSearchResultsAfter(any(SearchParameterMap.class),
+		    eq(FacilityRegistryExportServiceImpl.CHUNK_SIZE), eq(FacilityRegistryExportServiceImpl.CHUNK_SIZE)))
+		            .thenReturn(organizations(FacilityRegistryExportServiceImpl.CHUNK_SIZE + 1, 1));
+		StringWriter writer = new StringWriter();
+		
+		long exported = exportService.exportOrganizations(writer);
+		
+		String[] lines = writer.toString().split("\n");
+		assertEquals(FacilityRegistryExportServiceImpl.CHUNK_SIZE + 1, exported);
+		assertEquals(FacilityRegistryExportServiceImpl.CHUNK_SIZE + 1, lines.length);
+		assertTrue(lines[0].startsWith("{\"resourceType\":\"Organization\""));
+		verify(dao, times(2)).clear();
+	}
+	
+	@Test
+	public void exportLocations_shouldWriteNothingWithoutTaggedLocations() throws Exception {
+		when(dao.getTaggedLocationsAfter("mCSD Location", null, FacilityRegistryExportServiceImpl.CHUNK_SIZE))
+		        .thenReturn(Collections.emptyList());
+		StringWriter writer = new StringWriter();
+		
+		assertEquals(0, exportService.exportLocations(writer));
+		assertEquals("", writer.toString());
+	}
+	
+	private List<FhirOrganization> organizations(int firstId, int count) {
+		List<FhirOrganization> organizations = new ArrayList<>();
+		for (int id = firstId; id < firstId + count; id++) {
+			FhirOrganization organization = new FhirOrganization();
+			organization.setId(id);
+			organizations.add(organization);
+		}
+		return organizations;
+	}
+}
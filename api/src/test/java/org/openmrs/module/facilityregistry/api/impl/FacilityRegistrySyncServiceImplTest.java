@@ -0,0 +1,271 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.InstantType;
+import org.hl7.fhir.r4.model.Organization;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openmrs.module.facilityregistry.FacilityRegistryClientConfig;
+import org.openmrs.module.facilityregistry.api.FacilityRegistrySaveResult;
+import org.openmrs.module.facilityregistry.api.dao.FacilityRegistrySyncDao;
+import org.openmrs.module.facilityregistry.api.dao.FhirOrganizationDao;
+import org.openmrs.module.facilityregistry.api.translators.OrganizationTranslator;
+import org.openmrs.module.facilityregistry.model.FacilityRegistryFingerprint;
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncLock;
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncRun;
+import org.openmrs.module.facilityregistry.model.FhirOrganization;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FacilityRegistrySyncServiceImplTest {
+	
+	private static final String ORGANIZATION_UUID = "cf9b1f44-0e8f-42f1-900b-bf1c5d4ed5CC";
+	
+	@Mock
+	private FacilityRegistrySyncDao dao;
+	
+	@Mock
+	private FhirOrganizationDao organizationDao;
+	
+	@Mock
+	private OrganizationTranslator organizationTranslator;
+	
+	@Mock
+	private FacilityRegistryClientConfig config;
+	
+	private FacilityRegistrySyncServiceImpl syncService;
+	
+	private Organization organization;
+	
+	private FhirOrganization storedOrganization;
+	
+	private Map<String, FhirOrganization> storedOrganizations;
+	
+	@Before
+	public void setup() {
+		syncService = new FacilityRegistrySyncServiceImpl();
+		syncService.setDao(dao);
+		syncService.setOrganizationDao(organizationDao);
+		syncService.setOrganizationTranslator(organizationTranslator);
+		syncService.setConfig(config);
+		syncService.setOrganizationResourceCache(new OrganizationResourceCache());
+		
+		organization = new Organization();
+		organization.setId(ORGANIZATION_UUID);
+		organization.setName("OpenMRS org");
+		storedOrganization = new FhirOrganization();
+		storedOrganization.setUuid(ORGANIZATION_UUID);
+		storedOrganizations = new HashMap<>();
+		storedOrganizations.put(ORGANIZATION_UUID, storedOrganization);
+		when(dao.getOrganizationsByUuid(anyCollectionOf(String.class))).thenReturn(storedOrganizations);
+		when(organizationTranslator.toOpenmrsType(storedOrganization, organization)).thenReturn(storedOrganization);
+		when(organizationTranslator.toOpenmrsType(organization)).thenReturn(storedOrganization);
+		when(config.getPersistBatchSize()).thenReturn(FacilityRegistryClientConfig.DEFAULT_PERSIST_BATCH_SIZE);
+		when(config.getMinSyncInterval()).thenReturn(FacilityRegistryClientConfig.DEFAULT_MIN_SYNC_INTERVAL);
+		when(config.getMaxSyncInterval()).thenReturn(FacilityRegistryClientConfig.DEFAULT_MAX_SYNC_INTERVAL);
+		when(config.getSyncLockTimeout()).thenReturn(FacilityRegistryClientConfig.DEFAULT_SYNC_LOCK_TIMEOUT);
+	}
+	
+	@Test
+	public void saveAll_shouldSkipStoredOrganizationWithSameContent() {
+		givenFingerprint(FacilityRegistrySyncServiceImpl.getContentHash(organization));
+		
+		FacilityRegistrySaveResult result = saveOrganization();
+		
+		assertEquals(1, result.getSkipped());
+		verify(organizationTranslator, never()).toOpenmrsType(any(FhirOrganization.class), any(Organization.class));
+		verify(organizationDao, never()).createOrUpdate(any(FhirOrganization.class));
+	}
+	
+	@Test
+	public void saveAll_shouldSkipStoredOrganizationWithSameVersion() {
+		organization.getMeta().setVersionId("2");
+		organization.getMeta().setLastUpdatedElement(new InstantType("2021-06-01T10:00:00.123Z"));
+		FacilityRegistryFingerprint fingerprint = givenFingerprint("hash of an older encoding");
+		fingerprint.setVersionId("2");
+		fingerprint.setLastUpdatedMillis(organization.getMeta().getLastUpdated().getTime());
+		
+		assertEquals(1, saveOrganization().getSkipped());
+	}
+	
+	@Test
+	public void saveAll_shouldUpdateStoredOrganizationWithChangedContent() {
+		givenFingerprint(FacilityRegistrySyncServiceImpl.getContentHash(organization));
+		organization.setName("Renamed org");
+		
+		FacilityRegistrySaveResult result = saveOrganization();
+		
+		assertEquals(1, result.getUpdated());
+		verify(organizationDao).createOrUpdate(storedOrganization);
+		verify(dao).saveFingerprint(any(FacilityRegistryFingerprint.class));
+	}
+	
+	@Test
+	public void saveAll_shouldCreateOrganizationThatIsNotStored() {
+		storedOrganizations.clear();
+		
+		FacilityRegistrySaveResult result = saveOrganization();
+		
+		assertEquals(1, result.getCreated());
+		verify(organizationTranslator).toOpenmrsType(organization);
+	}
+	
+	@Test
+	public void releaseSyncLock_shouldDoubleIntervalWhenNoChangesWereFound() {
+		FacilityRegistrySyncLock lock = givenSyncLockHeldBy("run-1", 20000L);
+		
+		syncService.releaseSyncLock("run-1", false);
+		
+		assertEquals(Long.valueOf(40000L), lock.getRunInterval());
+		assertNull(lock.getOwner());
+		verify(dao).saveSyncLock(lock);
+	}
+	
+	@Test
+	public void releaseSyncLock_shouldNotExceedMaximumInterval() {
+		FacilityRegistrySyncLock lock = givenSyncLockHeldBy("run-1", 500000L);
+		
+		syncService.releaseSyncLock("run-1", false);
+		
+		assertEquals(Long.valueOf(FacilityRegistryClientConfig.DEFAULT_MAX_SYNC_INTERVAL), lock.getRunInterval());
+	}
+	
+	@Test
+	public void releaseSyncLock_shouldResetIntervalWhenChangesWereFound() {
+		FacilityRegistrySyncLock lock = givenSyncLockHeldBy("run-1", 320000L);
+		
+		syncService.releaseSyncLock("run-1", true);
+		
+		assertEquals(Long.valueOf(FacilityRegistryClientConfig.DEFAULT_MIN_SYNC_INTERVAL), lock.getRunInterval());
+	}
+	
+	@Test
+	public void releaseSyncLock_shouldLeaveLockOfAnotherOwnerAlone() {
+		FacilityRegistrySyncLock lock = givenSyncLockHeldBy("run-2", 20000L);
+		
+		syncService.releaseSyncLock("run-1", true);
+		
+		assertEquals("run-2", lock.getOwner());
+		verify(dao, never()).saveSyncLock(lock);
+	}
+	
+	@Test
+	public void getResumableSyncRun_shouldReturnInterruptedFullSyncWithCheckpoint() {
+		FacilityRegistrySyncRun interrupted = givenLatestSyncRun(true, FacilityRegistrySyncRun.Status.FAILED,
+		    "http://localhost/fhir?_getpages=abc&_getpagesoffset=200");
+		
+		assertSame(interrupted, syncService.getResumableSyncRun());
+	}
+	
+	@Test
+	public void getResumableSyncRun_shouldNotResumeCompletedOrIncrementalRuns() {
+		givenLatestSyncRun(true, FacilityRegistrySyncRun.Status.COMPLETED, null);
+		assertNull(syncService.getResumableSyncRun());
+		
+		givenLatestSyncRun(false, FacilityRegistrySyncRun.Status.STOPPED, "http://localhost/fhir?_getpages=abc");
+		assertNull(syncService.getResumableSyncRun());
+		
+		givenLatestSyncRun(true, FacilityRegistrySyncRun.Status.FAILED, null);
+		assertNull(syncService.getResumableSyncRun());
+	}
+	
+	@Test
+	public void startSyncRun_shouldContinueTheHighWaterMarkButNotTheCheckpointOfTheResumedRun() {
+		FacilityRegistrySyncRun interrupted = givenLatestSyncRun(true, FacilityRegistrySyncRun.Status.STOPPED,
+		    "http://localhost/fhir?_getpages=abc&_getpagesoffset=200");
+		interrupted.setId(7);
+		interrupted.setHighWaterMark(new Date(1000L));
+		
+		FacilityRegistrySyncRun syncRun = syncService.startSyncRun("run-1", true, null, interrupted);
+		
+		assertEquals(FacilityRegistrySyncRun.Status.RUNNING, syncRun.getStatus());
+		assertEquals(Integer.valueOf(7), syncRun.getResumedFrom());
+		assertEquals(new Date(1000L), syncRun.getHighWaterMark());
+		assertNull(syncRun.getCheckpointUrl());
+		verify(dao).saveSyncRun(syncRun);
+		verify(dao).deleteOldSyncRuns(FacilityRegistrySyncServiceImpl.SYNC_RUN_HISTORY);
+	}
+	
+	@Test
+	public void startSyncRun_shouldKeepTheSearchStartOfTheFirstRunOfTheResumedChain() {
+		FacilityRegistrySyncRun first = givenLatestSyncRun(true, FacilityRegistrySyncRun.Status.FAILED,
+		    "http://localhost/fhir?_getpages=abc&_getpagesoffset=200");
+		first.setStarted(new Date(400L));
+		first.setSearchStarted(new Date(500L));
+		FacilityRegistrySyncRun second = syncService.startSyncRun("run-1", true, null, first);
+		second.setCheckpointUrl("http://localhost/fhir?_getpages=abc&_getpagesoffset=400");
+		second.setStatus(FacilityRegistrySyncRun.Status.STOPPED);
+		
+		FacilityRegistrySyncRun third = syncService.startSyncRun("run-2", true, null, second);
+		
+		assertEquals(new Date(500L), third.getSearchStarted());
+	}
+	
+	@Test
+	public void startSyncRun_shouldBoundTheResumedChainByTheStartOfItsFirstRunIfTheRegistryDidNotSayItsTime() {
+		FacilityRegistrySyncRun interrupted = givenLatestSyncRun(true, FacilityRegistrySyncRun.Status.STOPPED,
+		    "http://localhost/fhir?_getpages=abc&_getpagesoffset=200");
+		interrupted.setStarted(new Date(400L));
+		
+		FacilityRegistrySyncRun syncRun = syncService.startSyncRun("run-1", true, null, interrupted);
+		
+		assertEquals(new Date(400L), syncRun.getSearchStarted());
+	}
+	
+	private FacilityRegistrySyncRun givenLatestSyncRun(boolean fullSync, FacilityRegistrySyncRun.Status status,
+	        String checkpointUrl) {
+		FacilityRegistrySyncRun syncRun = new FacilityRegistrySyncRun();
+		syncRun.setFullSync(fullSync);
+		syncRun.setStatus(status);
+		syncRun.setCheckpointUrl(checkpointUrl);
+		when(dao.getLatestSyncRun()).thenReturn(syncRun);
+		return syncRun;
+	}
+	
+	private FacilityRegistrySyncLock givenSyncLockHeldBy(String owner, Long runInterval) {
+		FacilityRegistrySyncLock lock = new FacilityRegistrySyncLock(FacilityRegistrySyncServiceImpl.SYNC_LOCK_NAME);
+		lock.setOwner(owner);
+		lock.setRunInterval(runInterval);
+		when(dao.getSyncLock(FacilityRegistrySyncServiceImpl.SYNC_LOCK_NAME)).thenReturn(lock);
+		return lock;
+	}
+	
+	private FacilityRegistryFingerprint givenFingerprint(String contentHash) {
+		FacilityRegistryFingerprint fingerprint = new FacilityRegistryFingerprint("Organization", ORGANIZATION_UUID);
+		fingerprint.setContentHash(contentHash);
+		Map<String, FacilityRegistryFingerprint> fingerprints = new HashMap<>();
+		fingerprints.put(ORGANIZATION_UUID, fingerprint);
+		when(dao.getFingerprints(eq("Organization"), anyCollectionOf(String.class))).thenReturn(fingerprints);
+		return fingerprint;
+	}
+	
+	private FacilityRegistrySaveResult saveOrganization() {
+		return syncService.saveAll(Collections.<DomainResource> singletonList(organization));
+	}
+}
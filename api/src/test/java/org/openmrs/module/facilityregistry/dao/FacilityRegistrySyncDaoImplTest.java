@@ -0,0 +1,152 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.dao;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Location;
+import org.openmrs.module.facilityregistry.TestFhirSpringConfiguration;
+import org.openmrs.module.facilityregistry.api.dao.impl.FacilityRegistrySyncDaoImpl;
+import org.openmrs.module.facilityregistry.model.FacilityRegistryFingerprint;
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncLock;
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncRun;
+import org.openmrs.module.facilityregistry.model.FhirOrganization;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.test.context.ContextConfiguration;
+
+@ContextConfiguration(classes = TestFhirSpringConfiguration.class, inheritLocations = false)
+public class FacilityRegistrySyncDaoImplTest extends BaseModuleContextSensitiveTest {
+	
+	private static final String ORGANIZATION_INITIAL_DATA_XML = "test_data/FhirOrganizationTestdata.xml";
+	
+	private static final String ORGANIZATION_UUID = "cf9b1f44-0e8f-42f1-900b-bf1c5d4ed5CC";
+	
+	private static final String SYNC_LOCK_NAME = "facilityregistry.sync";
+	
+	private static final String LOCATION_UUID = "8d6c993e-c2cc-11de-8d13-0010c6dffd0f";
+	
+	// 2021-06-01T10:00:00.123Z, the milliseconds are what a datetime column would drop
+	private static final Long LAST_UPDATED_MILLIS = 1622541600123L;
+	
+	private FacilityRegistrySyncDaoImpl dao;
+	
+	@Autowired
+	@Qualifier("sessionFactory")
+	private SessionFactory sessionFactory;
+	
+	@Before
+	public void setup() throws Exception {
+		dao = new FacilityRegistrySyncDaoImpl();
+		dao.setSessionFactory(sessionFactory);
+		executeDataSet(ORGANIZATION_INITIAL_DATA_XML);
+	}
+	
+	@Test
+	public void getOrganizationsByUuid_shouldReturnStoredOrganizationsKeyedByUuid() {
+		Map<String, FhirOrganization> result = dao.getOrganizationsByUuid(Arrays.asList(ORGANIZATION_UUID,
+		    "unknown-uuid"));
+		
+		assertThat(result.keySet(), contains(ORGANIZATION_UUID));
+		assertThat(result.get(ORGANIZATION_UUID).getName(), equalTo("OpenMRS org"));
+	}
+	
+	@Test
+	public void getLocationsByUuid_shouldReturnStoredLocationsKeyedByUuid() {
+		Map<String, Location> result = dao.getLocationsByUuid(Arrays.asList(LOCATION_UUID, "unknown-uuid"));
+		
+		assertThat(result.keySet(), contains(LOCATION_UUID));
+	}
+	
+	@Test
+	public void getFingerprints_shouldReturnSavedFingerprintsOfTheGivenType() {
+		FacilityRegistryFingerprint fingerprint = new FacilityRegistryFingerprint("Organization", ORGANIZATION_UUID);
+		fingerprint.setContentHash("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+		dao.saveFingerprint(fingerprint);
+		dao.flushAndClear();
+		
+		assertThat(dao.getFingerprints("Organization", Arrays.asList(ORGANIZATION_UUID)).keySet(),
+		    contains(ORGANIZATION_UUID));
+		assertThat(dao.getFingerprints("Location", Arrays.asList(ORGANIZATION_UUID)).isEmpty(), is(true));
+	}
+	
+	@Test
+	public void getFingerprints_shouldKeepTheMillisecondsOfLastUpdated() {
+		FacilityRegistryFingerprint fingerprint = new FacilityRegistryFingerprint("Organization", ORGANIZATION_UUID);
+		fingerprint.setContentHash("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+		fingerprint.setLastUpdatedMillis(LAST_UPDATED_MILLIS);
+		dao.saveFingerprint(fingerprint);
+		dao.flushAndClear();
+		
+		FacilityRegistryFingerprint reloaded = dao.getFingerprints("Organization", Arrays.asList(ORGANIZATION_UUID))
+		        .get(ORGANIZATION_UUID);
+		
+		assertThat(reloaded.getLastUpdatedMillis(), equalTo(LAST_UPDATED_MILLIS));
+	}
+	
+	@Test
+	public void getLatestSyncRun_shouldKeepTheMillisecondsOfTheHighWaterMark() {
+		FacilityRegistrySyncRun syncRun = new FacilityRegistrySyncRun();
+		syncRun.setStatus(FacilityRegistrySyncRun.Status.RUNNING);
+		syncRun.setStarted(new Date());
+		syncRun.setHighWaterMark(new Date(LAST_UPDATED_MILLIS));
+		dao.saveSyncRun(syncRun);
+		dao.flushAndClear();
+		
+		assertThat(dao.getLatestSyncRun().getHighWaterMark(), equalTo(new Date(LAST_UPDATED_MILLIS)));
+	}
+	
+	@Test
+	public void acquireSyncLock_shouldGrantLockToOneOwnerUntilTheLeaseExpires() {
+		dao.saveSyncLock(new FacilityRegistrySyncLock(SYNC_LOCK_NAME));
+		dao.flushAndClear();
+		Date now = new Date();
+		Date leaseEnd = new Date(now.getTime() + 60000);
+		
+		assertThat(dao.acquireSyncLock(SYNC_LOCK_NAME, "run-1", now, leaseEnd), is(true));
+		assertThat(dao.acquireSyncLock(SYNC_LOCK_NAME, "run-2", now, leaseEnd), is(false));
+		assertThat(dao.renewSyncLock(SYNC_LOCK_NAME, "run-2", leaseEnd), is(false));
+		assertThat(dao.renewSyncLock(SYNC_LOCK_NAME, "run-1", leaseEnd), is(true));
+		assertThat(dao.acquireSyncLock(SYNC_LOCK_NAME, "run-2", new Date(leaseEnd.getTime() + 1), leaseEnd), is(true));
+		assertThat(dao.getSyncLock(SYNC_LOCK_NAME).getOwner(), equalTo("run-2"));
+	}
+	
+	@Test
+	public void acquireSyncLock_shouldNotGrantLockBeforeTheNextRunIsDue() {
+		Date now = new Date();
+		FacilityRegistrySyncLock lock = new FacilityRegistrySyncLock(SYNC_LOCK_NAME);
+		lock.setNextRunAfter(new Date(now.getTime() + 60000));
+		dao.saveSyncLock(lock);
+		dao.flushAndClear();
+		
+		assertThat(dao.acquireSyncLock(SYNC_LOCK_NAME, "run-1", now, new Date(now.getTime() + 60000)), is(false));
+	}
+	
+	@Test
+	public void flushAndClear_shouldDetachLoadedEntities() {
+		FhirOrganization organization = dao.getOrganizationsByUuid(Arrays.asList(ORGANIZATION_UUID))
+		        .get(ORGANIZATION_UUID);
+		
+		dao.flushAndClear();
+		
+		assertThat(sessionFactory.getCurrentSession().contains(organization), is(false));
+	}
+}
@@ -10,17 +10,37 @@
 package org.openmrs.module.facilityregistry.dao;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.uhn.fhir.rest.param.ReferenceOrListParam;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.StringAndListParam;
+import ca.uhn.fhir.rest.param.StringParam;
 import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Before;
 import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
 import org.openmrs.module.facilityregistry.TestFhirSpringConfiguration;
+import org.openmrs.module.facilityregistry.api.dao.FhirOrganizationDao;
 import org.openmrs.module.facilityregistry.api.dao.impl.FhirOrganizationDaoImpl;
 import org.openmrs.module.facilityregistry.model.FhirOganizationAddress;
 import org.openmrs.module.facilityregistry.model.FhirOrganization;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -35,6 +55,9 @@ public class FhirOrganizationDaoImplTest extends BaseModuleContextSensitiveTest
 	
 	private FhirOrganizationDaoImpl dao;
 	
+	@Autowired
+	private FhirOrganizationDao organizationDao;
+	
 	@Autowired
 	@Qualifier("sessionFactory")
 	private SessionFactory sessionFactory;
@@ -82,4 +105,166 @@ public class FhirOrganizationDaoImplTest extends BaseModuleContextSensitiveTest
 		assertThat(result.getName(), equalTo("test Org"));
 		assertThat(result.getAddress(), hasSize(equalTo(2)));
 	}
+	
+	@Test
+	public void getExistingUuids_shouldReturnOnlyStoredUuids() {
+		assertThat(dao.getExistingUuids(Arrays.asList(ORGANIZATION_UUID, "unknown-uuid")), contains(ORGANIZATION_UUID));
+	}
+	
+	@Test
+	public void getSearchResultUuids_shouldMatchNamePrefixCaseInsensitivelyByDefault() {
+		assertThat(organizationDao.getSearchResultUuids(searchByName("openmrs")), contains(ORGANIZATION_UUID));
+	}
+	
+	@Test
+	public void getSearchResultUuids_shouldMatchNamePrefixOnTheColumnWhenPrefixSearchIsEnabled() {
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_PREFIX_SEARCH, "true"));
+		
+		assertThat(organizationDao.getSearchResultUuids(searchByName("OpenMRS")), contains(ORGANIZATION_UUID));
+		assertThat(organizationDao.getSearchResultUuids(searchByName("org")), empty());
+	}
+	
+	@Test
+	public void getSearchResultUuids_shouldMatchLikeWildcardsInAPrefixLiterally() {
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(FacilityRegistryConstants.GP_FACILITY_REGISTRY_PREFIX_SEARCH, "true"));
+		String percent = saveOrganization("100% Health Centre", null).getUuid();
+		saveOrganization("1000 Hills Clinic", null);
+		String underscore = saveOrganization("A_B Clinic", null).getUuid();
+		saveOrganization("AXB Clinic", null);
+		
+		assertThat(organizationDao.getSearchResultUuids(searchByName("100%")), contains(percent));
+		assertThat(organizationDao.getSearchResultUuids(searchByName("A_B")), contains(underscore));
+	}
+	
+	@Test
+	public void getSearchResultUuids_shouldReturnAnOrganizationWithTwoMatchingAddressesOnce() {
+		SearchParameterMap theParams = new SearchParameterMap().addParameter(FhirConstants.CITY_SEARCH_HANDLER,
+		    new StringAndListParam().addAnd(new StringParam("kampala")));
+		
+		assertThat(organizationDao.getSearchResultUuids(theParams, 0, 2), contains(ORGANIZATION_UUID));
+		assertThat(organizationDao.getSearchResultUuids(theParams, 1, 2), empty());
+	}
+	
+	@Test
+	public void get_shouldNotReturnAnOrganizationByAUuidItNoLongerHas() {
+		FhirOrganization organization = organizationDao.get(ORGANIZATION_UUID);
+		assertThat(organizationDao.get(ORGANIZATION_UUID), equalTo(organization));
+		
+		organization.setUuid("changed-uuid");
+		organizationDao.createOrUpdate(organization);
+		
+		assertThat(organizationDao.get(ORGANIZATION_UUID), nullValue());
+		assertThat(organizationDao.get("changed-uuid"), equalTo(organization));
+	}
+	
+	@Test
+	public void getSearchResultUuids_shouldReturnDescendantsAndAncestorsAtAnyDepth() {
+		FhirOrganization region = saveOrganization("region", null);
+		FhirOrganization district = saveOrganization("district", region);
+		FhirOrganization facility = saveOrganization("facility", district);
+		
+		assertThat(getDescendants(region), containsInAnyOrder(district.getUuid(), facility.getUuid()));
+		assertThat(getAncestors(facility), containsInAnyOrder(district.getUuid(), region.getUuid()));
+	}
+	
+	@Test
+	public void createOrUpdate_shouldMoveTheSubtreeWhenTheParentChanges() {
+		FhirOrganization region = saveOrganization("region", null);
+		FhirOrganization district = saveOrganization("district", region);
+		FhirOrganization otherRegion = saveOrganization("other region", null);
+		FhirOrganization facility = saveOrganization("facility", district);
+		
+		district.setPartOfOrg(otherRegion);
+		organizationDao.createOrUpdate(district);
+		
+		assertThat(getDescendants(region), empty());
+		assertThat(getDescendants(otherRegion), containsInAnyOrder(district.getUuid(), facility.getUuid()));
+		assertThat(getAncestors(facility), containsInAnyOrder(district.getUuid(), otherRegion.getUuid()));
+	}
+	
+	@Test
+	public void getSearchResults_shouldLoadTheAssociationsOfAPageInBatches() {
+		FhirOrganization region = saveOrganization("region", null);
+		List<String> uuids = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			FhirOganizationAddress address = new FhirOganizationAddress();
+			address.setCity("city " + i);
+			FhirOrganization organization = new FhirOrganization();
+			organization.setName("facility " + i);
+			organization.setPartOfOrg(region);
+			organization.addAddress(address);
+			uuids.add(organizationDao.createOrUpdate(organization).getUuid());
+		}
+		uuids.add(ORGANIZATION_UUID);
+		sessionFactory.getCurrentSession().flush();
+		sessionFactory.getCurrentSession().clear();
+		sessionFactory.getCache().evictAllRegions();
+		Statistics statistics = sessionFactory.getStatistics();
+		statistics.setStatisticsEnabled(true);
+		statistics.clear();
+		
+		List<FhirOrganization> results = organizationDao.getSearchResults(new SearchParameterMap(), uuids);
+		for (FhirOrganization organization : results) {
+			organization.getAddress().size();
+			organization.getType().size();
+			organization.getPartOfOrg().getName();
+		}
+		
+		assertThat(results, hasSize(21));
+		// the page, then one select each for parents, addresses and types instead of one per Organization
+		assertThat(statistics.getPrepareStatementCount(), lessThanOrEqualTo(6L));
+		statistics.setStatisticsEnabled(false);
+	}
+	
+	@Test
+	public void getSearchResultsAfter_shouldPageByIdWithoutRepeatingOrSkippingOrganizationsStoredMeanwhile() {
+		List<String> stored = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			stored.add(saveOrganization("facility " + i, null).getUuid());
+		}
+		SearchParameterMap theParams = searchByName("facility");
+		
+		List<FhirOrganization> firstPage = organizationDao.getSearchResultsAfter(theParams, null, 3);
+		// stored between the two pages, after the cursor of the first one
+		stored.add(saveOrganization("facility 5", null).getUuid());
+		List<FhirOrganization> secondPage = organizationDao.getSearchResultsAfter(theParams,
+		    firstPage.get(firstPage.size() - 1).getId(), 3);
+		
+		List<String> paged = new ArrayList<>();
+		firstPage.forEach(organization -> paged.add(organization.getUuid()));
+		secondPage.forEach(organization -> paged.add(organization.getUuid()));
+		assertThat(firstPage, hasSize(3));
+		assertThat(paged, equalTo(stored));
+		assertThat(organizationDao.getSearchResultsAfter(theParams, secondPage.get(2).getId(), 3), empty());
+	}
+	
+	private FhirOrganization saveOrganization(String name, FhirOrganization parent) {
+		FhirOrganization organization = new FhirOrganization();
+		organization.setName(name);
+		organization.setActive(true);
+		organization.setPartOfOrg(parent);
+		return organizationDao.createOrUpdate(organization);
+	}
+	
+	private List<String> getDescendants(FhirOrganization organization) {
+		return organizationDao.getSearchResultUuids(
+		    searchHierarchy(FacilityRegistryConstants.PARTOF_BELOW_SEARCH_HANDLER, organization));
+	}
+	
+	private List<String> getAncestors(FhirOrganization organization) {
+		return organizationDao.getSearchResultUuids(
+		    searchHierarchy(FacilityRegistryConstants.PARTOF_ABOVE_SEARCH_HANDLER, organization));
+	}
+	
+	private SearchParameterMap searchHierarchy(String handler, FhirOrganization organization) {
+		return new SearchParameterMap().addParameter(handler,
+		    new ReferenceOrListParam().add(new ReferenceParam(organization.getUuid())));
+	}
+	
+	private SearchParameterMap searchByName(String name) {
+		return new SearchParameterMap().addParameter(FhirConstants.NAME_SEARCH_HANDLER,
+		    new StringAndListParam().addAnd(new StringParam(name)));
+	}
 }
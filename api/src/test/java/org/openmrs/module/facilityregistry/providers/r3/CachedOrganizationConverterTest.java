@@ -0,0 +1,86 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.providers.r3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.util.Date;
+
+import org.hl7.fhir.r4.model.Organization;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.facilityregistry.api.impl.OrganizationResourceCache;
+import org.openmrs.module.facilityregistry.model.FhirOrganization;
+
+public class CachedOrganizationConverterTest {
+	
+	private static final String ORGANIZATION_UUID = "cf9b1f44-0e8f-42f1-900b-bf1c5d4ed5CC";
+	
+	private OrganizationResourceCache resourceCache;
+	
+	private CachedOrganizationConverter converter;
+	
+	private FhirOrganization fhirOrganization;
+	
+	private Organization organization;
+	
+	@Before
+	public void setup() {
+		resourceCache = new OrganizationResourceCache();
+		converter = new CachedOrganizationConverter();
+		converter.setResourceCache(resourceCache);
+		
+		fhirOrganization = new FhirOrganization();
+		fhirOrganization.setUuid(ORGANIZATION_UUID);
+		fhirOrganization.setDateCreated(new Date());
+		
+		organization = new Organization();
+		organization.setId(ORGANIZATION_UUID);
+		organization.setName("OpenMRS org");
+		organization.getMeta().setLastUpdated(fhirOrganization.getDateCreated());
+	}
+	
+	@Test
+	public void toDstu3_shouldKeepTheConversionWithTheCachedOrganization() {
+		resourceCache.put(fhirOrganization, organization);
+		
+		org.hl7.fhir.dstu3.model.Organization converted = converter.toDstu3(organization);
+		org.hl7.fhir.dstu3.model.Organization cached = resourceCache.getDstu3(ORGANIZATION_UUID,
+		    fhirOrganization.getDateCreated().getTime());
+		
+		assertEquals("OpenMRS org", converted.getName());
+		assertNotNull(cached);
+		assertNotSame(converted, cached);
+		assertEquals("OpenMRS org", cached.getName());
+	}
+	
+	@Test
+	public void toDstu3_shouldNotKeepTheConversionOfAnOrganizationThatIsNotCached() {
+		assertEquals("OpenMRS org", converter.toDstu3(organization).getName());
+		
+		assertNull(resourceCache.getDstu3(ORGANIZATION_UUID, fhirOrganization.getDateCreated().getTime()));
+	}
+	
+	@Test
+	public void toDstu3_shouldNotUseTheConversionOfAnOlderVersion() {
+		resourceCache.put(fhirOrganization, organization);
+		converter.toDstu3(organization);
+		
+		fhirOrganization.setDateChanged(new Date(fhirOrganization.getDateCreated().getTime() + 1000));
+		organization.setName("Renamed org");
+		organization.getMeta().setLastUpdated(fhirOrganization.getDateChanged());
+		resourceCache.put(fhirOrganization, organization);
+		
+		assertEquals("Renamed org", converter.toDstu3(organization).getName());
+	}
+}
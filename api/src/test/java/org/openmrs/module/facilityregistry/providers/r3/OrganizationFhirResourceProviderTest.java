@@ -0,0 +1,170 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.providers.r3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.param.StringAndListParam;
+import ca.uhn.fhir.rest.param.StringOrListParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.util.UrlUtil;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.r4.model.Organization;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
+import org.openmrs.module.facilityregistry.api.FhirOrganizationService;
+import org.openmrs.module.facilityregistry.api.OrganizationSearchPage;
+import org.openmrs.module.facilityregistry.api.impl.OrganizationResourceCache;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OrganizationFhirResourceProviderTest {
+	
+	private static final String SERVER_BASE = "http://localhost:8080/openmrs/ws/fhir2/R3";
+	
+	private static final String SECOND_PAGE_CURSOR = OrganizationSearchPage.encodeCursor(2);
+	
+	private static final String THIRD_PAGE_CURSOR = OrganizationSearchPage.encodeCursor(4);
+	
+	@Mock
+	private FhirOrganizationService fhirOrganizationService;
+	
+	@Mock
+	private RequestDetails requestDetails;
+	
+	private OrganizationFhirResourceProvider resourceProvider;
+	
+	private StringAndListParam name;
+	
+	private Map<String, String[]> parameters;
+	
+	@Before
+	public void setup() {
+		resourceProvider = new OrganizationFhirResourceProvider();
+		resourceProvider.setFhirOrganizationService(fhirOrganizationService);
+		CachedOrganizationConverter converter = new CachedOrganizationConverter();
+		converter.setResourceCache(new OrganizationResourceCache());
+		resourceProvider.setConverter(converter);
+		
+		name = new StringAndListParam().addAnd(new StringOrListParam().add(new StringParam("Kampala")));
+		when(requestDetails.getFhirServerBase()).thenReturn(SERVER_BASE);
+		when(requestDetails.getRequestPath()).thenReturn("Organization");
+		when(requestDetails.getParameters()).thenAnswer(invocation -> parameters);
+		when(requestDetails.getCompleteUrl()).thenAnswer(invocation -> SERVER_BASE + "/Organization");
+		
+		givenPage("", new OrganizationSearchPage(organizations("org-1", "org-2"), SECOND_PAGE_CURSOR));
+		givenPage(SECOND_PAGE_CURSOR, new OrganizationSearchPage(organizations("org-3", "org-4"), THIRD_PAGE_CURSOR));
+		givenPage(THIRD_PAGE_CURSOR, new OrganizationSearchPage(organizations("org-5"), null));
+	}
+	
+	@Test
+	public void searchOrganizationsByCursor_shouldReturnTheFirstPageForAnEmptyCursor() {
+		Bundle bundle = searchFirstPage();
+		
+		assertEquals(Bundle.BundleType.SEARCHSET, bundle.getType());
+		assertEquals(Arrays.asList("org-1", "org-2"), getIds(bundle));
+		assertEquals("org-1", ((org.hl7.fhir.dstu3.model.Organization) bundle.getEntryFirstRep().getResource()).getName());
+		assertEquals(SERVER_BASE + "/Organization/org-1", bundle.getEntryFirstRep().getFullUrl());
+		assertEquals(Bundle.SearchEntryMode.MATCH, bundle.getEntryFirstRep().getSearch().getMode());
+		assertNotNull(bundle.getLink(Bundle.LINK_NEXT));
+	}
+	
+	@Test
+	public void searchOrganizationsByCursor_shouldKeepTheSearchParametersInTheNextLink() {
+		Bundle bundle = searchFirstPage();
+		Map<String, String[]> nextParameters = getNextParameters(bundle);
+		
+		assertEquals(SERVER_BASE + "/Organization", getNextLink(bundle).split("\\?")[0]);
+		assertEquals("Kampala", nextParameters.get("name")[0]);
+		assertEquals("2", nextParameters.get("_count")[0]);
+		assertEquals(1, nextParameters.get(FacilityRegistryConstants.SEARCH_PARAM_CURSOR).length);
+		assertEquals(SECOND_PAGE_CURSOR, nextParameters.get(FacilityRegistryConstants.SEARCH_PARAM_CURSOR)[0]);
+	}
+	
+	@Test
+	public void searchOrganizationsByCursor_shouldReturnTheMiddlePageForTheCursorOfTheNextLink() {
+		Bundle bundle = searchNextPage(searchFirstPage());
+		
+		assertEquals(Arrays.asList("org-3", "org-4"), getIds(bundle));
+		assertEquals(THIRD_PAGE_CURSOR, getNextParameters(bundle).get(FacilityRegistryConstants.SEARCH_PARAM_CURSOR)[0]);
+	}
+	
+	@Test
+	public void searchOrganizationsByCursor_shouldReturnTheLastPageWithoutANextLink() {
+		Bundle bundle = searchNextPage(searchNextPage(searchFirstPage()));
+		
+		assertEquals(Arrays.asList("org-5"), getIds(bundle));
+		assertNull(bundle.getLink(Bundle.LINK_NEXT));
+		assertFalse(bundle.getLink(Bundle.LINK_SELF).isEmpty());
+	}
+	
+	private Bundle searchFirstPage() {
+		parameters = new HashMap<>();
+		parameters.put("name", new String[] { "Kampala" });
+		parameters.put("_count", new String[] { "2" });
+		parameters.put(FacilityRegistryConstants.SEARCH_PARAM_CURSOR, new String[] { "" });
+		return search("");
+	}
+	
+	// follows the next link of the given page the way a client would
+	private Bundle searchNextPage(Bundle bundle) {
+		parameters = getNextParameters(bundle);
+		return search(parameters.get(FacilityRegistryConstants.SEARCH_PARAM_CURSOR)[0]);
+	}
+	
+	private Bundle search(String cursor) {
+		return resourceProvider.searchOrganizationsByCursor(new StringParam(cursor), name, null, null, null, null, null,
+		    null, null, null, 2, requestDetails);
+	}
+	
+	private void givenPage(String cursor, OrganizationSearchPage page) {
+		when(fhirOrganizationService.searchForOrganizationsAfter(any(), any(), any(), any(), any(), any(), any(), any(),
+		    any(), eq(cursor), eq(2))).thenReturn(page);
+	}
+	
+	private static String getNextLink(Bundle bundle) {
+		return bundle.getLink(Bundle.LINK_NEXT).getUrl();
+	}
+	
+	private static Map<String, String[]> getNextParameters(Bundle bundle) {
+		String nextLink = getNextLink(bundle);
+		return UrlUtil.parseQueryString(nextLink.substring(nextLink.indexOf('?') + 1));
+	}
+	
+	private static List<String> getIds(Bundle bundle) {
+		return bundle.getEntry().stream().map(entry -> entry.getResource().getIdElement().getIdPart())
+		        .collect(Collectors.toList());
+	}
+	
+	private static List<Organization> organizations(String... ids) {
+		return Arrays.stream(ids).map(id -> {
+			Organization organization = new Organization();
+			organization.setId(id);
+			organization.setName(id);
+			return organization;
+		}).collect(Collectors.toList());
+	}
+}
@@ -9,12 +9,21 @@
  */
 package org.openmrs.module.facilityregistry.task;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Date;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Location;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.Test.None;
 import org.openmrs.api.ValidationException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.facilityregistry.TestFhirSpringConfiguration;
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncRun;
 import org.openmrs.scheduler.SchedulerService;
 import org.openmrs.scheduler.TaskDefinition;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
@@ -47,6 +56,69 @@ public class FacilityRegistryTaskTest extends BaseModuleContextSensitiveTest {
 		schedulerService.shutdownTask(facilitRegistryTask);
 	}
 	
+	@Test
+	public void getNextSyncTime_shouldNotPassAChangeToAResourceOfAnEarlierPage() {
+		FacilityRegistrySyncRun syncRun = new FacilityRegistrySyncRun();
+		Date searchStarted = new Date(10000L);
+		
+		FacilityRegistryTask.recordPage(syncRun,
+		    createPage(searchStarted, "http://localhost/fhir?_getpages=abc", new Date(9000L)));
+		// the Location of the first page changes again while the second page is read
+		Date changedDuringRun = new Date(10_500L);
+		FacilityRegistryTask.recordPage(syncRun, createPage(searchStarted, null, new Date(11000L)));
+		
+		Date nextSyncTime = FacilityRegistryTask.getNextSyncTime(syncRun, new Date(20000L));
+		assertThat(syncRun.getHighWaterMark(), equalTo(new Date(11000L)));
+		assertThat(nextSyncTime, equalTo(searchStarted));
+		assertFalse(nextSyncTime.after(changedDuringRun));
+	}
+	
+	@Test
+	public void getNextSyncTime_shouldKeepTheHighWaterMarkBeforeTheFirstSearch() {
+		FacilityRegistrySyncRun syncRun = new FacilityRegistrySyncRun();
+		
+		FacilityRegistryTask.recordPage(syncRun, createPage(new Date(10000L), null, new Date(9000L)));
+		
+		assertThat(FacilityRegistryTask.getNextSyncTime(syncRun, new Date(20000L)), equalTo(new Date(9000L)));
+	}
+	
+	@Test
+	public void getNextSyncTime_shouldKeepTheSearchStartOfTheRunAResumedRunContinues() {
+		FacilityRegistrySyncRun syncRun = new FacilityRegistrySyncRun();
+		syncRun.setSearchStarted(new Date(5000L));
+		syncRun.setHighWaterMark(new Date(4000L));
+		
+		// the checkpoint page is served again long after the snapshot started
+		FacilityRegistryTask.recordPage(syncRun, createPage(new Date(10000L), null, new Date(9000L)));
+		
+		assertThat(syncRun.getSearchStarted(), equalTo(new Date(5000L)));
+		assertThat(FacilityRegistryTask.getNextSyncTime(syncRun, new Date(20000L)), equalTo(new Date(5000L)));
+	}
+	
+	@Test
+	public void getNextSyncTime_shouldFallBackToTheRunStartIfTheRegistryDidNotSayItsTime() {
+		FacilityRegistrySyncRun syncRun = new FacilityRegistrySyncRun();
+		
+		FacilityRegistryTask.recordPage(syncRun, createPage(null, null, new Date(30000L)));
+		
+		assertThat(FacilityRegistryTask.getNextSyncTime(syncRun, new Date(20000L)), equalTo(new Date(20000L)));
+	}
+	
+	private Bundle createPage(Date served, String nextLink, Date lastUpdated) {
+		Bundle page = new Bundle();
+		if (served != null) {
+			page.getMeta().setLastUpdated(served);
+		}
+		if (nextLink != null) {
+			page.addLink().setRelation(Bundle.LINK_NEXT).setUrl(nextLink);
+		}
+		Location location = new Location();
+		location.setId("Location/" + lastUpdated.getTime());
+		location.getMeta().setLastUpdated(lastUpdated);
+		page.addEntry().setResource(location);
+		return page;
+	}
+	
 	private TaskDefinition getFacilityRegistryTask(String taskClassName) {
 		TaskDefinition taskDef = new TaskDefinition();
 		taskDef.setTaskClass(taskClassName);
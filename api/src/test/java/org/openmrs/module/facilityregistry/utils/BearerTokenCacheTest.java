@@ -0,0 +1,65 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+public class BearerTokenCacheTest {
+	
+	private static final String AUTH_URL = "http://localhost:5000/auth/token";
+	
+	private static final String AUTH_USER_NAME = "root@gofr.org";
+	
+	private static final String AUTH_PASSWORD = "gofr";
+	
+	@Rule
+	public WireMockRule wireMockRule = new WireMockRule(5000);
+	
+	@Test
+	public void getTokenShouldReuseTokenUntilItIsAboutToExpire() throws Exception {
+		stubToken("{\"access_token\" :\"test-token\", \"expires_in\" : 3600}");
+		BearerTokenCache cache = new BearerTokenCache();
+		
+		assertEquals("test-token", cache.getToken(AUTH_URL, AUTH_USER_NAME, AUTH_PASSWORD));
+		assertEquals("test-token", cache.getToken(AUTH_URL, AUTH_USER_NAME, AUTH_PASSWORD));
+		verify(1, postRequestedFor(urlEqualTo("/auth/token")));
+	}
+	
+	@Test
+	public void getTokenShouldRefreshTokenThatExpiresWithinTheRefreshMargin() throws Exception {
+		stubToken("{\"access_token\" :\"test-token\", \"expires_in\" : 10}");
+		BearerTokenCache cache = new BearerTokenCache();
+		
+		cache.getToken(AUTH_URL, AUTH_USER_NAME, AUTH_PASSWORD);
+		cache.getToken(AUTH_URL, AUTH_USER_NAME, AUTH_PASSWORD);
+		verify(2, postRequestedFor(urlEqualTo("/auth/token")));
+	}
+	
+	@Test
+	public void getTokenShouldRequestNewTokenAfterInvalidate() throws Exception {
+		stubToken("{\"access_token\" :\"test-token\"}");
+		BearerTokenCache cache = new BearerTokenCache();
+		
+		cache.getToken(AUTH_URL, AUTH_USER_NAME, AUTH_PASSWORD);
+		cache.invalidate(AUTH_URL, AUTH_USER_NAME, AUTH_PASSWORD);
+		cache.getToken(AUTH_URL, AUTH_USER_NAME, AUTH_PASSWORD);
+		verify(2, postRequestedFor(urlEqualTo("/auth/token")));
+	}
+	
+	private void stubToken(String body) {
+		wireMockRule.stubFor(post(urlPathMatching("/auth/token"))
+		        .willReturn(aResponse().withStatus(200).withHeader("Content-Type", "application/json").withBody(body)));
+	}
+}
@@ -0,0 +1,60 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class BoundedCacheTest {
+	
+	private final AtomicLong now = new AtomicLong();
+	
+	@Test
+	public void putShouldDropTheLeastRecentlyUsedEntryWhenFull() {
+		BoundedCache<String, Integer> cache = new BoundedCache<>(2, 1000, now::get);
+		cache.put("a", 1);
+		cache.put("b", 2);
+		cache.get("a");
+		cache.put("c", 3);
+		
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		assertNull(cache.get("b"));
+		assertEquals(Integer.valueOf(3), cache.get("c"));
+	}
+	
+	@Test
+	public void getShouldNotReturnExpiredEntries() {
+		BoundedCache<String, Integer> cache = new BoundedCache<>(2, 1000, now::get);
+		cache.put("a", 1);
+		
+		now.set(999);
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		now.set(1000);
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void setLimitsShouldDropEntriesThatNoLongerFit() {
+		BoundedCache<String, Integer> cache = new BoundedCache<>(3, 1000, now::get);
+		cache.put("a", 1);
+		cache.put("b", 2);
+		cache.put("c", 3);
+		
+		cache.setLimits(1, 1000);
+		
+		assertEquals(1, cache.size());
+		assertEquals(Integer.valueOf(3), cache.get("c"));
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.facilityregistry.api.FacilityRegistrySaveResult;
+import org.openmrs.module.facilityregistry.api.impl.OrganizationResourceCache;
+import org.openmrs.module.facilityregistry.model.FacilityRegistrySyncRun;
+
+public class FacilityRegistrySyncMetricsTest {
+	
+	private FacilityRegistrySyncMetrics metrics;
+	
+	@Before
+	public void setup() {
+		metrics = new FacilityRegistrySyncMetrics();
+		metrics.setOrganizationResourceCache(new OrganizationResourceCache());
+	}
+	
+	@Test
+	public void finishRun_shouldAddTheRunToTheTotalsAndHistograms() {
+		FacilityRegistrySyncRecorder recorder = metrics.startRun();
+		recorder.record(FacilityRegistrySyncPhase.FETCH, TimeUnit.MILLISECONDS.toNanos(15));
+		recorder.record(FacilityRegistrySyncPhase.PERSIST, TimeUnit.MILLISECONDS.toNanos(120));
+		recorder.recordPage();
+		FacilityRegistrySyncContext syncContext = new FacilityRegistrySyncContext();
+		FacilityRegistrySaveResult result = new FacilityRegistrySaveResult();
+		result.recordCreated();
+		result.recordSkipped();
+		syncContext.recordSaveResult(result);
+		
+		FacilityRegistrySyncRunSummary summary = metrics.finishRun(recorder,
+		    FacilityRegistrySyncRun.Status.COMPLETED, syncContext);
+		
+		assertEquals(1, summary.getPages());
+		assertEquals(15, summary.getFetchMillis());
+		assertEquals(120, summary.getPersistMillis());
+		assertEquals(1, metrics.getRuns());
+		assertEquals(0, metrics.getFailedRuns());
+		assertEquals(1, metrics.getCreatedResources());
+		assertEquals(1, metrics.getSkippedResources());
+		// 15 ms falls into the bucket up to 20 ms, 120 ms into the one up to 200 ms
+		assertEquals(1, metrics.getFetchHistogram()[4]);
+		assertEquals(1, metrics.getPersistHistogram()[7]);
+	}
+	
+	@Test
+	public void finishRun_shouldKeepOnlyTheMostRecentRunsNewestFirst() {
+		for (int i = 0; i <= FacilityRegistrySyncMetrics.RECENT_RUNS; i++) {
+			FacilityRegistrySyncRecorder recorder = metrics.startRun();
+			for (int page = 0; page < i; page++) {
+				recorder.recordPage();
+			}
+			metrics.finishRun(recorder, FacilityRegistrySyncRun.Status.FAILED, new FacilityRegistrySyncContext());
+		}
+		
+		List<FacilityRegistrySyncRunSummary> recentRuns = metrics.getRecentRuns();
+		assertEquals(FacilityRegistrySyncMetrics.RECENT_RUNS, recentRuns.size());
+		assertEquals(FacilityRegistrySyncMetrics.RECENT_RUNS, recentRuns.get(0).getPages());
+		assertEquals(1, recentRuns.get(recentRuns.size() - 1).getPages());
+		assertEquals(FacilityRegistrySyncMetrics.RECENT_RUNS + 1, metrics.getFailedRuns());
+	}
+}
@@ -1,12 +1,23 @@
 package org.openmrs.module.facilityregistry.utils;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.ICriterion;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.gclient.IUntypedQuery;
 import junit.framework.TestCase;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -15,14 +26,20 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DomainResource;
 import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Reference;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.openmrs.module.facilityregistry.api.FacilityRegistrySaveResult;
+import org.openmrs.module.facilityregistry.api.FacilityRegistrySyncService;
 import org.openmrs.module.facilityregistry.api.FhirOrganizationService;
-import org.openmrs.module.fhir2.api.FhirLocationService;
 
 @RunWith(MockitoJUnitRunner.class)
 public class FacilityRegistryUtilsTest extends TestCase {
@@ -30,7 +47,7 @@ public class FacilityRegistryUtilsTest extends TestCase {
 	private static final String EXAMPLE_SEARCH_BUNDLE_URL = "https://i-tech-uw.github.io/facility-ig/Bundle-example-fr-search-bundle.json";
 	
 	@Mock
-	private FhirLocationService locationService;
+	private FacilityRegistrySyncService syncService;
 	
 	@Mock
 	private FhirOrganizationService organizationService;
@@ -38,6 +55,15 @@ public class FacilityRegistryUtilsTest extends TestCase {
 	@Mock
 	private IGenericClient fhirClient;
 	
+	@Mock
+	private IUntypedQuery untypedQuery;
+	
+	@Mock
+	private IQuery query;
+	
+	@Captor
+	private ArgumentCaptor<List<DomainResource>> savedResources;
+	
 	private FacilityRegistryUtils frUtils;
 	
 	private Bundle searchBundle;
@@ -47,20 +73,163 @@ public class FacilityRegistryUtilsTest extends TestCase {
 	@Before
 	public void setup() throws IOException {
 		frUtils = new FacilityRegistryUtils();
-		frUtils.setLocationService(locationService);
+		frUtils.setSyncService(syncService);
+		when(syncService.saveAll(anyListOf(DomainResource.class))).thenReturn(new FacilityRegistrySaveResult());
 		frUtils.setOrganizationService(organizationService);
-		
+	}
+	
+	@Test
+	public void testSaveFhirLocation() throws IOException {
 		searchBundle = getExampleBundle();
 		exampleLocation = (Location) searchBundle.getEntryFirstRep().getResource();
+		
+		frUtils.saveFhirLocation(searchBundle, fhirClient);
+		verify(syncService).saveAll(savedResources.capture());
+		assertTrue(savedResources.getValue().contains(exampleLocation));
 	}
 	
 	@Test
-	public void testSaveFhirLocation() {
-		when(locationService.get(any(String.class))).thenReturn(null);
-		when(locationService.create(any(Location.class))).thenReturn(exampleLocation);
+	public void saveFhirLocationShouldFetchAndSaveSharedParentOnlyOncePerRun() {
+		Organization parent = new Organization();
+		parent.setId("district");
+		parent.setName("District");
+		Bundle parentSearchResult = new Bundle();
+		parentSearchResult.addEntry().setResource(parent);
+		Bundle firstPage = new Bundle();
+		firstPage.addEntry().setResource(newChildOrganization("facility-1", "Organization/district"));
+		firstPage.addEntry().setResource(newChildOrganization("facility-2", "Organization/district"));
+		Bundle secondPage = new Bundle();
+		secondPage.addEntry().setResource(newChildOrganization("facility-3", "Organization/district"));
 		
-		frUtils.saveFhirLocation(searchBundle, fhirClient);
-		verify(locationService).create(exampleLocation);
+		givenParentSearchResult(parentSearchResult);
+		
+		FacilityRegistrySyncContext syncContext = new FacilityRegistrySyncContext();
+		frUtils.saveFhirLocation(firstPage, fhirClient, syncContext);
+		frUtils.saveFhirLocation(secondPage, fhirClient, syncContext);
+		
+		verify(query, times(1)).execute();
+		verify(fhirClient, never()).read();
+		verify(syncService, times(2)).saveAll(savedResources.capture());
+		assertEquals(1, Collections.frequency(savedResources.getAllValues().get(0), parent));
+		assertFalse(savedResources.getAllValues().get(1).contains(parent));
+		assertEquals(1, syncContext.getParentBatchReads());
+		assertEquals(0, syncContext.getParentRemoteReads());
+		assertEquals(3, syncContext.getParentCacheHits());
+	}
+	
+	@Test
+	public void saveFhirLocationShouldOnlyKeepParentOrganizationsAcrossPages() {
+		Organization district = new Organization();
+		district.setId("district");
+		Bundle firstPage = new Bundle();
+		firstPage.addEntry().setResource(newChildOrganization("facility-1", "Organization/district"));
+		firstPage.addEntry().setResource(district);
+		Bundle secondPage = new Bundle();
+		secondPage.addEntry().setResource(newChildOrganization("facility-2", "Organization/district"));
+		
+		FacilityRegistrySyncContext syncContext = new FacilityRegistrySyncContext();
+		frUtils.saveFhirLocation(firstPage, fhirClient, syncContext);
+		frUtils.saveFhirLocation(secondPage, fhirClient, syncContext);
+		syncContext.startPage();
+		
+		assertEquals(district, syncContext.getResolvedOrganization("district"));
+		assertNull(syncContext.getResolvedOrganization("facility-1"));
+		assertNull(syncContext.getResolvedOrganization("facility-2"));
+		assertTrue(syncContext.isOrganizationSaved("facility-1"));
+		verify(fhirClient, never()).search();
+		verify(fhirClient, never()).read();
+	}
+	
+	@Test
+	public void saveFhirLocationShouldSaveParentsBeforeChildren() {
+		Organization region = new Organization();
+		region.setId("region");
+		Organization district = newChildOrganization("district", "Organization/region");
+		Organization facility = newChildOrganization("facility", "Organization/district");
+		Bundle page = new Bundle();
+		page.addEntry().setResource(facility);
+		page.addEntry().setResource(district);
+		page.addEntry().setResource(region);
+		
+		frUtils.saveFhirLocation(page, fhirClient, new FacilityRegistrySyncContext());
+		
+		verify(syncService).saveAll(savedResources.capture());
+		assertEquals(Arrays.asList(region, district, facility), savedResources.getValue());
+		verify(fhirClient, never()).search();
+	}
+	
+	@Test
+	public void saveFhirLocationShouldReadStoredParentAgainOnFullSync() {
+		Organization renamedParent = new Organization();
+		renamedParent.setId("district");
+		renamedParent.setName("Renamed District");
+		Bundle parentSearchResult = new Bundle();
+		parentSearchResult.addEntry().setResource(renamedParent);
+		Bundle page = new Bundle();
+		page.addEntry().setResource(newChildOrganization("facility-1", "Organization/district"));
+		givenParentSearchResult(parentSearchResult);
+		when(organizationService.getExistingUuids(anyCollectionOf(String.class)))
+		        .thenReturn(Collections.singletonList("district"));
+		
+		frUtils.saveFhirLocation(page, fhirClient, new FacilityRegistrySyncContext());
+		
+		verify(organizationService, never()).getExistingUuids(anyCollectionOf(String.class));
+		verify(query, times(1)).execute();
+		verify(syncService).saveAll(savedResources.capture());
+		assertTrue(savedResources.getValue().contains(renamedParent));
+	}
+	
+	@Test
+	public void saveFhirLocationShouldNotReadStoredParentAgainOnIncrementalSync() {
+		Bundle page = new Bundle();
+		page.addEntry().setResource(newChildOrganization("facility-1", "Organization/district"));
+		when(organizationService.getExistingUuids(anyCollectionOf(String.class)))
+		        .thenReturn(Collections.singletonList("district"));
+		FacilityRegistrySyncContext syncContext = new FacilityRegistrySyncContext();
+		syncContext.setIncremental(true);
+		
+		frUtils.saveFhirLocation(page, fhirClient, syncContext);
+		
+		verify(fhirClient, never()).search();
+		verify(fhirClient, never()).read();
+		assertEquals(1, syncContext.getParentCacheHits());
+	}
+	
+	@Test
+	public void saveFhirLocationShouldRefreshStoredLocationOfChangedOrganization() {
+		Organization district = new Organization();
+		district.setId("district");
+		district.setName("Renamed District");
+		Bundle page = new Bundle();
+		page.addEntry().setResource(district);
+		when(syncService.getExistingLocationUuids(anyCollectionOf(String.class)))
+		        .thenReturn(Collections.singletonList("district"));
+		
+		frUtils.saveFhirLocation(page, fhirClient, new FacilityRegistrySyncContext());
+		
+		verify(syncService).saveAll(savedResources.capture());
+		List<DomainResource> saved = savedResources.getValue();
+		assertEquals(2, saved.size());
+		assertEquals(district, saved.get(0));
+		assertEquals("Renamed District", ((Location) saved.get(1)).getName());
+		assertEquals("district", saved.get(1).getIdElement().getIdPart());
+	}
+	
+	private void givenParentSearchResult(Bundle parentSearchResult) {
+		when(fhirClient.search()).thenReturn(untypedQuery);
+		when(untypedQuery.forResource(Organization.class)).thenReturn(query);
+		when(query.where(any(ICriterion.class))).thenReturn(query);
+		when(query.count(anyInt())).thenReturn(query);
+		when(query.returnBundle(Bundle.class)).thenReturn(query);
+		when(query.execute()).thenReturn(parentSearchResult);
+	}
+	
+	private Organization newChildOrganization(String id, String parentReference) {
+		Organization organization = new Organization();
+		organization.setId(id);
+		organization.setName(id);
+		organization.setPartOf(new Reference(parentReference));
+		return organization;
 	}
 	
 	private Bundle getExampleBundle() throws IOException {
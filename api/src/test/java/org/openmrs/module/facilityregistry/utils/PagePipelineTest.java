@@ -0,0 +1,85 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PagePipelineTest {
+	
+	@Test
+	public void runShouldProcessAllPagesInOrder() {
+		PagePipeline<Integer> pipeline = new PagePipeline<>(() -> 1, page -> page < 5 ? page + 1 : null, 2);
+		List<Integer> processed = new ArrayList<>();
+		
+		assertTrue(pipeline.run(processed::add));
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5), processed);
+	}
+	
+	@Test
+	public void runShouldRethrowFetchFailureAfterProcessingEarlierPages() {
+		PagePipeline<Integer> pipeline = new PagePipeline<>(() -> 1, page -> {
+			if (page == 2) {
+				throw new IllegalStateException("registry unavailable");
+			}
+			return page + 1;
+		}, 2);
+		List<Integer> processed = new ArrayList<>();
+		
+		try {
+			pipeline.run(processed::add);
+			throw new AssertionError("expected the fetch failure to be rethrown");
+		}
+		catch (IllegalStateException e) {
+			assertEquals("registry unavailable", e.getMessage());
+		}
+		assertEquals(Arrays.asList(1, 2), processed);
+	}
+	
+	@Test
+	public void runShouldRethrowErrorOfTheFetchThread() {
+		PagePipeline<Integer> pipeline = new PagePipeline<>(() -> 1, page -> {
+			throw new OutOfMemoryError("page too large");
+		}, 2);
+		List<Integer> processed = new ArrayList<>();
+		
+		try {
+			pipeline.run(processed::add);
+			throw new AssertionError("expected the error to be rethrown");
+		}
+		catch (OutOfMemoryError e) {
+			assertEquals("page too large", e.getMessage());
+		}
+		assertEquals(Arrays.asList(1), processed);
+	}
+	
+	@Test
+	public void runShouldReturnFalseWhenStopped() {
+		// an endless registry, only stopping the pipeline ends the run
+		PagePipeline<Integer> pipeline = new PagePipeline<>(() -> 1, page -> page + 1, 2);
+		List<Integer> processed = new ArrayList<>();
+		
+		assertFalse(pipeline.run(page -> {
+			processed.add(page);
+			if (page == 3) {
+				pipeline.stop();
+			}
+		}));
+		assertEquals(Arrays.asList(1, 2, 3), processed);
+		assertTrue(pipeline.isStopped());
+	}
+}
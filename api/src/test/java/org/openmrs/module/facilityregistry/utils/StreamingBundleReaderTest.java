@@ -0,0 +1,99 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.Organization;
+import org.junit.Test;
+
+public class StreamingBundleReaderTest {
+	
+	@Test
+	public void nextResourceShouldReadEntriesInOrderAndTheNextLink() throws IOException {
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.SEARCHSET);
+		bundle.addLink().setRelation(Bundle.LINK_NEXT).setUrl("http://localhost:4000/fhir/DEFAULT?_getpages=abc");
+		Location location = new Location();
+		location.setId("location-1");
+		location.setName("Health Center");
+		bundle.addEntry().setResource(location);
+		Organization organization = new Organization();
+		organization.setId("district");
+		organization.setName("District");
+		bundle.addEntry().setResource(organization);
+		
+		try (StreamingBundleReader reader = new StreamingBundleReader(toStream(bundle))) {
+			IBaseResource first = reader.nextResource();
+			assertTrue(first instanceof Location);
+			assertEquals("Health Center", ((Location) first).getName());
+			IBaseResource second = reader.nextResource();
+			assertTrue(second instanceof Organization);
+			assertEquals("district", second.getIdElement().getIdPart());
+			assertNull(reader.nextResource());
+			assertEquals("http://localhost:4000/fhir/DEFAULT?_getpages=abc", reader.getNextLink());
+		}
+	}
+	
+	@Test
+	public void nextResourceShouldSkipTheOtherFieldsOfAnEntryAndEntriesWithoutResource() throws IOException {
+		String json = "{\"resourceType\":\"Bundle\",\"entry\":["
+		        + "{\"fullUrl\":\"Location/location-1\",\"resource\":{\"resourceType\":\"Location\","
+		        + "\"id\":\"location-1\",\"name\":\"Health Center\",\"alias\":[\"HC\"]},"
+		        + "\"search\":{\"mode\":\"match\"}},"
+		        + "{\"fullUrl\":\"Organization/removed\",\"request\":{\"method\":\"DELETE\"}},"
+		        + "{\"search\":{\"mode\":\"include\"},\"resource\":{\"resourceType\":\"Organization\","
+		        + "\"id\":\"district\"}}]}";
+		
+		try (StreamingBundleReader reader = new StreamingBundleReader(
+		        new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))) {
+			Location location = (Location) reader.nextResource();
+			assertEquals("Health Center", location.getName());
+			assertEquals("HC", location.getAlias().get(0).getValue());
+			assertEquals("district", reader.nextResource().getIdElement().getIdPart());
+			assertNull(reader.nextResource());
+		}
+	}
+	
+	@Test
+	public void getNextLinkShouldBeNullOnTheLastPage() throws IOException {
+		Bundle bundle = new Bundle();
+		bundle.addLink().setRelation(Bundle.LINK_SELF).setUrl("http://localhost:4000/fhir/DEFAULT/Location");
+		
+		try (StreamingBundleReader reader = new StreamingBundleReader(toStream(bundle))) {
+			assertNull(reader.nextResource());
+			assertNull(reader.getNextLink());
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void nextResourceShouldRejectOtherResourceTypes() throws IOException {
+		Location location = new Location();
+		location.setName("Health Center");
+		
+		try (StreamingBundleReader reader = new StreamingBundleReader(toStream(location))) {
+			reader.nextResource();
+		}
+	}
+	
+	private InputStream toStream(IBaseResource resource) {
+		return new ByteArrayInputStream(FhirUtils.encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Location;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.module.facilityregistry.utils.FhirUtils;
+
+/**
+ * Compares parsing a sync page with a freshly built FhirContext, which is what FhirUtils used to do
+ * on every call, against the shared context and pooled parsers. Run with {@code -prof gc} to compare
+ * allocation per page as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FhirUtilsBenchmark {
+	
+	@Param({ "50", "500" })
+	private int pageSize;
+	
+	private String page;
+	
+	@Setup
+	public void setup() {
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.SEARCHSET);
+		for (int i = 0; i < pageSize; i++) {
+			Location location = new Location();
+			location.setId("location-" + i);
+			location.setName("Health Facility " + i);
+			location.setStatus(Location.LocationStatus.ACTIVE);
+			location.getAddress().setCity("City " + (i % 20)).setCountry("UG");
+			bundle.addEntry().setResource(location);
+		}
+		page = FhirUtils.encodeResourceToString(bundle);
+	}
+	
+	@Benchmark
+	public Bundle parsePageWithNewContext() {
+		return FhirContext.forR4().newJsonParser().parseResource(Bundle.class, page);
+	}
+	
+	@Benchmark
+	public Bundle parsePageWithSharedContext() {
+		return FhirUtils.parseResource(Bundle.class, page);
+	}
+	
+	@Benchmark
+	public FhirContext createContext() {
+		return FhirContext.forR4();
+	}
+	
+	@Benchmark
+	public FhirContext getSharedContext() {
+		return FhirUtils.getFhirContext();
+	}
+}
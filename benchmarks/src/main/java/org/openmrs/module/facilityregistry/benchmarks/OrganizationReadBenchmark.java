@@ -0,0 +1,96 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.benchmarks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.convertors.conv30_40.Organization30_40;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.ContactPoint;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Reference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
+import org.openmrs.module.facilityregistry.api.impl.OrganizationResourceCache;
+import org.openmrs.module.facilityregistry.model.FhirOrganization;
+
+/**
+ * Compares what a read of a cached Organization costs on the R4 endpoint, on the R3 endpoint when the
+ * R4 resource is converted on every request, and on the R3 endpoint when the conversion is kept in the
+ * OrganizationResourceCache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrganizationReadBenchmark {
+	
+	private OrganizationResourceCache cache;
+	
+	private FhirOrganization organization;
+	
+	private long version;
+	
+	@Setup
+	public void setup() {
+		organization = new FhirOrganization();
+		organization.setUuid("cf9b1f44-0e8f-42f1-900b-bf1c5d4ed5CC");
+		organization.setDateCreated(new Date());
+		version = organization.getDateCreated().getTime();
+		
+		Organization resource = new Organization();
+		resource.setId(organization.getUuid());
+		resource.getMeta().setLastUpdated(organization.getDateCreated());
+		resource.setName("OpenMRS org");
+		resource.setActive(true);
+		resource.addIdentifier().setSystem("http://openmrs.org/facility").setValue("FAC-001");
+		resource.addType().addCoding().setSystem("urn:ietf:rfc:3986").setCode("urn:ihe:iti:mcsd:2019:facility");
+		resource.addAddress().setCity("Kampala").setDistrict("Central").setCountry("UG");
+		resource.addTelecom().setSystem(ContactPoint.ContactPointSystem.PHONE).setValue("+256 000 000000");
+		resource.setPartOf(new Reference("Organization/district-1"));
+		Extension hierarchy = resource.addExtension().setUrl(FacilityRegistryConstants.MCSD_EXTENTION_URL);
+		hierarchy.addExtension(FacilityRegistryConstants.MCSD_EXTENTION_URL_PART_OF,
+		    new Reference("Organization/region-1"));
+		hierarchy.addExtension(FacilityRegistryConstants.MCSD_EXTENTION_URL_HIERACHY_TYPE,
+		    new Coding().setCode("administrative"));
+		
+		cache = new OrganizationResourceCache();
+		cache.put(organization, resource);
+		cache.putDstu3(organization.getUuid(), version, Organization30_40.convertOrganization(resource));
+	}
+	
+	@Benchmark
+	public Organization readR4() {
+		return cache.get(organization);
+	}
+	
+	@Benchmark
+	public org.hl7.fhir.dstu3.model.Organization readR3ConvertingPerRequest() {
+		return Organization30_40.convertOrganization(cache.get(organization));
+	}
+	
+	@Benchmark
+	public org.hl7.fhir.dstu3.model.Organization readR3FromCache() {
+		return cache.getDstu3(organization.getUuid(), version);
+	}
+}
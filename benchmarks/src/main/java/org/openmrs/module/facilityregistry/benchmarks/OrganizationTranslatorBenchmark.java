@@ -0,0 +1,109 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.benchmarks;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Organization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.Concept;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.module.facilityregistry.FacilityRegistryClientConfig;
+import org.openmrs.module.facilityregistry.api.dao.FhirOrganizationDao;
+import org.openmrs.module.facilityregistry.api.translators.impl.OrganizationTranslatorImpl;
+import org.openmrs.module.facilityregistry.model.FhirOganizationAddress;
+import org.openmrs.module.facilityregistry.model.FhirOrganization;
+import org.openmrs.module.fhir2.api.translators.ConceptTranslator;
+
+/**
+ * Measures OrganizationTranslatorImpl in both directions for an mCSD facility with a type, an address,
+ * a part-of parent and the hierarchy extension. Concepts and parents come from stubs, so only the
+ * translation itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrganizationTranslatorBenchmark {
+	
+	private OrganizationTranslatorImpl translator;
+	
+	private FhirOrganization openmrsOrganization;
+	
+	private Organization fhirOrganization;
+	
+	@Setup
+	public void setup() {
+		Concept concept = new Concept(1);
+		CodeableConcept codeableConcept = new CodeableConcept();
+		codeableConcept.addCoding().setSystem("urn:ietf:rfc:3986").setCode("urn:ihe:iti:mcsd:2019:facility");
+		Map<String, Function<Object[], Object>> conceptAnswers = new HashMap<>();
+		conceptAnswers.put("toFhirResource", args -> codeableConcept.copy());
+		conceptAnswers.put("toOpenmrsType", args -> concept);
+		
+		FhirOrganization parent = new FhirOrganization();
+		parent.setUuid("district-1");
+		parent.setName("District 1");
+		
+		translator = new OrganizationTranslatorImpl();
+		Stubs.inject(translator, "conceptTranslator", Stubs.of(ConceptTranslator.class, conceptAnswers));
+		Stubs.inject(translator, "fhirOrganizationDao",
+		    Stubs.of(FhirOrganizationDao.class, Collections.singletonMap("get", args -> parent)));
+		FacilityRegistryClientConfig config = new FacilityRegistryClientConfig();
+		// every global property takes its default value
+		Stubs.inject(config, "administrationService", Stubs.of(AdministrationService.class,
+		    Collections.singletonMap("getGlobalProperty", args -> args.length > 1 ? args[1] : null)));
+		Stubs.inject(translator, "config", config);
+		
+		openmrsOrganization = new FhirOrganization();
+		openmrsOrganization.setUuid("cf9b1f44-0e8f-42f1-900b-bf1c5d4ed5CC");
+		openmrsOrganization.setName("OpenMRS org");
+		openmrsOrganization.setActive(true);
+		openmrsOrganization.setDateCreated(new Date());
+		openmrsOrganization.addType(concept);
+		FhirOganizationAddress address = new FhirOganizationAddress();
+		address.setCity("Kampala");
+		address.setDistrict("Central");
+		address.setCountry("UG");
+		openmrsOrganization.addAddress(address);
+		openmrsOrganization.setPartOfOrg(parent);
+		openmrsOrganization.setMcsdPartOfOrg(parent);
+		openmrsOrganization.setMcsdHierarchyType(concept);
+		
+		fhirOrganization = translator.toFhirResource(openmrsOrganization);
+	}
+	
+	@Benchmark
+	public Organization toFhirResource() {
+		return translator.toFhirResource(openmrsOrganization);
+	}
+	
+	@Benchmark
+	public FhirOrganization toOpenmrsType() {
+		return translator.toOpenmrsType(fhirOrganization);
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.benchmarks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Reference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
+import org.openmrs.module.facilityregistry.api.FacilityRegistrySaveResult;
+import org.openmrs.module.facilityregistry.api.FacilityRegistrySyncService;
+import org.openmrs.module.facilityregistry.api.FhirOrganizationService;
+import org.openmrs.module.facilityregistry.utils.FacilityRegistrySyncContext;
+import org.openmrs.module.facilityregistry.utils.FacilityRegistryUtils;
+
+/**
+ * Measures FacilityRegistryUtils.saveFhirLocation over a synthetic registry Bundle: one region, a
+ * district per 100 facilities, and a facility Organization and Location per remaining entry. Every
+ * parent is part of the Bundle, so no registry reads are made, and saveAll is a stub, so the numbers
+ * cover tagging, parent resolution and ordering but not the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SaveFhirLocationBenchmark {
+	
+	private static final int FACILITIES_PER_DISTRICT = 100;
+	
+	@Param({ "1000", "10000", "100000" })
+	private int entries;
+	
+	private FacilityRegistryUtils utils;
+	
+	private Bundle prototype;
+	
+	private Bundle bundle;
+	
+	@Setup(Level.Trial)
+	public void setupTrial() {
+		Map<String, Function<Object[], Object>> syncAnswers = new HashMap<>();
+		syncAnswers.put("saveAll", args -> {
+			FacilityRegistrySaveResult result = new FacilityRegistrySaveResult();
+			for (int i = 0; i < ((List<?>) args[0]).size(); i++) {
+				result.recordCreated();
+			}
+			return result;
+		});
+		syncAnswers.put("getExistingLocationUuids", args -> Collections.emptyList());
+		
+		utils = new FacilityRegistryUtils();
+		Stubs.inject(utils, "organizationService", Stubs.of(FhirOrganizationService.class,
+		    Collections.singletonMap("getExistingUuids", args -> Collections.emptyList())));
+		Stubs.inject(utils, "syncService", Stubs.of(FacilityRegistrySyncService.class, syncAnswers));
+		
+		prototype = new Bundle();
+		prototype.setType(Bundle.BundleType.SEARCHSET);
+		prototype.addEntry().setResource(organization("region-1", "Region 1", null));
+		int added = 1;
+		for (int district = 0; added < entries; district++) {
+			String districtId = "district-" + district;
+			prototype.addEntry().setResource(organization(districtId, "District " + district, "region-1"));
+			added++;
+			for (int facility = 0; facility < FACILITIES_PER_DISTRICT && added < entries; facility += 2) {
+				String facilityId = districtId + "-facility-" + facility;
+				prototype.addEntry().setResource(organization(facilityId, "Facility " + facility, districtId));
+				prototype.addEntry().setResource(location(facilityId, "Facility " + facility, facility % 10 == 0));
+				added += 2;
+			}
+		}
+	}
+	
+	/**
+	 * saveFhirLocation tags the resources of the page it is given, so every invocation gets a fresh copy
+	 */
+	@Setup(Level.Invocation)
+	public void setupInvocation() {
+		bundle = prototype.copy();
+	}
+	
+	@Benchmark
+	public FacilityRegistrySyncContext saveFhirLocation() {
+		FacilityRegistrySyncContext syncContext = new FacilityRegistrySyncContext();
+		utils.saveFhirLocation(bundle, null, syncContext);
+		return syncContext;
+	}
+	
+	private static Organization organization(String id, String name, String parentId) {
+		Organization organization = new Organization();
+		organization.setId(id);
+		organization.setName(name);
+		organization.setActive(true);
+		organization.addAddress().setCity(name).setCountry("UG");
+		if (parentId != null) {
+			Reference parent = new Reference("Organization/" + parentId);
+			organization.setPartOf(parent);
+			Extension hierarchy = organization.addExtension().setUrl(FacilityRegistryConstants.MCSD_EXTENTION_URL);
+			hierarchy.addExtension(FacilityRegistryConstants.MCSD_EXTENTION_URL_PART_OF, parent.copy());
+		}
+		return organization;
+	}
+	
+	private static Location location(String organizationId, String name, boolean laboratory) {
+		Location location = new Location();
+		location.setId("location-" + organizationId);
+		location.setName(name);
+		location.setStatus(Location.LocationStatus.ACTIVE);
+		location.setManagingOrganization(new Reference("Organization/" + organizationId));
+		location.addType(new CodeableConcept().setText(laboratory ? "Laboratory" : "Health Facility"));
+		return location;
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.benchmarks;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Wires the Spring beans under benchmark by hand. Collaborators are interface proxies answering only
+ * the methods a benchmark needs, so that the numbers measure the module's code and not a mock library
+ * or a database.
+ */
+final class Stubs {
+	
+	private Stubs() {
+	}
+	
+	/**
+	 * @param type the interface to stub
+	 * @param answers the answer of each stubbed method by name, computed from the call arguments
+	 * @return a stub returning null, false or zero from every other method
+	 */
+	static <T> T of(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+		Object stub = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+			Function<Object[], Object> answer = answers.get(method.getName());
+			if (answer != null) {
+				return answer.apply(args);
+			}
+			if (method.getReturnType() == boolean.class) {
+				return false;
+			}
+			if (method.getReturnType().isPrimitive() && method.getReturnType() != void.class) {
+				return method.getReturnType() == long.class ? 0L : 0;
+			}
+			return null;
+		});
+		return type.cast(stub);
+	}
+	
+	static <T> T of(Class<T> type) {
+		return of(type, Collections.emptyMap());
+	}
+	
+	/**
+	 * Sets an @Autowired field, the setters of the module's beans are package private
+	 */
+	static void inject(Object target, String fieldName, Object value) {
+		for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+			try {
+				Field field = type.getDeclaredField(fieldName);
+				field.setAccessible(true);
+				field.set(target, value);
+				return;
+			}
+			catch (NoSuchFieldException e) {
+				// declared on a superclass
+			}
+			catch (IllegalAccessException e) {
+				throw new IllegalStateException("Could not set " + fieldName, e);
+			}
+		}
+		throw new IllegalArgumentException(target.getClass().getName() + " has no field " + fieldName);
+	}
+}
@@ -0,0 +1,336 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.benchmarks.simulator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.CapabilityStatement;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Organization;
+import org.openmrs.module.facilityregistry.utils.FhirUtils;
+
+/**
+ * A stand-in for a GOFR Facility Registry, to load-test the sync without a real server. It answers
+ * the requests FacilityRegistryTask makes: the capability statement, paged
+ * Location?_include=Location:organization and Organization searches, optionally with _lastUpdated=gt,
+ * token requests on /auth/token, Organization reads by id and Organization?_id searches. The default
+ * port and paths match the default global properties of the module, so a local OpenMRS syncs against
+ * it without any configuration.
+ * <p>
+ * Run with {@code java -cp benchmarks/target/benchmarks.jar
+ * org.openmrs.module.facilityregistry.benchmarks.simulator.RegistrySimulator --depth=5 --fanOut=10}.
+ * Options, with their defaults: --port=4000, --depth=4, --fanOut=10, --pageSize=50, --latencyMs=0,
+ * --jitterMs=0, --changeRate=0 (share of the facilities changed every interval),
+ * --changeIntervalSeconds=60, --tokenTtlSeconds=300.
+ */
+public class RegistrySimulator {
+	
+	static final String FHIR_PATH = "/fhir/DEFAULT";
+	
+	static final String AUTH_PATH = "/auth/token";
+	
+	private static final String FHIR_JSON = "application/fhir+json;charset=utf-8";
+	
+	private final SimulatedRegistry registry;
+	
+	private final Map<String, String> options;
+	
+	private final Map<String, Long> tokens = new ConcurrentHashMap<>();
+	
+	private final Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+	
+	private HttpServer server;
+	
+	private ScheduledExecutorService changes;
+	
+	public RegistrySimulator(Map<String, String> options) {
+		this.options = options;
+		this.registry = new SimulatedRegistry(getInt("depth", 4), getInt("fanOut", 10));
+	}
+	
+	public static void main(String[] args) throws IOException {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			if (!arg.startsWith("--") || !arg.contains("=")) {
+				throw new IllegalArgumentException("Options are given as --name=value, not " + arg);
+			}
+			options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+		}
+		RegistrySimulator simulator = new RegistrySimulator(options);
+		Runtime.getRuntime().addShutdownHook(new Thread(simulator::stop));
+		simulator.start();
+	}
+	
+	public void start() throws IOException {
+		int port = getInt("port", 4000);
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext(AUTH_PATH, this::handleToken);
+		server.createContext(FHIR_PATH, this::handleFhir);
+		server.setExecutor(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2));
+		server.start();
+		
+		double changeRate = getDouble("changeRate", 0);
+		if (changeRate > 0) {
+			long interval = getInt("changeIntervalSeconds", 60);
+			changes = Executors.newSingleThreadScheduledExecutor();
+			changes.scheduleAtFixedRate(() -> System.out.println("changed " + registry.applyChanges(changeRate)
+			        + " facilities, requests so far " + requests),
+			    interval, interval, TimeUnit.SECONDS);
+		}
+		System.out.println("simulating a registry of " + registry.getOrganizationCount() + " Organizations and "
+		        + registry.getLocationCount() + " Locations on http://localhost:" + port + FHIR_PATH);
+	}
+	
+	public void stop() {
+		if (changes != null) {
+			changes.shutdownNow();
+		}
+		if (server != null) {
+			server.stop(0);
+			System.out.println("requests served " + requests);
+		}
+	}
+	
+	/**
+	 * @return the number of requests served so far, by kind
+	 */
+	public Map<String, AtomicLong> getRequests() {
+		return requests;
+	}
+	
+	private void handleToken(HttpExchange exchange) throws IOException {
+		count("token");
+		delay();
+		if (!"POST".equals(exchange.getRequestMethod())) {
+			send(exchange, 405, "application/json", "{}");
+			return;
+		}
+		int ttl = getInt("tokenTtlSeconds", 300);
+		String token = UUID.randomUUID().toString();
+		tokens.put(token, System.currentTimeMillis() + ttl * 1000L);
+		send(exchange, 200, "application/json",
+		    "{\"access_token\":\"" + token + "\",\"token_type\":\"Bearer\",\"expires_in\":" + ttl + "}");
+	}
+	
+	private void handleFhir(HttpExchange exchange) throws IOException {
+		delay();
+		String path = exchange.getRequestURI().getPath().substring(FHIR_PATH.length());
+		if (path.equals("/metadata")) {
+			// the HAPI client validates the server once before its first request
+			count("metadata");
+			sendResource(exchange, 200, getCapabilityStatement());
+			return;
+		}
+		if (!isAuthorized(exchange)) {
+			count("unauthorized");
+			sendResource(exchange, 401, outcome(OperationOutcome.IssueType.LOGIN, "Missing or expired Bearer token"));
+			return;
+		}
+		
+		Map<String, String> params = getParameters(exchange.getRequestURI().getRawQuery());
+		if (path.equals("/Location")) {
+			count("location-page");
+			sendResource(exchange, 200, search(exchange, params, "Location"));
+		} else if (path.equals("/Organization") && !params.containsKey("_id")) {
+			count("organization-page");
+			sendResource(exchange, 200, search(exchange, params, "Organization"));
+		} else if (path.equals("/Organization")) {
+			count("organization-search");
+			Bundle bundle = new Bundle().setType(Bundle.BundleType.SEARCHSET);
+			String ids = params.get("_id");
+			List<Organization> found = registry.getOrganizations(ids != null ? Arrays.asList(ids.split(","))
+			        : Collections.emptyList());
+			found.forEach(organization -> bundle.addEntry().setResource(organization).getSearch()
+			        .setMode(Bundle.SearchEntryMode.MATCH));
+			bundle.setTotal(found.size());
+			sendResource(exchange, 200, bundle);
+		} else if (path.startsWith("/Organization/")) {
+			count("organization-read");
+			Organization organization = registry.getOrganization(path.substring("/Organization/".length()));
+			if (organization == null) {
+				sendResource(exchange, 404, outcome(OperationOutcome.IssueType.NOTFOUND, "Unknown Organization " + path));
+			} else {
+				sendResource(exchange, 200, organization);
+			}
+		} else {
+			count("unsupported");
+			sendResource(exchange, 400, outcome(OperationOutcome.IssueType.NOTSUPPORTED, "Unsupported request " + path));
+		}
+	}
+	
+	private Bundle search(HttpExchange exchange, Map<String, String> params, String resourceType) {
+		int count = params.containsKey("_count") ? Integer.parseInt(params.get("_count")) : getInt("pageSize", 50);
+		int offset = params.containsKey("_getpagesoffset") ? Integer.parseInt(params.get("_getpagesoffset")) : 0;
+		String lastUpdated = params.get("_lastUpdated");
+		// only the gt and ge prefixes the sync sends are understood, the instant is exclusive for both
+		Date since = lastUpdated != null ? new DateTimeType(lastUpdated.replaceFirst("^[a-z]{2}", "")).getValue() : null;
+		boolean include = params.containsKey("_include");
+		
+		SimulatedRegistry.Page page = resourceType.equals("Location") ? registry.getLocations(since, offset, count)
+		        : registry.getOrganizations(since, offset, count);
+		Bundle bundle = new Bundle().setType(Bundle.BundleType.SEARCHSET);
+		bundle.setTotal(page.total);
+		String base = "http://" + exchange.getRequestHeaders().getFirst("Host") + FHIR_PATH + "/" + resourceType + "?";
+		bundle.addLink().setRelation(Bundle.LINK_SELF).setUrl(base + exchange.getRequestURI().getRawQuery());
+		if (offset + count < page.total) {
+			StringBuilder next = new StringBuilder(base).append("_getpagesoffset=").append(offset + count)
+			        .append("&_count=").append(count);
+			if (include) {
+				next.append("&_include=").append(encode(params.get("_include")));
+			}
+			if (lastUpdated != null) {
+				next.append("&_lastUpdated=").append(encode(lastUpdated));
+			}
+			bundle.addLink().setRelation(Bundle.LINK_NEXT).setUrl(next.toString());
+		}
+		for (Location location : page.locations) {
+			bundle.addEntry().setResource(location).getSearch().setMode(Bundle.SearchEntryMode.MATCH);
+		}
+		// an Organization search has its Organizations as matches, a Location search includes them
+		if (include || resourceType.equals("Organization")) {
+			Bundle.SearchEntryMode mode = include ? Bundle.SearchEntryMode.INCLUDE : Bundle.SearchEntryMode.MATCH;
+			for (Organization organization : page.organizations) {
+				bundle.addEntry().setResource(organization).getSearch().setMode(mode);
+			}
+		}
+		return bundle;
+	}
+	
+	private static CapabilityStatement getCapabilityStatement() {
+		CapabilityStatement capabilityStatement = new CapabilityStatement();
+		capabilityStatement.setStatus(Enumerations.PublicationStatus.ACTIVE);
+		capabilityStatement.setKind(CapabilityStatement.CapabilityStatementKind.INSTANCE);
+		capabilityStatement.setFhirVersion(Enumerations.FHIRVersion._4_0_1);
+		capabilityStatement.addFormat("json");
+		CapabilityStatement.CapabilityStatementRestComponent rest = capabilityStatement.addRest()
+		        .setMode(CapabilityStatement.RestfulCapabilityMode.SERVER);
+		rest.addResource().setType("Location").addInteraction()
+		        .setCode(CapabilityStatement.TypeRestfulInteraction.SEARCHTYPE);
+		CapabilityStatement.CapabilityStatementRestResourceComponent organization = rest.addResource()
+		        .setType("Organization");
+		organization.addInteraction().setCode(CapabilityStatement.TypeRestfulInteraction.READ);
+		organization.addInteraction().setCode(CapabilityStatement.TypeRestfulInteraction.SEARCHTYPE);
+		return capabilityStatement;
+	}
+	
+	private boolean isAuthorized(HttpExchange exchange) {
+		String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+		if (authorization == null || !authorization.startsWith("Bearer ")) {
+			return false;
+		}
+		Long expiry = tokens.get(authorization.substring("Bearer ".length()).trim());
+		return expiry != null && expiry > System.currentTimeMillis();
+	}
+	
+	private void delay() {
+		long latency = getInt("latencyMs", 0);
+		int jitter = getInt("jitterMs", 0);
+		if (jitter > 0) {
+			latency += ThreadLocalRandom.current().nextInt(jitter + 1);
+		}
+		if (latency > 0) {
+			try {
+				Thread.sleep(latency);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	private void count(String kind) {
+		requests.computeIfAbsent(kind, k -> new AtomicLong()).incrementAndGet();
+	}
+	
+	private static OperationOutcome outcome(OperationOutcome.IssueType type, String message) {
+		OperationOutcome outcome = new OperationOutcome();
+		outcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.ERROR).setCode(type).setDiagnostics(message);
+		return outcome;
+	}
+	
+	private static void sendResource(HttpExchange exchange, int status, IBaseResource resource) throws IOException {
+		send(exchange, status, FHIR_JSON, FhirUtils.encodeResourceToString(resource));
+	}
+	
+	private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+	
+	private static Map<String, String> getParameters(String query) {
+		Map<String, String> params = new HashMap<>();
+		if (query == null) {
+			return params;
+		}
+		for (String pair : query.split("&")) {
+			int separator = pair.indexOf('=');
+			if (separator > 0) {
+				params.put(decode(pair.substring(0, separator)), decode(pair.substring(separator + 1)));
+			}
+		}
+		return params;
+	}
+	
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static String encode(String value) {
+		try {
+			return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private int getInt(String name, int defaultValue) {
+		return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+	}
+	
+	private double getDouble(String name, double defaultValue) {
+		return options.containsKey(name) ? Double.parseDouble(options.get(name)) : defaultValue;
+	}
+}
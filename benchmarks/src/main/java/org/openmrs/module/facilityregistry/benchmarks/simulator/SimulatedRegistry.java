@@ -0,0 +1,237 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.benchmarks.simulator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Reference;
+import org.openmrs.module.facilityregistry.FacilityRegistryConstants;
+
+/**
+ * An mCSD hierarchy held in memory. Organizations form a tree of the given depth in which every
+ * Organization has fanOut children. Every leaf is a facility with one Location managed by it. Each
+ * Organization below the root points to its parent through partOf and the mCSD hierarchy extension,
+ * the same way GOFR exports it.
+ */
+class SimulatedRegistry {
+	
+	private static final String[] LEVELS = { "country", "region", "district", "subcounty", "parish" };
+	
+	private final Map<String, Organization> organizations = new LinkedHashMap<>();
+	
+	private final Map<String, Location> locations = new LinkedHashMap<>();
+	
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	private final Random random = new Random(42);
+	
+	private long changes;
+	
+	/**
+	 * @param depth number of Organization levels, the root included
+	 * @param fanOut number of children of every Organization above the facilities
+	 */
+	SimulatedRegistry(int depth, int fanOut) {
+		if (depth < 1 || fanOut < 1) {
+			throw new IllegalArgumentException("depth and fan-out must be at least 1");
+		}
+		Date created = new Date();
+		addOrganization("org-0", null, 0, depth, fanOut, created);
+	}
+	
+	private void addOrganization(String id, String parentId, int level, int depth, int fanOut, Date created) {
+		Organization organization = new Organization();
+		organization.setId(id);
+		organization.setName(getLevelName(level, depth) + " " + id);
+		organization.setActive(true);
+		organization.getMeta().setLastUpdated(created);
+		organization.addType(new CodeableConcept().setText(getLevelName(level, depth)));
+		organization.addAddress().setDistrict("District of " + id).setCountry("UG");
+		if (parentId != null) {
+			Reference parent = new Reference("Organization/" + parentId);
+			organization.setPartOf(parent);
+			Extension hierarchy = organization.addExtension().setUrl(FacilityRegistryConstants.MCSD_EXTENTION_URL);
+			hierarchy.addExtension(FacilityRegistryConstants.MCSD_EXTENTION_URL_PART_OF, parent.copy());
+		}
+		organizations.put(id, organization);
+		
+		if (level == depth - 1) {
+			Location location = new Location();
+			location.setId("loc-" + id);
+			location.setName("Facility " + id);
+			location.setStatus(Location.LocationStatus.ACTIVE);
+			location.getMeta().setLastUpdated(created);
+			location.setManagingOrganization(new Reference("Organization/" + id));
+			// every tenth facility is a laboratory, which the sync tags separately
+			location.addType(new CodeableConcept().setText(locations.size() % 10 == 0 ? "Laboratory" : "Health Facility"));
+			locations.put(location.getIdElement().getIdPart(), location);
+			return;
+		}
+		for (int child = 0; child < fanOut; child++) {
+			addOrganization(id + "-" + child, id, level + 1, depth, fanOut, created);
+		}
+	}
+	
+	private static String getLevelName(int level, int depth) {
+		if (level == depth - 1) {
+			return "facility";
+		}
+		return level < LEVELS.length ? LEVELS[level] : "level" + level;
+	}
+	
+	/**
+	 * Returns a page of the Locations changed after the given time, in a stable order, together with the
+	 * Organizations managing them
+	 * 
+	 * @param since only Locations updated after this time, all Locations if null
+	 * @param offset index of the first Location of the page among the matches
+	 * @param count number of Locations in the page
+	 */
+	Page getLocations(Date since, int offset, int count) {
+		lock.readLock().lock();
+		try {
+			List<Location> matches = new ArrayList<>();
+			for (Location location : locations.values()) {
+				if (since == null || location.getMeta().getLastUpdated().after(since)) {
+					matches.add(location);
+				}
+			}
+			List<Location> page = matches.subList(Math.min(offset, matches.size()),
+			    Math.min(offset + count, matches.size()));
+			Map<String, Organization> included = new LinkedHashMap<>();
+			for (Location location : page) {
+				String organizationId = location.getManagingOrganization().getReferenceElement().getIdPart();
+				included.put(organizationId, organizations.get(organizationId).copy());
+			}
+			List<Location> copies = new ArrayList<>();
+			page.forEach(location -> copies.add(location.copy()));
+			return new Page(copies, new ArrayList<>(included.values()), matches.size());
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns a page of the Organizations changed after the given time, in a stable order
+	 * 
+	 * @param since only Organizations updated after this time, all Organizations if null
+	 * @param offset index of the first Organization of the page among the matches
+	 * @param count number of Organizations in the page
+	 */
+	Page getOrganizations(Date since, int offset, int count) {
+		lock.readLock().lock();
+		try {
+			List<Organization> matches = new ArrayList<>();
+			for (Organization organization : organizations.values()) {
+				if (since == null || organization.getMeta().getLastUpdated().after(since)) {
+					matches.add(organization);
+				}
+			}
+			List<Organization> copies = new ArrayList<>();
+			matches.subList(Math.min(offset, matches.size()), Math.min(offset + count, matches.size()))
+			        .forEach(organization -> copies.add(organization.copy()));
+			return new Page(new ArrayList<>(), copies, matches.size());
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return a copy of the Organization, or null if there is no Organization with that id
+	 */
+	Organization getOrganization(String id) {
+		lock.readLock().lock();
+		try {
+			Organization organization = organizations.get(id);
+			return organization != null ? organization.copy() : null;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	List<Organization> getOrganizations(Collection<String> ids) {
+		List<Organization> found = new ArrayList<>();
+		for (String id : ids) {
+			Organization organization = getOrganization(id);
+			if (organization != null) {
+				found.add(organization);
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Renames the given share of the facilities, picked at random, and marks both their Location and
+	 * their Organization as updated now
+	 * 
+	 * @param rate share of the facilities to change, between 0 and 1
+	 * @return the number of facilities changed
+	 */
+	int applyChanges(double rate) {
+		lock.writeLock().lock();
+		try {
+			List<Location> all = new ArrayList<>(locations.values());
+			int count = (int) Math.round(all.size() * rate);
+			Date now = new Date();
+			for (int i = 0; i < count; i++) {
+				Location location = all.get(random.nextInt(all.size()));
+				changes++;
+				location.setName("Facility " + location.getIdElement().getIdPart() + " rev " + changes);
+				location.getMeta().setLastUpdated(now);
+				Organization organization = organizations
+				        .get(location.getManagingOrganization().getReferenceElement().getIdPart());
+				organization.setName(location.getName());
+				organization.getMeta().setLastUpdated(now);
+			}
+			return count;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	int getOrganizationCount() {
+		return organizations.size();
+	}
+	
+	int getLocationCount() {
+		return locations.size();
+	}
+	
+	static class Page {
+		
+		final List<Location> locations;
+		
+		final List<Organization> organizations;
+		
+		final int total;
+		
+		Page(List<Location> locations, List<Organization> organizations, int total) {
+			this.locations = locations;
+			this.organizations = organizations;
+			this.total = total;
+		}
+	}
+}
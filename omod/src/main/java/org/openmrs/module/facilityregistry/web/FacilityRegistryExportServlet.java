@@ -0,0 +1,93 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.facilityregistry.web;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.hl7.fhir.r4.model.ResourceType;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.facilityregistry.api.FacilityRegistryExportService;
+import org.openmrs.util.PrivilegeConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the synced facility registry as NDJSON in the manner of a bulk data $export, at
+ * /moduleServlet/facilityregistry/export. The optional _type parameter lists the resource types to
+ * include, Organization and Location, both by default. Resources are written to the response as they
+ * are translated, nothing is collected in memory.
+ */
+public class FacilityRegistryExportServlet extends HttpServlet {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private static final Logger log = LoggerFactory.getLogger(FacilityRegistryExportServlet.class);
+	
+	static final String NDJSON_CONTENT_TYPE = "application/fhir+ndjson";
+	
+	static final String TYPE_PARAMETER = "_type";
+	
+	private static final Set<String> SUPPORTED_TYPES = Collections.unmodifiableSet(
+	    new LinkedHashSet<>(Arrays.asList(ResourceType.Organization.name(), ResourceType.Location.name())));
+	
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (!Context.isAuthenticated()) {
+			response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+			return;
+		}
+		if (!Context.hasPrivilege(PrivilegeConstants.GET_LOCATIONS)) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+		
+		Set<String> types = getTypes(request.getParameter(TYPE_PARAMETER));
+		Set<String> unsupported = new LinkedHashSet<>(types);
+		unsupported.removeAll(SUPPORTED_TYPES);
+		if (!unsupported.isEmpty()) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Cannot export " + String.join(", ", unsupported));
+			return;
+		}
+		
+		FacilityRegistryExportService exportService = Context
+		        .getRegisteredComponents(FacilityRegistryExportService.class).get(0);
+		response.setContentType(NDJSON_CONTENT_TYPE);
+		response.setCharacterEncoding("UTF-8");
+		Writer writer = response.getWriter();
+		// Organizations first, so that consumers meet the parents before the Locations managed by them
+		if (types.contains(ResourceType.Organization.name())) {
+			log.debug("exported {} Organizations", exportService.exportOrganizations(writer));
+		}
+		if (types.contains(ResourceType.Location.name())) {
+			log.debug("exported {} Locations", exportService.exportLocations(writer));
+		}
+		writer.flush();
+	}
+	
+	private Set<String> getTypes(String typeParameter) {
+		if (typeParameter == null || typeParameter.trim().isEmpty()) {
+			return SUPPORTED_TYPES;
+		}
+		Set<String> types = new LinkedHashSet<>();
+		for (String type : typeParameter.split(",")) {
+			types.add(type.trim());
+		}
+		return types;
+	}
+}